@@ -0,0 +1,53 @@
+package com.plooh.adssi.udf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link BatchFingerprinter} over short phone numbers, with the JCA digests and
+ * with the Vector API multi-lane SHA-512 engine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BatchBenchmark {
+
+    static final int ITEMS = 1024;
+
+    @Param({ "false", "true" })
+    boolean multiLane;
+
+    byte[][] data;
+    BatchFingerprinter fingerprinter;
+
+    @Setup
+    public void setup() {
+        data = new byte[ITEMS][];
+        for (int i = 0; i < ITEMS; i++) {
+            data[i] = ("+49172" + (2346123 + i * 7919)).getBytes(StandardCharsets.UTF_8);
+        }
+        fingerprinter = new BatchFingerprinter("phone", 0, DigestAlgorithm.SHA2_512, null, false, multiLane);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public UDFBatch fingerprint() {
+        return fingerprinter.fingerprint(data);
+    }
+}
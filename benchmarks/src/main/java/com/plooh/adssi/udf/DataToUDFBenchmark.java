@@ -0,0 +1,55 @@
+package com.plooh.adssi.udf;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link UDF#dataToUDFBinary(byte[], String, int, DigestAlgorithm, String)}
+ * from 16 bytes to 64 MB, single threaded and on all cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataToUDFBenchmark {
+
+    @Param({ "16", "256", "4096", "65536", "1048576", "67108864" })
+    int size;
+
+    @Param({ "SHA2_512", "SHA3_512" })
+    DigestAlgorithm digestAlgorithm;
+
+    byte[] data;
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+    }
+
+    @Benchmark
+    public UDF dataToUDFBinary() {
+        return UDF.dataToUDFBinary(data, "application/octet-stream", 0, digestAlgorithm, null);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public UDF dataToUDFBinaryThreaded() {
+        return UDF.dataToUDFBinary(data, "application/octet-stream", 0, digestAlgorithm, null);
+    }
+}
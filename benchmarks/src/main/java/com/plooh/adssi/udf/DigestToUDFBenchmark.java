@@ -0,0 +1,59 @@
+package com.plooh.adssi.udf;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of the outer digest to a binary UDF,
+ * {@link UDF#bufferDigestToUDF(byte[], int, DigestAlgorithm, String)}, keyed
+ * and unkeyed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DigestToUDFBenchmark {
+
+    @Param({ "SHA2_512", "SHA3_512" })
+    DigestAlgorithm digestAlgorithm;
+
+    // Empty for unkeyed fingerprints.
+    @Param({ "", "secret" })
+    String key;
+
+    // H(<Content-ID> + ':' + H(<Data>))
+    byte[] digest;
+
+    @Setup
+    public void setup() {
+        digest = new byte[64];
+        new Random(42).nextBytes(digest);
+        key = key.isEmpty() ? null : key;
+    }
+
+    @Benchmark
+    public UDF bufferDigestToUDF() {
+        return UDF.bufferDigestToUDF(digest, 0, digestAlgorithm, key);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public UDF bufferDigestToUDFThreaded() {
+        return UDF.bufferDigestToUDF(digest, 0, digestAlgorithm, key);
+    }
+}
@@ -0,0 +1,64 @@
+package com.plooh.adssi.udf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base32 presentation and parsing of UDFs at several precisions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PresentationBenchmark {
+
+    @Param({ "100", "125", "200", "440" })
+    int bits;
+
+    UDF udf;
+    String presentation;
+
+    @Setup
+    public void setup() {
+        byte[] data = "+491722346123".getBytes(StandardCharsets.UTF_8);
+        udf = UDF.dataToUDFBinary(data, "phone", UDF.MaximumBits, null, null);
+        presentation = udf.presentationBase32(bits);
+    }
+
+    @Benchmark
+    public String presentationBase32() {
+        return udf.presentationBase32(bits);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String presentationBase32Threaded() {
+        return udf.presentationBase32(bits);
+    }
+
+    @Benchmark
+    public UDF parse() {
+        return UDF.parse(presentation);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public UDF parseThreaded() {
+        return UDF.parse(presentation);
+    }
+}
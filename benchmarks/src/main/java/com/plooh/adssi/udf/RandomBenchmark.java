@@ -0,0 +1,59 @@
+package com.plooh.adssi.udf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Nonce and key generation, single threaded and on all cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RandomBenchmark {
+
+    static final int BULK = 1000;
+
+    @Benchmark
+    public String nonce() {
+        return UDF.nonce(0);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String nonceThreaded() {
+        return UDF.nonce(0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK)
+    public String[] nonces() {
+        return UDFRandom.current().nonces(BULK, 0);
+    }
+
+    @Benchmark
+    public String encryptionKey() {
+        return UDF.encryptionKey(256);
+    }
+
+    @Benchmark
+    public String authenticationKey() {
+        return UDF.authenticationKey(256);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String encryptionKeyThreaded() {
+        return UDF.encryptionKey(256);
+    }
+}
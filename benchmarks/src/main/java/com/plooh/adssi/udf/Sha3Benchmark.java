@@ -0,0 +1,54 @@
+package com.plooh.adssi.udf;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SHA3-512 through the JCA provider and through {@link Keccak512}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Sha3Benchmark {
+
+    @Param({ "16", "1024", "65536" })
+    int size;
+
+    byte[] data;
+    byte[] out = new byte[64];
+    Keccak512 keccak = new Keccak512();
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+    }
+
+    @Benchmark
+    public byte[] jca() {
+        return DigestUtils.sha3_512(data);
+    }
+
+    @Benchmark
+    public byte[] keccak() {
+        keccak.update(data, 0, data.length);
+        keccak.doFinal(out, 0);
+        return out;
+    }
+}
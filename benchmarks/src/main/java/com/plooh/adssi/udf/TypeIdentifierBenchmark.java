@@ -0,0 +1,49 @@
+package com.plooh.adssi.udf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link UdfTypeIdentifier#valueOf(int)} over all the defined codes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TypeIdentifierBenchmark {
+
+    static final int CODES = 1024;
+
+    int[] codes;
+
+    @Setup
+    public void setup() {
+        UdfTypeIdentifier[] values = UdfTypeIdentifier.values();
+        codes = new int[CODES];
+        for (int i = 0; i < CODES; i++) {
+            codes[i] = values[(i * 7) % values.length].code;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CODES)
+    public void valueOf(Blackhole blackhole) {
+        for (int code : codes) {
+            blackhole.consume(UdfTypeIdentifier.valueOf(code));
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package com.plooh.adssi.udf;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade over the fingerprint API, for a fixed precision, digest
+ * algorithm and key.
+ *
+ * Requests are queued and drained by at most parallelism tasks running on the
+ * configured executor, a bounded platform pool or virtual threads. Each task
+ * takes up to {@link #MAX_BATCH} queued requests at a time and fingerprints
+ * them on {@link BatchFingerprinter} engines reused across batches, one per
+ * content type.
+ *
+ * The queue is bounded: {@link #fingerprint(byte[], String)} blocks and
+ * {@link #tryFingerprint(byte[], String)} fails while queueCapacity requests
+ * are waiting. As a {@link Flow.Processor}, requests are only pulled from
+ * upstream as the single downstream subscriber requests results, with at most
+ * queueCapacity of them in flight, and results are emitted in request order.
+ */
+public class AsyncFingerprinter implements Flow.Processor<AsyncFingerprinter.Request, UDF>, AutoCloseable {
+
+    /**
+     * Maximum number of requests fingerprinted per executor task.
+     */
+    static final int MAX_BATCH = 64;
+
+    // Engine sets holding more content types are cleared.
+    private static final int MAX_CONTENT_TYPES = 64;
+
+    private final int bits;
+    private final DigestAlgorithm digestAlgorithm;
+    private final String key;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final int parallelism;
+    private final int queueCapacity;
+
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    // Free slots for direct requests, processor requests are bounded by credits.
+    private final Semaphore slots;
+    private final AtomicInteger drainers = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Map<String, BatchFingerprinter>> engines = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    private final ProcessorState processor = new ProcessorState();
+
+    /**
+     * @param bits            Precision, must be a multiple of 20 bits.
+     * @param digestAlgorithm The cryptographic digest to use, SHA2_512 if null.
+     * @param key             Optional key used to create keyed fingerprints.
+     * @param executor        Runs the fingerprint tasks, not shut down by
+     *                        {@link #close()}.
+     * @param parallelism     Maximum number of concurrent fingerprint tasks.
+     * @param queueCapacity   Maximum number of waiting requests.
+     */
+    public AsyncFingerprinter(int bits, DigestAlgorithm digestAlgorithm, String key, Executor executor,
+            int parallelism, int queueCapacity) {
+        this(bits, digestAlgorithm, key, executor, null, parallelism, queueCapacity);
+    }
+
+    private AsyncFingerprinter(int bits, DigestAlgorithm digestAlgorithm, String key, Executor executor,
+            ExecutorService ownedExecutor, int parallelism, int queueCapacity) {
+        if (parallelism < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Parallelism and queue capacity must be positive");
+        }
+        this.bits = bits;
+        this.digestAlgorithm = digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm;
+        this.key = key;
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.ownedExecutor = ownedExecutor;
+        this.parallelism = parallelism;
+        this.queueCapacity = queueCapacity;
+        this.slots = new Semaphore(queueCapacity);
+    }
+
+    /**
+     * Fingerprints on a fixed pool of daemon platform threads, shut down by
+     * {@link #close()}.
+     */
+    public static AsyncFingerprinter withPlatformThreads(int bits, DigestAlgorithm digestAlgorithm, String key,
+            int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "udf-async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new AsyncFingerprinter(bits, digestAlgorithm, key, executor, executor, threads, queueCapacity);
+    }
+
+    /**
+     * Fingerprints on virtual threads when the JVM provides them, on a platform
+     * pool of parallelism threads otherwise. See
+     * {@link #virtualThreadsAvailable()}.
+     */
+    public static AsyncFingerprinter withVirtualThreads(int bits, DigestAlgorithm digestAlgorithm, String key,
+            int parallelism, int queueCapacity) {
+        ExecutorService executor = newVirtualThreadExecutor();
+        if (executor == null) {
+            return withPlatformThreads(bits, digestAlgorithm, key, parallelism, queueCapacity);
+        }
+        return new AsyncFingerprinter(bits, digestAlgorithm, key, executor, executor, parallelism, queueCapacity);
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads.
+     */
+    public static boolean virtualThreadsAvailable() {
+        return virtualThreadExecutorFactory() != null;
+    }
+
+    // Looked up reflectively, the library targets Java 11.
+    private static Method virtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        Method factory = virtualThreadExecutorFactory();
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Preview feature not enabled
+            return null;
+        }
+    }
+
+    /**
+     * Queues a request, waiting for a free slot if the queue is full.
+     *
+     * @param content     Data to be fingerprinted, must not be modified until
+     *                    the future completes.
+     * @param contentType MIME media type of the data.
+     * @return The future UDF, failed if the request could not be queued.
+     */
+    public CompletableFuture<UDF> fingerprint(byte[] content, String contentType) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        return enqueue(new Pending(content, contentType, true));
+    }
+
+    /**
+     * Queues a request if a slot is free.
+     *
+     * @return The future UDF, failed with {@link RejectedExecutionException} if
+     *         the queue is full.
+     */
+    public CompletableFuture<UDF> tryFingerprint(byte[] content, String contentType) {
+        if (!slots.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Fingerprint queue full"));
+        }
+        return enqueue(new Pending(content, contentType, true));
+    }
+
+    /**
+     * @return The number of requests waiting to be fingerprinted.
+     */
+    public int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting requests, fingerprints the queued ones on the calling
+     * thread and shuts down the executor if it was created by this instance.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        while (queue.drainTo(batch, MAX_BATCH) > 0) {
+            process(batch);
+            batch.clear();
+        }
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    private CompletableFuture<UDF> enqueue(Pending pending) {
+        if (closed) {
+            release(pending);
+            pending.future.completeExceptionally(new IllegalStateException("Fingerprinter closed"));
+            return pending.future;
+        }
+        queue.add(pending);
+        signal();
+        return pending.future;
+    }
+
+    /**
+     * Starts a drain task if requests are waiting and fewer than parallelism
+     * tasks are running.
+     */
+    private void signal() {
+        while (!queue.isEmpty()) {
+            int running = drainers.get();
+            if (running >= parallelism) {
+                return;
+            }
+            if (drainers.compareAndSet(running, running + 1)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    drainers.decrementAndGet();
+                    failQueued(e);
+                }
+                return;
+            }
+        }
+    }
+
+    private void drain() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (queue.drainTo(batch, MAX_BATCH) > 0) {
+                process(batch);
+                batch.clear();
+            }
+        } finally {
+            drainers.decrementAndGet();
+        }
+        // A request queued after the last drainTo may have seen all tasks busy.
+        signal();
+    }
+
+    private void process(List<Pending> batch) {
+        Map<String, BatchFingerprinter> fingerprinters = engines.poll();
+        if (fingerprinters == null || fingerprinters.size() > MAX_CONTENT_TYPES) {
+            fingerprinters = new HashMap<>();
+        }
+        for (Pending pending : batch) {
+            release(pending);
+            try {
+                BatchFingerprinter fingerprinter = fingerprinters.computeIfAbsent(pending.contentType,
+                        contentType -> new BatchFingerprinter(contentType, bits, digestAlgorithm, key));
+                byte[] udf = new byte[fingerprinter.stride()];
+                fingerprinter.fingerprint(pending.content, 0, pending.content.length, udf, 0);
+                pending.future.complete(new UDF(udf));
+            } catch (RuntimeException e) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+        engines.offer(fingerprinters);
+    }
+
+    private void failQueued(Throwable cause) {
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            release(pending);
+            pending.future.completeExceptionally(cause);
+        }
+    }
+
+    private void release(Pending pending) {
+        if (pending.holdsSlot) {
+            slots.release();
+        }
+    }
+
+    // Flow.Processor
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super UDF> subscriber) {
+        processor.subscribe(subscriber);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        processor.onSubscribe(subscription);
+    }
+
+    @Override
+    public void onNext(Request request) {
+        processor.onNext(request);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        processor.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        processor.onComplete();
+    }
+
+    /**
+     * A request of the {@link Flow.Processor} view.
+     */
+    public static final class Request {
+
+        private final byte[] content;
+        private final String contentType;
+
+        /**
+         * @param content     Data to be fingerprinted.
+         * @param contentType MIME media type of the data.
+         */
+        public Request(byte[] content, String contentType) {
+            this.content = Objects.requireNonNull(content, "content");
+            this.contentType = Objects.requireNonNull(contentType, "contentType");
+        }
+
+        public byte[] content() {
+            return content;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+    }
+
+    private static final class Pending {
+
+        final byte[] content;
+        final String contentType;
+        final boolean holdsSlot;
+        final CompletableFuture<UDF> future = new CompletableFuture<>();
+
+        Pending(byte[] content, String contentType, boolean holdsSlot) {
+            this.content = content;
+            this.contentType = contentType;
+            this.holdsSlot = holdsSlot;
+        }
+    }
+
+    /**
+     * Demand bookkeeping of the processor view. Upstream is asked for as many
+     * requests as downstream asked for results, capped so that at most
+     * queueCapacity requests are requested or in flight.
+     */
+    private final class ProcessorState implements Flow.Subscription {
+
+        private Flow.Subscription upstream;
+        private Flow.Subscriber<? super UDF> downstream;
+        // Results requested by downstream and not emitted yet.
+        private long demand;
+        // Requests asked from upstream and not received yet.
+        private long requested;
+        // Requests received and not emitted yet.
+        private long inFlight;
+        private boolean done;
+        // Completes after the last emitted result, keeps emissions in order.
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+        synchronized void subscribe(Flow.Subscriber<? super UDF> subscriber) {
+            if (downstream != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+                return;
+            }
+            downstream = subscriber;
+            subscriber.onSubscribe(this);
+        }
+
+        synchronized void onSubscribe(Flow.Subscription subscription) {
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+            replenish();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Non positive request: " + n));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                replenish();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription subscription;
+            synchronized (this) {
+                done = true;
+                subscription = upstream;
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        void onNext(Request request) {
+            Pending pending = new Pending(request.content, request.contentType, false);
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                requested--;
+                inFlight++;
+                CompletableFuture<UDF> result = pending.future;
+                tail = tail.thenCombine(result, (ignored, udf) -> udf).thenAccept(this::emit)
+                        .whenComplete((ignored, error) -> {
+                            if (error != null) {
+                                fail(error);
+                            }
+                        });
+            }
+            enqueue(pending);
+        }
+
+        void onError(Throwable throwable) {
+            CompletableFuture<Void> last;
+            synchronized (this) {
+                last = tail;
+            }
+            last.whenComplete((ignored, error) -> fail(throwable));
+        }
+
+        void onComplete() {
+            CompletableFuture<Void> last;
+            synchronized (this) {
+                last = tail;
+            }
+            last.whenComplete((ignored, error) -> {
+                Flow.Subscriber<? super UDF> subscriber;
+                synchronized (this) {
+                    if (done) {
+                        return;
+                    }
+                    done = true;
+                    subscriber = downstream;
+                }
+                if (subscriber != null) {
+                    subscriber.onComplete();
+                }
+            });
+        }
+
+        private void emit(UDF udf) {
+            Flow.Subscriber<? super UDF> subscriber;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                subscriber = downstream;
+                inFlight--;
+                demand--;
+                replenish();
+            }
+            subscriber.onNext(udf);
+        }
+
+        private void fail(Throwable error) {
+            Flow.Subscriber<? super UDF> subscriber;
+            Flow.Subscription subscription;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                subscriber = downstream;
+                subscription = upstream;
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            if (subscriber != null) {
+                subscriber.onError(error);
+            }
+        }
+
+        // Called holding the lock.
+        private void replenish() {
+            if (upstream == null || done) {
+                return;
+            }
+            long outstanding = requested + inFlight;
+            long n = Math.min(demand, queueCapacity) - outstanding;
+            if (n > 0) {
+                requested += n;
+                upstream.request(n);
+            }
+        }
+    }
+}
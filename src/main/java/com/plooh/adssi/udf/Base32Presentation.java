@@ -0,0 +1,145 @@
+package com.plooh.adssi.udf;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+/**
+ * Single pass encoder of the dashed Base32 presentation of binary UDFs.
+ *
+ * The output is the unpadded RFC 4648 Base32 encoding of the input, split in
+ * chunks of chunkSize characters joined by the delimiter. When bits is
+ * positive, only the first (bits + 19) / 20 chunks are written and the encoding
+ * stops there.
+ */
+public class Base32Presentation {
+
+    static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+
+    private Base32Presentation() {
+    }
+
+    /**
+     * @return The number of characters of the presentation.
+     */
+    public static int length(int byteLength, int chunkSize, String delimiter, int bits) {
+        int characters = characters(byteLength, chunkSize, bits);
+        if (characters == 0) {
+            return 0;
+        }
+        return characters + ((characters - 1) / chunkSize) * delimiter.length();
+    }
+
+    public static String toString(byte[] bytes, int chunkSize, String delimiter, int bits) {
+        char[] out = new char[length(bytes.length, chunkSize, delimiter, bits)];
+        encode(bytes, 0, bytes.length, chunkSize, delimiter, bits, out, 0);
+        return new String(out);
+    }
+
+    /**
+     * Encodes the presentation into a char array.
+     *
+     * @param bytes     The binary UDF.
+     * @param offset    Offset of the binary UDF in bytes.
+     * @param length    Length of the binary UDF.
+     * @param chunkSize Number of characters between delimiters.
+     * @param delimiter The delimiter.
+     * @param bits      Precision of the presentation, all the bytes if not
+     *                  positive.
+     * @param out       The destination, must hold {@link #length} characters.
+     * @param outOff    Offset in the destination.
+     * @return The number of characters written.
+     */
+    public static int encode(byte[] bytes, int offset, int length, int chunkSize, String delimiter, int bits,
+            char[] out, int outOff) {
+        return encode(bytes, offset, length, chunkSize, delimiter, bits, out, null, outOff);
+    }
+
+    /**
+     * Encodes the presentation as US-ASCII bytes.
+     *
+     * @return The number of bytes written.
+     * @see #encode(byte[], int, int, int, String, int, char[], int)
+     */
+    public static int encode(byte[] bytes, int offset, int length, int chunkSize, String delimiter, int bits,
+            byte[] out, int outOff) {
+        return encode(bytes, offset, length, chunkSize, delimiter, bits, null, out, outOff);
+    }
+
+    public static void encode(byte[] bytes, int offset, int length, int chunkSize, String delimiter, int bits,
+            StringBuilder out) {
+        char[] chars = new char[length(length, chunkSize, delimiter, bits)];
+        out.append(chars, 0, encode(bytes, offset, length, chunkSize, delimiter, bits, chars, 0));
+    }
+
+    public static void encode(byte[] bytes, int offset, int length, int chunkSize, String delimiter, int bits,
+            CharBuffer out) {
+        char[] chars = new char[length(length, chunkSize, delimiter, bits)];
+        out.put(chars, 0, encode(bytes, offset, length, chunkSize, delimiter, bits, chars, 0));
+    }
+
+    /**
+     * Encodes the presentation into an appendable.
+     *
+     * @see #encode(byte[], int, int, int, String, int, char[], int)
+     */
+    public static void encode(byte[] bytes, int offset, int length, int chunkSize, String delimiter, int bits,
+            Appendable out) throws IOException {
+        char[] chars = new char[length(length, chunkSize, delimiter, bits)];
+        out.append(CharBuffer.wrap(chars, 0, encode(bytes, offset, length, chunkSize, delimiter, bits, chars, 0)));
+    }
+
+    /**
+     * The encoding loop, writes to chars if not null, otherwise to ascii.
+     */
+    private static int encode(byte[] bytes, int offset, int length, int chunkSize, String delimiter, int bits,
+            char[] chars, byte[] ascii, int outOff) {
+        int characters = characters(length, chunkSize, bits);
+        int position = outOff;
+        int end = offset + length;
+        int index = offset;
+        int buffer = 0;
+        int buffered = 0;
+        for (int c = 0; c < characters; c++) {
+            if (c > 0 && c % chunkSize == 0) {
+                for (int d = 0; d < delimiter.length(); d++) {
+                    put(delimiter.charAt(d), chars, ascii, position++);
+                }
+            }
+            if (buffered < 5) {
+                if (index < end) {
+                    buffer = (buffer << 8) | (bytes[index++] & 0xFF);
+                    buffered += 8;
+                } else {
+                    // Pad the last bits with zeros
+                    buffer <<= 5 - buffered;
+                    buffered = 5;
+                }
+            }
+            buffered -= 5;
+            put(ALPHABET[(buffer >>> buffered) & 0x1F], chars, ascii, position++);
+        }
+        return position - outOff;
+    }
+
+    private static void put(char c, char[] chars, byte[] ascii, int position) {
+        if (chars != null) {
+            chars[position] = c;
+        } else {
+            ascii[position] = (byte) c;
+        }
+    }
+
+    /**
+     * @return The number of Base32 characters of the presentation, delimiters
+     *         excluded.
+     */
+    static int characters(int byteLength, int chunkSize, int bits) {
+        // Unpadded Base32 length
+        int characters = (byteLength * 8 + 4) / 5;
+        if (bits <= 0) {
+            return characters;
+        }
+        long blocks = (bits + 19L) / 20;
+        return (int) Math.min(characters, blocks * chunkSize);
+    }
+}
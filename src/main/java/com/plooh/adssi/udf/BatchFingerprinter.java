@@ -0,0 +1,323 @@
+package com.plooh.adssi.udf;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.Mac;
+
+/**
+ * Computes the UDF fingerprints of many data items sharing the same content
+ * type, digest algorithm, precision and key.
+ *
+ * The digest engines, the encoded content type prefix and the scratch buffers
+ * are allocated once and reused for every item. Instances are therefore not
+ * thread safe, use one instance per thread.
+ *
+ * When the {@value Sha512Lanes#VECTOR_PROPERTY} system property is true and
+ * the jdk.incubator.vector module is available, SHA2_512 batches hash items of
+ * at most {@link Sha512Lanes#MAX_MESSAGE_LENGTH} bytes several at a time with
+ * {@link Sha512Lanes}, and so does the outer digest when the content type is
+ * short enough. Other items go through the JCA digests.
+ */
+public class BatchFingerprinter {
+
+    private static final int DIGEST_LENGTH = 64;
+
+    private final DigestAlgorithm digestAlgorithm;
+
+    // UTF8(ContentType) + ":"
+    private final byte[] prefix;
+    private final int stride;
+
+    private final MessageDigest inner;
+    private final MessageDigest outer;
+    private final byte[] dataDigest = new byte[DIGEST_LENGTH];
+    private final byte[] bufferDigest = new byte[DIGEST_LENGTH];
+
+    // Pre-keyed MAC and its output, only set for keyed fingerprints.
+    private final Mac mac;
+    private final UdfTypeIdentifier authenticatorType;
+    private final byte[] authenticator;
+
+    // Inner engine and prefix state of the fused Keccak path, only set when
+    // SHA3_512 runs on Keccak512.
+    private final Keccak512 keccak;
+    private final Keccak512 keccakPrefix;
+
+    // Multi-lane engine and its scratch buffers, only set when enabled.
+    private final Sha512Lanes lanes;
+    private final int[] laneItems;
+    private final byte[] laneDigests;
+    // Per lane UTF8(ContentType) + ":" + H(<Data>), null if too long for a block.
+    private final byte[][] laneOuter;
+
+    /**
+     * @param contentType     MIME media type of data being fingerprinted.
+     * @param bits            Precision, must be a multiple of 20 bits.
+     * @param digestAlgorithm The cryptographic digest to use to compute the hash
+     *                        value, SHA2_512 if null.
+     * @param key             Optional key used to create keyed fingerprints.
+     */
+    public BatchFingerprinter(String contentType, int bits, DigestAlgorithm digestAlgorithm, String key) {
+        this(contentType, bits, digestAlgorithm, key, Digests.KECCAK_ENABLED, Sha512Lanes.VECTOR_ENABLED);
+    }
+
+    /**
+     * @param fusedKeccak true to run SHA3_512 on {@link Keccak512} whatever the
+     *                    {@value Digests#KECCAK_PROPERTY} system property.
+     */
+    BatchFingerprinter(String contentType, int bits, DigestAlgorithm digestAlgorithm, String key,
+            boolean fusedKeccak) {
+        this(contentType, bits, digestAlgorithm, key, fusedKeccak, Sha512Lanes.VECTOR_ENABLED);
+    }
+
+    /**
+     * @param multiLane true to hash short SHA2_512 items with
+     *                  {@link Sha512Lanes} when available, whatever the
+     *                  {@value Sha512Lanes#VECTOR_PROPERTY} system property.
+     */
+    BatchFingerprinter(String contentType, int bits, DigestAlgorithm digestAlgorithm, String key,
+            boolean fusedKeccak, boolean multiLane) {
+        this.digestAlgorithm = digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm;
+        byte[] contentTypeBytes = contentType.getBytes(StandardCharsets.UTF_8);
+        this.prefix = new byte[contentTypeBytes.length + 1];
+        System.arraycopy(contentTypeBytes, 0, prefix, 0, contentTypeBytes.length);
+        prefix[contentTypeBytes.length] = UDF.TAG_SEPARATOR_BYTE;
+        this.stride = UDF.binaryLength(bits, DIGEST_LENGTH);
+        this.inner = Digests.messageDigest(this.digestAlgorithm);
+        this.outer = Digests.messageDigest(this.digestAlgorithm);
+        if (fusedKeccak && this.digestAlgorithm == DigestAlgorithm.SHA3_512) {
+            this.keccak = new Keccak512();
+            this.keccakPrefix = new Keccak512();
+            keccakPrefix.update(prefix);
+        } else {
+            this.keccak = null;
+            this.keccakPrefix = null;
+        }
+        if (key == null) {
+            this.mac = null;
+            this.authenticatorType = null;
+            this.authenticator = null;
+        } else {
+            UDFAuthenticator udfAuthenticator = new UDFAuthenticator(key, this.digestAlgorithm);
+            this.mac = udfAuthenticator.newMac();
+            this.authenticatorType = udfAuthenticator.typeIdentifier();
+            this.authenticator = new byte[mac.getMacLength()];
+        }
+        Sha512Lanes engine = multiLane && this.digestAlgorithm == DigestAlgorithm.SHA2_512
+                ? Sha512Lanes.newInstance()
+                : null;
+        this.lanes = engine;
+        if (engine != null) {
+            this.laneItems = new int[engine.lanes()];
+            this.laneDigests = new byte[engine.lanes() * DIGEST_LENGTH];
+            if (prefix.length + DIGEST_LENGTH <= Sha512Lanes.MAX_MESSAGE_LENGTH) {
+                this.laneOuter = new byte[engine.lanes()][];
+                for (int l = 0; l < laneOuter.length; l++) {
+                    laneOuter[l] = Arrays.copyOf(prefix, prefix.length + DIGEST_LENGTH);
+                }
+            } else {
+                this.laneOuter = null;
+            }
+        } else {
+            this.laneItems = null;
+            this.laneDigests = null;
+            this.laneOuter = null;
+        }
+    }
+
+    /**
+     * @return true if short items are hashed several at a time.
+     */
+    boolean isMultiLane() {
+        return lanes != null;
+    }
+
+    /**
+     * @return The length in bytes of every binary UDF produced by this instance.
+     */
+    public int stride() {
+        return stride;
+    }
+
+    public UDFBatch fingerprint(List<byte[]> data) {
+        if (lanes != null) {
+            return fingerprint(data.toArray(new byte[data.size()][]));
+        }
+        UDFBatch batch = new UDFBatch(data.size(), stride);
+        int offset = 0;
+        for (byte[] item : data) {
+            fingerprint(item, 0, item.length, batch.buffer, offset);
+            offset += stride;
+        }
+        return batch;
+    }
+
+    public UDFBatch fingerprint(byte[][] data) {
+        UDFBatch batch = new UDFBatch(data.length, stride);
+        if (lanes == null) {
+            int offset = 0;
+            for (byte[] item : data) {
+                fingerprint(item, 0, item.length, batch.buffer, offset);
+                offset += stride;
+            }
+            return batch;
+        }
+        int pending = 0;
+        for (int i = 0; i < data.length; i++) {
+            byte[] item = data[i];
+            if (item.length > Sha512Lanes.MAX_MESSAGE_LENGTH) {
+                fingerprint(item, 0, item.length, batch.buffer, i * stride);
+                continue;
+            }
+            lanes.load(pending, item, 0, item.length);
+            laneItems[pending++] = i;
+            if (pending == laneItems.length) {
+                flushLanes(pending, batch.buffer);
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            flushLanes(pending, batch.buffer);
+        }
+        return batch;
+    }
+
+    /**
+     * Completes the items loaded in the first count lanes.
+     */
+    private void flushLanes(int count, byte[] out) {
+        // H(<Data>)
+        lanes.compress();
+        for (int l = 0; l < count; l++) {
+            lanes.store(l, laneDigests, l * DIGEST_LENGTH);
+        }
+
+        // H(<Content-ID> + ':' + H(<Data>))
+        if (laneOuter != null) {
+            for (int l = 0; l < count; l++) {
+                byte[] message = laneOuter[l];
+                System.arraycopy(laneDigests, l * DIGEST_LENGTH, message, prefix.length, DIGEST_LENGTH);
+                lanes.load(l, message, 0, message.length);
+            }
+            lanes.compress();
+            for (int l = 0; l < count; l++) {
+                lanes.store(l, bufferDigest, 0);
+                writeUDF(bufferDigest, out, laneItems[l] * stride);
+            }
+            return;
+        }
+        for (int l = 0; l < count; l++) {
+            try {
+                outer.update(prefix);
+                outer.update(laneDigests, l * DIGEST_LENGTH, DIGEST_LENGTH);
+                outer.digest(bufferDigest, 0, DIGEST_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+            writeUDF(bufferDigest, out, laneItems[l] * stride);
+        }
+    }
+
+    /**
+     * Fingerprints a single data item into the given output buffer.
+     *
+     * @param data   Buffer holding the data to be fingerprinted.
+     * @param offset Offset of the data in the buffer.
+     * @param length Length of the data.
+     * @param out    Output buffer receiving {@link #stride()} bytes.
+     * @param outOff Offset in the output buffer.
+     */
+    public void fingerprint(byte[] data, int offset, int length, byte[] out, int outOff) {
+        if (keccak != null) {
+            keccak.update(data, offset, length);
+            keccak.doFinal(dataDigest, 0);
+            keccak.outerDigest(keccakPrefix, dataDigest, 0, bufferDigest, 0);
+            writeUDF(bufferDigest, out, outOff);
+            return;
+        }
+        try {
+            // H(<Data>)
+            inner.update(data, offset, length);
+            inner.digest(dataDigest, 0, DIGEST_LENGTH);
+
+            // H(<Content-ID> + ':' + H(<Data>))
+            outer.update(prefix);
+            outer.update(dataDigest);
+            outer.digest(bufferDigest, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        writeUDF(bufferDigest, out, outOff);
+    }
+
+    /**
+     * Fingerprints the remaining bytes of a buffer into the given output buffer.
+     * The buffer position is moved to its limit.
+     *
+     * @param data   Buffer holding the data to be fingerprinted, possibly direct
+     *               or memory mapped.
+     * @param out    Output buffer receiving {@link #stride()} bytes.
+     * @param outOff Offset in the output buffer.
+     */
+    public void fingerprint(ByteBuffer data, byte[] out, int outOff) {
+        if (keccak != null) {
+            keccak.update(data);
+            keccak.doFinal(dataDigest, 0);
+            keccak.outerDigest(keccakPrefix, dataDigest, 0, bufferDigest, 0);
+            writeUDF(bufferDigest, out, outOff);
+            return;
+        }
+        try {
+            inner.update(data);
+            inner.digest(dataDigest, 0, DIGEST_LENGTH);
+
+            outer.update(prefix);
+            outer.update(dataDigest);
+            outer.digest(bufferDigest, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        writeUDF(bufferDigest, out, outOff);
+    }
+
+    /**
+     * Fingerprints a data item from its digest into the given output buffer.
+     *
+     * @param dataDigest Digest of the data, H(Data).
+     * @param out        Output buffer receiving {@link #stride()} bytes.
+     * @param outOff     Offset in the output buffer.
+     */
+    public void fingerprintDigest(byte[] dataDigest, byte[] out, int outOff) {
+        if (keccak != null && dataDigest.length == DIGEST_LENGTH) {
+            keccak.outerDigest(keccakPrefix, dataDigest, 0, bufferDigest, 0);
+            writeUDF(bufferDigest, out, outOff);
+            return;
+        }
+        try {
+            outer.update(prefix);
+            outer.update(dataDigest);
+            outer.digest(bufferDigest, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        writeUDF(bufferDigest, out, outOff);
+    }
+
+    private void writeUDF(byte[] digest, byte[] out, int outOff) {
+        if (mac == null) {
+            int compression = UDF.getCompression(digest);
+            UdfTypeIdentifier typeIdentifier = UdfTypeIdentifier.getTypeIdentifier(digestAlgorithm, compression);
+            out[outOff] = (byte) typeIdentifier.code;
+            System.arraycopy(digest, 0, out, outOff + 1, stride - 1);
+        } else {
+            UDFAuthenticator.authenticate(mac, digest, authenticator, 0);
+            out[outOff] = (byte) authenticatorType.code;
+            System.arraycopy(authenticator, 0, out, outOff + 1, stride - 1);
+        }
+    }
+}
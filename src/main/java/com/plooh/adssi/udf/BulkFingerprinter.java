@@ -0,0 +1,557 @@
+package com.plooh.adssi.udf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Fingerprints one field of every record of a large CSV or NDJSON file.
+ *
+ * The input is memory mapped and split into chunks of about chunkLength bytes
+ * on line boundaries, which are processed in parallel on a fixed pool of
+ * worker threads. Fields are hashed straight from the mapped bytes unless they
+ * have to be unescaped, see {@link RecordFormat}. At most maxInFlight chunk
+ * results are held in memory.
+ *
+ * The output holds one UDF per record having the field, as binary UDFs of
+ * {@link BatchFingerprinter#stride()} bytes back to back or as presentations,
+ * one per line. Records are written in input order, or sorted by binary UDF:
+ * each chunk is then sorted into a temporary run file and the runs are merged.
+ *
+ * Can be run from the command line, see {@link #main(String[])}.
+ */
+public class BulkFingerprinter implements AutoCloseable {
+
+    /**
+     * Target length of the chunks processed by a worker thread.
+     */
+    static final int CHUNK_LENGTH = 32 * 1024 * 1024;
+
+    /**
+     * Maximum length of a line, terminator included.
+     */
+    static final int MAX_RECORD_LENGTH = 1024 * 1024;
+
+    private static final int MERGE_BUFFER_LENGTH = 64 * 1024;
+
+    private final int chunkLength;
+    private final int maxInFlight;
+    private final ExecutorService executor;
+    private final ThreadLocal<BatchFingerprinter> fingerprinters;
+    private final int stride;
+
+    /**
+     * @param contentType     MIME media type of the fields.
+     * @param bits            Precision, must be a multiple of 20 bits.
+     * @param digestAlgorithm The cryptographic digest to use, SHA2_512 if null.
+     * @param key             Optional key used to create keyed fingerprints.
+     * @param threads         Number of worker threads.
+     */
+    public BulkFingerprinter(String contentType, int bits, DigestAlgorithm digestAlgorithm, String key,
+            int threads) {
+        this(contentType, bits, digestAlgorithm, key, threads, threads * 2, CHUNK_LENGTH);
+    }
+
+    BulkFingerprinter(String contentType, int bits, DigestAlgorithm digestAlgorithm, String key, int threads,
+            int maxInFlight, int chunkLength) {
+        if (threads < 1 || maxInFlight < 1 || chunkLength < 1) {
+            throw new IllegalArgumentException("Threads, chunks in flight and chunk length must be positive");
+        }
+        this.chunkLength = chunkLength;
+        this.maxInFlight = maxInFlight;
+        this.fingerprinters = ThreadLocal
+                .withInitial(() -> new BatchFingerprinter(contentType, bits, digestAlgorithm, key));
+        this.stride = new BatchFingerprinter(contentType, bits, digestAlgorithm, key).stride();
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "udf-bulk-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Fingerprints the records of input into output, replacing it.
+     *
+     * @param input   The record file.
+     * @param records The format of the records and the field to fingerprint.
+     * @param output  The output file.
+     * @param format  Binary UDFs or presentations.
+     * @param sorted  true to sort the output by binary UDF, false to keep the
+     *                input order.
+     * @return The number of records fingerprinted and skipped.
+     * @throws IOException If the input can not be read or the output written.
+     */
+    public Summary fingerprint(Path input, RecordFormat records, Path output, OutputFormat format, boolean sorted)
+            throws IOException {
+        Path runDirectory = sorted ? Files.createTempDirectory(output.toAbsolutePath().getParent(), "udf-runs")
+                : null;
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long next = 0;
+            long fingerprinted = 0;
+            long skipped = 0;
+            List<Path> runs = new ArrayList<>();
+            while (next < size || !pending.isEmpty()) {
+                while (pending.size() < maxInFlight && next < size) {
+                    long start = next;
+                    pending.add(executor.submit(() -> process(in, size, start, records, format, runDirectory)));
+                    next += chunkLength;
+                }
+                Chunk chunk = take(pending.poll());
+                fingerprinted += chunk.records;
+                skipped += chunk.skipped;
+                if (sorted) {
+                    runs.add(chunk.run);
+                } else {
+                    write(out, chunk.buffer, chunk.length);
+                }
+            }
+            if (sorted) {
+                merge(runs, out, format);
+            }
+            return new Summary(fingerprinted, skipped);
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+            if (runDirectory != null) {
+                deleteRuns(runDirectory);
+            }
+        }
+    }
+
+    /**
+     * Shuts the worker threads down.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Fingerprints the records starting in [start, start + chunkLength).
+     */
+    private Chunk process(FileChannel in, long size, long start, RecordFormat records, OutputFormat format,
+            Path runDirectory) throws IOException {
+        // Map one byte before the chunk to tell whether it starts a line.
+        long mapStart = start == 0 ? 0 : start - 1;
+        long chunkEnd = Math.min(size, start + chunkLength);
+        long mapEnd = Math.min(size, chunkEnd + MAX_RECORD_LENGTH);
+        MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        ByteBuffer view = buffer.duplicate();
+        int limit = (int) (mapEnd - mapStart);
+        int owned = (int) (chunkEnd - mapStart);
+
+        int position = 0;
+        if (start > 0 || records.header()) {
+            while (position < limit && buffer.get(position) != '\n') {
+                position++;
+            }
+            position++;
+        }
+
+        BatchFingerprinter fingerprinter = fingerprinters.get();
+        RecordFormat.Field field = new RecordFormat.Field();
+        boolean binary = format.binary() || runDirectory != null;
+        int recordLength = binary ? stride : format.lineLength(stride);
+        byte[] udf = new byte[stride];
+        Chunk chunk = new Chunk(Math.max(1024, owned / 8));
+        while (position < owned) {
+            int end = position;
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+            if (end == limit && mapEnd < size) {
+                throw new IllegalStateException(
+                        "Record longer than " + MAX_RECORD_LENGTH + " bytes at offset " + (mapStart + position));
+            }
+            int next = end + 1;
+            if (end > position && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            if (end > position) {
+                if (records.find(buffer, position, end, field)) {
+                    if (field.unescaped < 0) {
+                        view.limit(field.end);
+                        view.position(field.start);
+                        fingerprinter.fingerprint(view, udf, 0);
+                    } else {
+                        fingerprinter.fingerprint(field.scratch, 0, field.unescaped, udf, 0);
+                    }
+                    byte[] out = chunk.reserve(recordLength);
+                    if (binary) {
+                        System.arraycopy(udf, 0, out, chunk.length, stride);
+                    } else {
+                        format.encode(udf, out, chunk.length);
+                    }
+                    chunk.length += recordLength;
+                    chunk.records++;
+                } else {
+                    chunk.skipped++;
+                }
+            }
+            position = next;
+        }
+        if (runDirectory != null) {
+            chunk.run = writeRun(chunk, runDirectory);
+            chunk.buffer = null;
+        }
+        return chunk;
+    }
+
+    private Path writeRun(Chunk chunk, Path runDirectory) throws IOException {
+        int count = (int) chunk.records;
+        int words = RowSort.words(stride);
+        long[] rows = new long[count * words];
+        for (int i = 0; i < count; i++) {
+            RowSort.pack(chunk.buffer, i * stride, stride, rows, i * words);
+        }
+        int[] order = RowSort.order(rows, words, count);
+        byte[] sorted = new byte[count * stride];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(chunk.buffer, order[i] * stride, sorted, i * stride, stride);
+        }
+        Path run = Files.createTempFile(runDirectory, "run", ".udf");
+        Files.write(run, sorted);
+        return run;
+    }
+
+    /**
+     * Merges the sorted runs into the output.
+     */
+    private void merge(List<Path> runs, FileChannel out, OutputFormat format) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+                (a, b) -> Arrays.compareUnsigned(a.current, b.current));
+        OutputStream output = new BufferedOutputStream(Channels.newOutputStream(out), MERGE_BUFFER_LENGTH);
+        byte[] line = format.binary() ? null : new byte[format.lineLength(stride)];
+        List<Run> opened = new ArrayList<>(runs.size());
+        try {
+            for (Path path : runs) {
+                Run run = new Run(path, stride);
+                opened.add(run);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            Run run;
+            while ((run = queue.poll()) != null) {
+                if (line == null) {
+                    output.write(run.current);
+                } else {
+                    format.encode(run.current, line, 0);
+                    output.write(line);
+                }
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            output.flush();
+        } finally {
+            for (Run run : opened) {
+                run.close();
+            }
+        }
+    }
+
+    private static void write(FileChannel out, byte[] buffer, int length) throws IOException {
+        ByteBuffer source = ByteBuffer.wrap(buffer, 0, length);
+        while (source.hasRemaining()) {
+            out.write(source);
+        }
+    }
+
+    private static void deleteRuns(Path runDirectory) throws IOException {
+        try (Stream<Path> runs = Files.list(runDirectory)) {
+            for (Path run : (Iterable<Path>) runs::iterator) {
+                Files.deleteIfExists(run);
+            }
+        }
+        Files.deleteIfExists(runDirectory);
+    }
+
+    private static Chunk take(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Command line entry point.
+     *
+     * <pre>
+     * BulkFingerprinter (--csv column | --ndjson field) --content-type type [options] input output
+     * </pre>
+     *
+     * Run without arguments for the list of options.
+     */
+    public static void main(String[] args) throws IOException {
+        System.exit(run(args, System.err));
+    }
+
+    static int run(String[] args, PrintStream err) throws IOException {
+        Integer column = null;
+        String jsonField = null;
+        char delimiter = ',';
+        boolean header = false;
+        String contentType = null;
+        int bits = 0;
+        DigestAlgorithm digestAlgorithm = null;
+        String key = null;
+        boolean binary = false;
+        int presentationBits = 0;
+        boolean sorted = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--csv":
+                        column = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--ndjson":
+                        jsonField = value(args, ++i, arg);
+                        break;
+                    case "--delimiter":
+                        String d = value(args, ++i, arg);
+                        delimiter = "\\t".equals(d) ? '\t' : d.charAt(0);
+                        break;
+                    case "--header":
+                        header = true;
+                        break;
+                    case "--content-type":
+                        contentType = value(args, ++i, arg);
+                        break;
+                    case "--bits":
+                        bits = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--digest":
+                        digestAlgorithm = DigestAlgorithm.valueOf(value(args, ++i, arg));
+                        break;
+                    case "--key":
+                        key = value(args, ++i, arg);
+                        break;
+                    case "--binary":
+                        binary = true;
+                        break;
+                    case "--presentation-bits":
+                        presentationBits = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--sort":
+                        sorted = true;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    default:
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option " + arg);
+                        }
+                        files.add(arg);
+                }
+            }
+            if ((column == null) == (jsonField == null)) {
+                throw new IllegalArgumentException("Exactly one of --csv and --ndjson is required");
+            }
+            if (contentType == null || files.size() != 2) {
+                throw new IllegalArgumentException("Content type, input and output are required");
+            }
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+            err.println(e.getMessage());
+            usage(err);
+            return 2;
+        }
+
+        RecordFormat records = column != null ? RecordFormat.csv(column, delimiter, header)
+                : RecordFormat.ndjson(jsonField);
+        OutputFormat format = binary ? OutputFormat.BINARY : OutputFormat.text(presentationBits);
+        long startTime = System.nanoTime();
+        try (BulkFingerprinter bulk = new BulkFingerprinter(contentType, bits, digestAlgorithm, key, threads)) {
+            Summary summary = bulk.fingerprint(Paths.get(files.get(0)), records, Paths.get(files.get(1)), format,
+                    sorted);
+            err.printf("Fingerprinted %d records, skipped %d, in %d ms%n", summary.records(), summary.skipped(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        }
+        return 0;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value of " + option);
+        }
+        return args[index];
+    }
+
+    private static void usage(PrintStream err) {
+        err.println("Usage: BulkFingerprinter (--csv column | --ndjson field) --content-type type [options]"
+                + " input output");
+        err.println("  --csv column             Fingerprint the CSV column, starting at 0");
+        err.println("  --delimiter char         CSV delimiter, ',' by default, \\t for tab");
+        err.println("  --header                 Skip the first line");
+        err.println("  --ndjson field           Fingerprint the top level field of NDJSON records");
+        err.println("  --content-type type      Content type of the fields");
+        err.println("  --bits bits              Precision of the UDFs, default if 0");
+        err.println("  --digest algorithm       SHA2_512 (default) or SHA3_512");
+        err.println("  --key key                Compute keyed fingerprints");
+        err.println("  --binary                 Write binary UDFs instead of presentations");
+        err.println("  --presentation-bits bits Precision of the presentations, full UDF if 0");
+        err.println("  --sort                   Sort the output by UDF");
+        err.println("  --threads count          Number of worker threads");
+    }
+
+    /**
+     * The format of the output file.
+     */
+    public static final class OutputFormat {
+
+        /**
+         * Binary UDFs back to back.
+         */
+        public static final OutputFormat BINARY = new OutputFormat(true, 0);
+
+        private final boolean binary;
+        private final int bits;
+
+        private OutputFormat(boolean binary, int bits) {
+            this.binary = binary;
+            this.bits = bits;
+        }
+
+        /**
+         * @param bits Precision of the presentations, the full UDF if not
+         *             positive.
+         * @return Presentations, one per line.
+         */
+        public static OutputFormat text(int bits) {
+            return new OutputFormat(false, bits);
+        }
+
+        boolean binary() {
+            return binary;
+        }
+
+        int lineLength(int stride) {
+            return Base32Presentation.length(stride, 4, "-", bits) + 1;
+        }
+
+        void encode(byte[] udf, byte[] out, int offset) {
+            int length = Base32Presentation.encode(udf, 0, udf.length, 4, "-", bits, out, offset);
+            out[offset + length] = '\n';
+        }
+    }
+
+    /**
+     * Counts of a run.
+     */
+    public static final class Summary {
+
+        private final long records;
+        private final long skipped;
+
+        Summary(long records, long skipped) {
+            this.records = records;
+            this.skipped = skipped;
+        }
+
+        /**
+         * @return The number of records fingerprinted.
+         */
+        public long records() {
+            return records;
+        }
+
+        /**
+         * @return The number of non empty lines without the field.
+         */
+        public long skipped() {
+            return skipped;
+        }
+    }
+
+    private static final class Chunk {
+
+        byte[] buffer;
+        int length;
+        long records;
+        long skipped;
+        Path run;
+
+        Chunk(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        byte[] reserve(int bytes) {
+            if (length + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(length + bytes, buffer.length * 2));
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * A sorted run file being merged.
+     */
+    private static final class Run {
+
+        private final InputStream in;
+        final byte[] current;
+
+        Run(Path path, int stride) throws IOException {
+            this.in = new BufferedInputStream(Files.newInputStream(path), MERGE_BUFFER_LENGTH);
+            this.current = new byte[stride];
+        }
+
+        boolean advance() throws IOException {
+            int read = in.readNBytes(current, 0, current.length);
+            if (read == 0) {
+                return false;
+            }
+            if (read < current.length) {
+                throw new EOFException("Truncated run");
+            }
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
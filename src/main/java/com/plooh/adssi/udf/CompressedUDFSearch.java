@@ -0,0 +1,311 @@
+package com.plooh.adssi.udf;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Searches for a content variant whose UDF has a compressed type identifier
+ * (Digest_SHA_2_512_20 to Digest_SHA_2_512_50 and their SHA3 equivalents).
+ *
+ * The candidates are the data followed by an 8 byte big endian nonce. The
+ * nonce space is handed out to the workers in blocks of {@link #BLOCK_SIZE}
+ * nonces. Each worker absorbs the data and the content type prefix once, then
+ * hashes every nonce on clones of those digest states, so an attempt only
+ * hashes the nonce and the 64 byte inner digest whatever the data length. A
+ * search can be cancelled, stops at the end of its time budget and reports
+ * the number of attempts and the hash rate.
+ */
+public class CompressedUDFSearch {
+
+    static final int BLOCK_SIZE = 1 << 14;
+    private static final int DIGEST_LENGTH = 64;
+    private static final int NONCE_LENGTH = 8;
+
+    private final byte[] data;
+    private final String contentType;
+    private final int bits;
+    private final DigestAlgorithm digestAlgorithm;
+    // Digest of Content-ID + ':' + H(Data), null for the digest algorithm.
+    private final Supplier<MessageDigest> outerDigests;
+
+    /**
+     * @param data            The data the nonce is appended to.
+     * @param contentType     MIME media type of data being fingerprinted.
+     * @param bits            Precision of the resulting UDF.
+     * @param digestAlgorithm The cryptographic digest to use, SHA2_512 if null.
+     */
+    public CompressedUDFSearch(byte[] data, String contentType, int bits, DigestAlgorithm digestAlgorithm) {
+        this(data, contentType, bits, digestAlgorithm, null);
+    }
+
+    /**
+     * Searches with another digest of the UDF data buffer, so tests can plant
+     * hits at the higher compression levels.
+     */
+    CompressedUDFSearch(byte[] data, String contentType, int bits, DigestAlgorithm digestAlgorithm,
+            Supplier<MessageDigest> outerDigests) {
+        this.data = data.clone();
+        this.contentType = contentType;
+        this.bits = bits;
+        this.digestAlgorithm = digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm;
+        this.outerDigests = outerDigests;
+    }
+
+    /**
+     * Starts a search on its own pool of one thread per available processor.
+     *
+     * @param compression The minimum compression level, 1 (20 trailing zero
+     *                    bits) to 4 (50 bits), as returned by
+     *                    {@link UDF#getCompression}.
+     * @param timeBudget  Maximum duration of the search, null for no limit.
+     * @return The running search.
+     */
+    public Search start(int compression, Duration timeBudget) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "udf-search-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Search search = start(compression, timeBudget, executor, parallelism);
+        search.result.whenComplete((result, e) -> executor.shutdown());
+        return search;
+    }
+
+    /**
+     * Starts a search on the given executor.
+     *
+     * @param compression The minimum compression level, 1 (20 bits) to 4 (50
+     *                    bits).
+     * @param timeBudget  Maximum duration of the search, null for no limit.
+     * @param executor    The executor running the workers.
+     * @param parallelism Number of workers.
+     * @return The running search.
+     */
+    public Search start(int compression, Duration timeBudget, ExecutorService executor, int parallelism) {
+        if (compression < 1 || compression > 4) {
+            throw new IllegalArgumentException("Unexpected compression level: " + compression);
+        }
+        Search search = new Search(compression, timeBudget, parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            executor.execute(search::work);
+        }
+        return search;
+    }
+
+    /**
+     * A running search.
+     */
+    public class Search {
+
+        private final int compression;
+        private final long startNanos = System.nanoTime();
+        private final long deadlineNanos;
+        private final AtomicLong nextBlock = new AtomicLong();
+        private final LongAdder attempts = new LongAdder();
+        private final AtomicBoolean stopped = new AtomicBoolean();
+        private final AtomicInteger running;
+        private final CompletableFuture<Optional<Result>> result = new CompletableFuture<>();
+
+        Search(int compression, Duration timeBudget, int parallelism) {
+            this.compression = compression;
+            this.deadlineNanos = timeBudget == null ? Long.MAX_VALUE : startNanos + timeBudget.toNanos();
+            this.running = new AtomicInteger(parallelism);
+        }
+
+        /**
+         * @return The result, empty if the search was cancelled or ran out of time.
+         */
+        public CompletableFuture<Optional<Result>> result() {
+            return result;
+        }
+
+        public void cancel() {
+            stopped.set(true);
+        }
+
+        public boolean isDone() {
+            return result.isDone();
+        }
+
+        /**
+         * @return The number of candidates hashed so far.
+         */
+        public long attempts() {
+            return attempts.sum();
+        }
+
+        public Duration elapsed() {
+            return Duration.ofNanos(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * @return The number of candidates hashed per second.
+         */
+        public double hashRate() {
+            long nanos = System.nanoTime() - startNanos;
+            return nanos == 0 ? 0 : attempts() * 1e9 / nanos;
+        }
+
+        void work() {
+            try {
+                Worker worker = new Worker();
+                while (!stopped.get()) {
+                    if (System.nanoTime() - deadlineNanos > 0) {
+                        stopped.set(true);
+                        break;
+                    }
+                    long first = nextBlock.getAndIncrement() * BLOCK_SIZE;
+                    long nonce = worker.search(first, compression, this);
+                    if (nonce >= 0 && stopped.compareAndSet(false, true)) {
+                        result.complete(Optional.of(worker.result(nonce, this)));
+                    }
+                }
+            } catch (RuntimeException e) {
+                stopped.set(true);
+                result.completeExceptionally(e);
+            } finally {
+                if (running.decrementAndGet() == 0) {
+                    result.complete(Optional.empty());
+                }
+            }
+        }
+    }
+
+    /**
+     * Digest engines and buffers of one search thread.
+     */
+    private class Worker {
+
+        // Digest state after Data, only ever cloned.
+        private final MessageDigest innerPrototype = Digests.messageDigest(digestAlgorithm);
+        // Digest state after UTF8(ContentType) + ":", only ever cloned.
+        private final MessageDigest outerPrototype = outerDigests == null ? Digests.messageDigest(digestAlgorithm)
+                : outerDigests.get();
+        private final byte[] nonceBytes = new byte[NONCE_LENGTH];
+        private final byte[] dataDigest = new byte[DIGEST_LENGTH];
+        private final byte[] bufferDigest = new byte[DIGEST_LENGTH];
+
+        Worker() {
+            innerPrototype.update(data);
+            outerPrototype.update(contentType.getBytes(StandardCharsets.UTF_8));
+            outerPrototype.update(UDF.TAG_SEPARATOR_BYTE);
+            // Fail fast if the provider does not support cloning.
+            copy(innerPrototype);
+            copy(outerPrototype);
+        }
+
+        /**
+         * @return The first nonce of the block reaching the compression level, -1
+         *         if none does.
+         */
+        long search(long first, int compression, Search search) {
+            int done = 0;
+            try {
+                for (long nonce = first; nonce < first + BLOCK_SIZE; nonce++) {
+                    if (search.stopped.get()) {
+                        return -1;
+                    }
+                    hash(nonce);
+                    done++;
+                    if (UDF.getCompression(bufferDigest) >= compression) {
+                        return nonce;
+                    }
+                }
+                return -1;
+            } finally {
+                search.attempts.add(done);
+            }
+        }
+
+        private void hash(long nonce) {
+            for (int i = NONCE_LENGTH - 1; i >= 0; i--) {
+                nonceBytes[i] = (byte) nonce;
+                nonce >>>= 8;
+            }
+            try {
+                MessageDigest inner = copy(innerPrototype);
+                inner.update(nonceBytes);
+                inner.digest(dataDigest, 0, DIGEST_LENGTH);
+                MessageDigest outer = copy(outerPrototype);
+                outer.update(dataDigest);
+                outer.digest(bufferDigest, 0, DIGEST_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Result result(long nonce, Search search) {
+            hash(nonce);
+            byte[] candidate = new byte[data.length + NONCE_LENGTH];
+            System.arraycopy(data, 0, candidate, 0, data.length);
+            System.arraycopy(nonceBytes, 0, candidate, data.length, NONCE_LENGTH);
+            UDF udf = UDF.bufferDigestToUDF(bufferDigest.clone(), bits, digestAlgorithm, null);
+            return new Result(nonce, candidate, udf, search.attempts(), search.elapsed());
+        }
+
+        private MessageDigest copy(MessageDigest prototype) {
+            try {
+                return (MessageDigest) prototype.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException("Digest can not be cloned: " + prototype.getAlgorithm(), e);
+            }
+        }
+    }
+
+    /**
+     * A content variant with a compressed UDF.
+     */
+    public static class Result {
+
+        private final long nonce;
+        private final byte[] data;
+        private final UDF udf;
+        private final long attempts;
+        private final Duration elapsed;
+
+        Result(long nonce, byte[] data, UDF udf, long attempts, Duration elapsed) {
+            this.nonce = nonce;
+            this.data = data;
+            this.udf = udf;
+            this.attempts = attempts;
+            this.elapsed = elapsed;
+        }
+
+        public long nonce() {
+            return nonce;
+        }
+
+        /**
+         * @return The data followed by the nonce, the content whose UDF is
+         *         compressed.
+         */
+        public byte[] data() {
+            return data.clone();
+        }
+
+        public UDF udf() {
+            return udf;
+        }
+
+        public long attempts() {
+            return attempts;
+        }
+
+        public Duration elapsed() {
+            return elapsed;
+        }
+    }
+}
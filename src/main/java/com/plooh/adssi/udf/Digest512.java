@@ -0,0 +1,85 @@
+package com.plooh.adssi.udf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A 512 bit digest engine whose intermediate state can be copied and exported,
+ * which JCA message digests do not allow.
+ *
+ * Instances are not thread safe.
+ */
+abstract class Digest512 {
+
+    static final int DIGEST_LENGTH = 64;
+
+    private static final int SCRATCH_LENGTH = 4096;
+
+    private byte[] scratch;
+
+    static Digest512 newInstance(DigestAlgorithm digestAlgorithm) {
+        switch (digestAlgorithm) {
+            case SHA2_512:
+                return new Sha512();
+            case SHA3_512:
+                return new Keccak512();
+            default:
+                throw new IllegalStateException("Unexpected algorithm: " + digestAlgorithm);
+        }
+    }
+
+    abstract DigestAlgorithm algorithm();
+
+    /**
+     * @return The number of bytes absorbed since the last reset.
+     */
+    abstract long length();
+
+    abstract void update(byte[] in, int offset, int length);
+
+    void update(byte[] in) {
+        update(in, 0, in.length);
+    }
+
+    void update(ByteBuffer in) {
+        if (in.hasArray()) {
+            update(in.array(), in.arrayOffset() + in.position(), in.remaining());
+            in.position(in.limit());
+            return;
+        }
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_LENGTH];
+        }
+        while (in.hasRemaining()) {
+            int length = Math.min(in.remaining(), scratch.length);
+            in.get(scratch, 0, length);
+            update(scratch, 0, length);
+        }
+    }
+
+    /**
+     * Completes the digest, writes the 64 byte value and resets the engine.
+     */
+    abstract void doFinal(byte[] out, int offset);
+
+    byte[] doFinal() {
+        byte[] out = new byte[DIGEST_LENGTH];
+        doFinal(out, 0);
+        return out;
+    }
+
+    abstract void reset();
+
+    /**
+     * @return An independent engine with the same state.
+     */
+    abstract Digest512 copy();
+
+    /**
+     * @return The number of bytes written by {@link #writeState(ByteBuffer)}.
+     */
+    abstract int stateLength();
+
+    abstract void writeState(ByteBuffer out);
+
+    abstract void readState(ByteBuffer in);
+}
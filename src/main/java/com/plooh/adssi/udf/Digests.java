@@ -0,0 +1,160 @@
+package com.plooh.adssi.udf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Digest helpers shared by the UDF computations.
+ *
+ * All the update methods feed the content to the given digest without ever
+ * holding the whole content on the heap, so the result is the same as the
+ * digest of the corresponding byte array.
+ */
+class Digests {
+
+    /**
+     * Size of the buffer used to read streams and channels.
+     */
+    static final int STREAM_BUFFER_LENGTH = 64 * 1024;
+
+    /**
+     * Size of the windows used to memory map files (64 MB).
+     */
+    static final int MAP_WINDOW_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * System property selecting {@link Keccak512} instead of the JCA provider
+     * for SHA3_512 when set to true.
+     */
+    static final String KECCAK_PROPERTY = "com.plooh.adssi.udf.keccak";
+
+    static final boolean KECCAK_ENABLED = Boolean.getBoolean(KECCAK_PROPERTY);
+
+    private static final ThreadLocal<Keccak512> KECCAK = ThreadLocal.withInitial(Keccak512::new);
+
+    private Digests() {
+    }
+
+    /**
+     * @return The Keccak engine of the calling thread, in an undefined state.
+     */
+    static Keccak512 keccak() {
+        return KECCAK.get();
+    }
+
+    /**
+     * Returns a new message digest for the given algorithm.
+     *
+     * @param digestAlgorithm The digest algorithm, SHA2_512 if null.
+     * @return A fresh message digest.
+     */
+    static MessageDigest messageDigest(DigestAlgorithm digestAlgorithm) {
+        digestAlgorithm = digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm;
+        switch (digestAlgorithm) {
+            case SHA2_512:
+                return DigestUtils.getSha512Digest();
+            case SHA3_512:
+                return KECCAK_ENABLED ? new Keccak512.Jca() : DigestUtils.getSha3_512Digest();
+            default:
+                throw new IllegalStateException("Unexpected algorithm: " + digestAlgorithm);
+        }
+    }
+
+    /**
+     * H(data)
+     *
+     * @param data            The data to digest.
+     * @param digestAlgorithm The digest algorithm.
+     * @return The digest value.
+     */
+    static byte[] digest(byte[] data, DigestAlgorithm digestAlgorithm) {
+        switch (digestAlgorithm) {
+            case SHA2_512:
+                return DigestUtils.sha512(data);
+            case SHA3_512:
+                if (KECCAK_ENABLED) {
+                    Keccak512 engine = KECCAK.get();
+                    engine.reset();
+                    engine.update(data, 0, data.length);
+                    return engine.doFinal();
+                }
+                return DigestUtils.sha3_512(data);
+            default:
+                throw new IllegalStateException("Unexpected algorithm: " + digestAlgorithm);
+        }
+    }
+
+    /**
+     * Feeds the remaining content of the stream to the digest. The stream is not
+     * closed.
+     */
+    static MessageDigest update(MessageDigest messageDigest, InputStream data) throws IOException {
+        byte[] buffer = new byte[STREAM_BUFFER_LENGTH];
+        int read;
+        while ((read = data.read(buffer, 0, buffer.length)) != -1) {
+            messageDigest.update(buffer, 0, read);
+        }
+        return messageDigest;
+    }
+
+    /**
+     * Feeds the remaining content of the channel to the digest. The channel is not
+     * closed.
+     */
+    static MessageDigest update(MessageDigest messageDigest, ReadableByteChannel data) throws IOException {
+        return update(messageDigest, data, ByteBuffer.allocate(STREAM_BUFFER_LENGTH));
+    }
+
+    /**
+     * Feeds the remaining content of the channel to the digest through the given
+     * buffer. The channel is not closed.
+     */
+    static MessageDigest update(MessageDigest messageDigest, ReadableByteChannel data, ByteBuffer buffer)
+            throws IOException {
+        buffer.clear();
+        while (data.read(buffer) != -1) {
+            buffer.flip();
+            messageDigest.update(buffer);
+            buffer.clear();
+        }
+        return messageDigest;
+    }
+
+    /**
+     * Feeds the content of the file to the digest, memory mapping it in windows of
+     * {@link #MAP_WINDOW_LENGTH} bytes.
+     */
+    static MessageDigest update(MessageDigest messageDigest, Path data) throws IOException {
+        return update(messageDigest, data, MAP_WINDOW_LENGTH);
+    }
+
+    static MessageDigest update(MessageDigest messageDigest, Path data, int windowLength) throws IOException {
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+            return update(messageDigest, channel, windowLength);
+        }
+    }
+
+    /**
+     * Feeds the content of the file channel to the digest, memory mapping it in
+     * windows of windowLength bytes. The channel is not closed.
+     */
+    static MessageDigest update(MessageDigest messageDigest, FileChannel data, int windowLength)
+            throws IOException {
+        long size = data.size();
+        for (long position = 0; position < size; position += windowLength) {
+            long length = Math.min(windowLength, size - position);
+            MappedByteBuffer window = data.map(FileChannel.MapMode.READ_ONLY, position, length);
+            messageDigest.update(window);
+        }
+        return messageDigest;
+    }
+}
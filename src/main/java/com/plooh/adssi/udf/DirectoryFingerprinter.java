@@ -0,0 +1,273 @@
+package com.plooh.adssi.udf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Fingerprints all the regular files of a directory tree in parallel.
+ *
+ * Files are hashed on a fixed pool of worker threads, each with its own digest
+ * engine and read buffer. Small files are read through that buffer, files of
+ * at least {@link #MAP_THRESHOLD} bytes are memory mapped in windows. At most
+ * maxInFlight files are queued or being hashed at any time, so the memory
+ * used does not depend on the number or size of the files.
+ */
+public class DirectoryFingerprinter implements AutoCloseable {
+
+    /**
+     * Files of at least this size are memory mapped.
+     */
+    static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private final PreparedFingerprinter fingerprinter;
+    private final int maxInFlight;
+    private final long mapThreshold;
+    private final ExecutorService executor;
+    private final ThreadLocal<MessageDigest> digests;
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal
+            .withInitial(() -> ByteBuffer.allocate(Digests.STREAM_BUFFER_LENGTH));
+
+    /**
+     * @param contentType     MIME media type of the files.
+     * @param bits            Precision, must be a multiple of 20 bits.
+     * @param digestAlgorithm The cryptographic digest to use, SHA2_512 if null.
+     * @param key             Optional key used to create keyed fingerprints.
+     * @param threads         Number of worker threads.
+     */
+    public DirectoryFingerprinter(String contentType, int bits, DigestAlgorithm digestAlgorithm, String key,
+            int threads) {
+        this(contentType, bits, digestAlgorithm, key, threads, threads * 4, MAP_THRESHOLD);
+    }
+
+    DirectoryFingerprinter(String contentType, int bits, DigestAlgorithm digestAlgorithm, String key, int threads,
+            int maxInFlight, long mapThreshold) {
+        if (threads < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Threads and files in flight must be positive");
+        }
+        this.fingerprinter = new PreparedFingerprinter(contentType, bits, digestAlgorithm, key);
+        this.maxInFlight = maxInFlight;
+        this.mapThreshold = mapThreshold;
+        DigestAlgorithm algorithm = fingerprinter.digestAlgorithm();
+        this.digests = ThreadLocal.withInitial(() -> Digests.messageDigest(algorithm));
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "udf-files-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Fingerprints the regular files below root.
+     *
+     * The stream must be closed to release the directory handles. Read errors
+     * are thrown as {@link UncheckedIOException} when the failed file is reached.
+     *
+     * @param root    The root of the tree.
+     * @param ordered true to emit the files in the order of the directory walk,
+     *                false to emit them as soon as they are hashed.
+     * @return The stream of (path, UDF) pairs.
+     * @throws IOException If the tree can not be walked.
+     */
+    public Stream<FileUDF> fingerprint(Path root, boolean ordered) throws IOException {
+        Stream<Path> walk = Files.walk(root);
+        Iterator<Path> files = walk.filter(Files::isRegularFile).iterator();
+        Results results = ordered ? new OrderedResults(files) : new UnorderedResults(files);
+        Spliterator<FileUDF> spliterator = Spliterators.spliteratorUnknownSize(results,
+                Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0));
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            results.cancel();
+            walk.close();
+        });
+    }
+
+    /**
+     * Shuts the worker threads down.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    FileUDF fingerprint(Path file) throws IOException {
+        MessageDigest digest = digests.get();
+        digest.reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() >= mapThreshold) {
+                Digests.update(digest, channel, Digests.MAP_WINDOW_LENGTH);
+            } else {
+                Digests.update(digest, channel, buffers.get());
+            }
+        }
+        return new FileUDF(file, fingerprinter.fingerprintDigest(digest.digest()));
+    }
+
+    /**
+     * Iterates over the results, keeping at most maxInFlight files submitted.
+     */
+    private abstract class Results implements Iterator<FileUDF> {
+
+        private final Iterator<Path> files;
+
+        Results(Iterator<Path> files) {
+            this.files = files;
+        }
+
+        abstract int inFlight();
+
+        abstract void submit(Path file);
+
+        abstract Future<FileUDF> take();
+
+        abstract void cancel();
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            return inFlight() > 0;
+        }
+
+        @Override
+        public FileUDF next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new IllegalStateException("Interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw new UncheckedIOException((IOException) cause);
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        private void fill() {
+            while (inFlight() < maxInFlight && files.hasNext()) {
+                submit(files.next());
+            }
+        }
+    }
+
+    private class OrderedResults extends Results {
+
+        private final ArrayDeque<Future<FileUDF>> pending = new ArrayDeque<>();
+
+        OrderedResults(Iterator<Path> files) {
+            super(files);
+        }
+
+        @Override
+        int inFlight() {
+            return pending.size();
+        }
+
+        @Override
+        void submit(Path file) {
+            pending.add(executor.submit(() -> fingerprint(file)));
+        }
+
+        @Override
+        Future<FileUDF> take() {
+            return pending.poll();
+        }
+
+        @Override
+        void cancel() {
+            pending.forEach(future -> future.cancel(true));
+            pending.clear();
+        }
+    }
+
+    private class UnorderedResults extends Results {
+
+        private final CompletionService<FileUDF> completion = new ExecutorCompletionService<>(executor);
+        private final ArrayDeque<Future<FileUDF>> submitted = new ArrayDeque<>();
+        private int inFlight;
+
+        UnorderedResults(Iterator<Path> files) {
+            super(files);
+        }
+
+        @Override
+        int inFlight() {
+            return inFlight;
+        }
+
+        @Override
+        void submit(Path file) {
+            submitted.add(completion.submit(() -> fingerprint(file)));
+            inFlight++;
+        }
+
+        @Override
+        Future<FileUDF> take() {
+            try {
+                Future<FileUDF> future = completion.take();
+                submitted.remove(future);
+                inFlight--;
+                return future;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted", e);
+            }
+        }
+
+        @Override
+        void cancel() {
+            submitted.forEach(future -> future.cancel(true));
+            submitted.clear();
+            inFlight = 0;
+        }
+    }
+
+    /**
+     * The UDF of a file.
+     */
+    public static class FileUDF {
+
+        private final Path path;
+        private final UDF udf;
+
+        FileUDF(Path path, UDF udf) {
+            this.path = path;
+            this.udf = udf;
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        public UDF udf() {
+            return udf;
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package com.plooh.adssi.udf;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A bounded memoization cache in front of the fingerprint API, for workloads
+ * that fingerprint the same small inputs again and again.
+ *
+ * Entries are keyed by the content bytes, content type, digest algorithm,
+ * precision and key, and hold the binary UDF together with its lazily built
+ * Base32 presentation. The cache is split into lock striped segments, each
+ * kept in least recently used order. A new entry is only admitted over the
+ * least recently used one if it has been requested at least as often, as
+ * estimated by a per segment count-min sketch (TinyLFU), so a burst of one-off
+ * inputs does not flush the frequently used ones.
+ *
+ * The memory bound is a weight in bytes, estimated from the content length,
+ * the UDF length and the presentation length plus a fixed per entry overhead.
+ * The prepared fingerprinters, one per content type, precision, algorithm and
+ * key, are part of the bound: each weighs {@link #FINGERPRINTER_WEIGHT} and
+ * the least recently used is dropped once a share of the weight is used.
+ *
+ * Invalidations also cover the requests in flight: an entry computed by a
+ * request that started before {@link #invalidateKey(String)} or
+ * {@link #invalidateAll()} is returned to its caller but not admitted.
+ *
+ * Instances are thread safe.
+ */
+public class FingerprintCache {
+
+    static final int ENTRY_OVERHEAD = 128;
+
+    /**
+     * Estimated weight of a prepared fingerprinter: digest prototypes and,
+     * for keyed fingerprints, a pre-keyed MAC.
+     */
+    static final int FINGERPRINTER_WEIGHT = 4096;
+
+    private static final int MAX_SEGMENTS = 64;
+    private static final int MAX_FINGERPRINTERS = 64;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    // Access ordered, the eldest fingerprinter is dropped first. Guarded by
+    // itself.
+    private final LinkedHashMap<Profile, PreparedFingerprinter> fingerprinters = new LinkedHashMap<>(16, 0.75f,
+            true);
+    private final int maximumFingerprinters;
+    // Incremented by each invalidation.
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maximumWeight Upper bound of the estimated memory used by the
+     *                      entries and fingerprinters, in bytes.
+     * @throws IllegalArgumentException If the weight cannot hold a
+     *                                  fingerprinter and some entries.
+     */
+    public FingerprintCache(long maximumWeight) {
+        this(maximumWeight, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    FingerprintCache(long maximumWeight, int concurrency) {
+        if (maximumWeight < 2 * FINGERPRINTER_WEIGHT) {
+            throw new IllegalArgumentException("Maximum weight must be at least " + 2 * FINGERPRINTER_WEIGHT
+                    + ": " + maximumWeight);
+        }
+        // Up to an eighth of the weight for the fingerprinters.
+        this.maximumFingerprinters = (int) Math.max(1,
+                Math.min(MAX_FINGERPRINTERS, maximumWeight / 8 / FINGERPRINTER_WEIGHT));
+        maximumWeight -= (long) maximumFingerprinters * FINGERPRINTER_WEIGHT;
+        int count = Integer.highestOneBit(Math.max(1, Math.min(concurrency, MAX_SEGMENTS)) * 2 - 1);
+        // Each segment should hold a few entries, otherwise merge them.
+        while (count > 1 && maximumWeight / count < ENTRY_OVERHEAD * 16) {
+            count >>>= 1;
+        }
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maximumWeight / count);
+        }
+    }
+
+    /**
+     * Calculate the UDF fingerprint of the data, or return the cached one.
+     *
+     * @param data            Data to be fingerprinted, not retained.
+     * @param contentType     MIME media type of data being fingerprinted.
+     * @param bits            Precision, must be a multiple of 20 bits.
+     * @param digestAlgorithm The cryptographic digest to use, SHA2_512 if null.
+     * @param key             Optional key used to create a keyed fingerprint.
+     * @return The binary UDF fingerprint.
+     */
+    public UDF fingerprint(byte[] data, String contentType, int bits, DigestAlgorithm digestAlgorithm, String key) {
+        return entry(data, contentType, bits, digestAlgorithm, key).udf;
+    }
+
+    /**
+     * Same as {@link UDF#contentDigestOfDataString(byte[], String, int, DigestAlgorithm, String)}
+     * through the cache.
+     *
+     * @return The Base32 presentation of the UDF fingerprint.
+     */
+    public String contentDigestOfDataString(byte[] data, String contentType, int bits,
+            DigestAlgorithm digestAlgorithm, String key) {
+        return entry(data, contentType, bits, digestAlgorithm, key).presentation();
+    }
+
+    /**
+     * Drops every entry computed with the key, together with the authenticators
+     * keyed with it, those shared by the keyed UDF API included.
+     *
+     * @param key The key to forget.
+     */
+    public void invalidateKey(String key) {
+        Objects.requireNonNull(key, "key");
+        // Requests in flight no longer admit their results.
+        generation.incrementAndGet();
+        synchronized (fingerprinters) {
+            fingerprinters.keySet().removeIf(profile -> key.equals(profile.key));
+        }
+        UDFAuthenticator.invalidate(key);
+        for (Segment segment : segments) {
+            segment.removeIf(entryKey -> key.equals(entryKey.profile.key));
+        }
+    }
+
+    /**
+     * Drops all entries. Statistics are kept.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        synchronized (fingerprinters) {
+            fingerprinters.clear();
+        }
+        for (Segment segment : segments) {
+            segment.removeIf(entryKey -> true);
+        }
+    }
+
+    /**
+     * @return The number of cached entries.
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return The estimated memory used by the entries and fingerprinters, in
+     *         bytes.
+     */
+    public long weight() {
+        long weight = (long) fingerprinterCount() * FINGERPRINTER_WEIGHT;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    /**
+     * @return The number of prepared fingerprinters kept.
+     */
+    int fingerprinterCount() {
+        synchronized (fingerprinters) {
+            return fingerprinters.size();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of entries removed to make room for new ones.
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The ratio of requests served from the cache, 0 if none were made.
+     */
+    public double hitRate() {
+        long hitCount = hits.sum();
+        long requests = hitCount + misses.sum();
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    private Entry entry(byte[] data, String contentType, int bits, DigestAlgorithm digestAlgorithm, String key) {
+        Profile profile = new Profile(contentType, bits,
+                digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm, key);
+        EntryKey entryKey = new EntryKey(profile, data);
+        Segment segment = segments[spread(entryKey.hash) & segmentMask];
+        long start = generation.get();
+
+        Entry entry = segment.get(entryKey);
+        if (entry != null) {
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        UDF udf = fingerprinter(profile, start).fingerprint(data);
+        beforeAdmit();
+        return segment.put(entryKey.copy(), new Entry(udf, weight(data.length, udf)), start);
+    }
+
+    /**
+     * Called between the computation of a missing entry and its admission.
+     * Tests override it to race an invalidation with a request in flight.
+     */
+    void beforeAdmit() {
+    }
+
+    /**
+     * @param start The generation when the request started.
+     * @return The fingerprinter of the profile, only kept if no invalidation
+     *         happened since start.
+     */
+    private PreparedFingerprinter fingerprinter(Profile profile, long start) {
+        synchronized (fingerprinters) {
+            PreparedFingerprinter fingerprinter = fingerprinters.get(profile);
+            if (fingerprinter != null) {
+                return fingerprinter;
+            }
+        }
+        // Keyed outside the lock, a concurrent miss may prepare it twice.
+        PreparedFingerprinter created = new PreparedFingerprinter(profile.contentType, profile.bits,
+                profile.digestAlgorithm, profile.key);
+        synchronized (fingerprinters) {
+            if (generation.get() != start) {
+                return created;
+            }
+            PreparedFingerprinter existing = fingerprinters.putIfAbsent(profile, created);
+            if (existing != null) {
+                return existing;
+            }
+            if (fingerprinters.size() > maximumFingerprinters) {
+                Iterator<Profile> eldest = fingerprinters.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+            return created;
+        }
+    }
+
+    static long weight(int dataLength, UDF udf) {
+        int presentationLength = Base32Presentation.length(udf.buffer.length, 4, "-", -1);
+        return ENTRY_OVERHEAD + dataLength + udf.buffer.length + 2L * presentationLength;
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x45D9F3B;
+    }
+
+    /**
+     * Everything but the content that determines the fingerprint.
+     */
+    private static final class Profile {
+
+        final String contentType;
+        final int bits;
+        final DigestAlgorithm digestAlgorithm;
+        final String key;
+        final int hash;
+
+        Profile(String contentType, int bits, DigestAlgorithm digestAlgorithm, String key) {
+            this.contentType = contentType;
+            this.bits = bits;
+            this.digestAlgorithm = digestAlgorithm;
+            this.key = key;
+            this.hash = Objects.hash(contentType, bits, digestAlgorithm, key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Profile)) {
+                return false;
+            }
+            Profile other = (Profile) o;
+            return hash == other.hash && bits == other.bits && digestAlgorithm == other.digestAlgorithm
+                    && contentType.equals(other.contentType) && Objects.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Lookups wrap the caller's array, only admitted entries copy it.
+     */
+    private static final class EntryKey {
+
+        final Profile profile;
+        final byte[] data;
+        final int hash;
+
+        EntryKey(Profile profile, byte[] data) {
+            this(profile, data, 31 * profile.hash + Arrays.hashCode(data));
+        }
+
+        private EntryKey(Profile profile, byte[] data, int hash) {
+            this.profile = profile;
+            this.data = data;
+            this.hash = hash;
+        }
+
+        EntryKey copy() {
+            return new EntryKey(profile, data.clone(), hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof EntryKey)) {
+                return false;
+            }
+            EntryKey other = (EntryKey) o;
+            return hash == other.hash && Arrays.equals(data, other.data) && profile.equals(other.profile);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+
+        final UDF udf;
+        final long weight;
+        private volatile String presentation;
+
+        Entry(UDF udf, long weight) {
+            this.udf = udf;
+            this.weight = weight;
+        }
+
+        String presentation() {
+            String result = presentation;
+            if (result == null) {
+                // Racing threads compute the same string, either can win.
+                result = udf.presentationBase32();
+                presentation = result;
+            }
+            return result;
+        }
+    }
+
+    private final class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        // Access ordered, the eldest entry is the eviction victim.
+        private final LinkedHashMap<EntryKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+        private final long maximumWeight;
+        private long weight;
+
+        Segment(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+            this.sketch = new FrequencySketch(maximumWeight / ENTRY_OVERHEAD);
+        }
+
+        Entry get(EntryKey key) {
+            lock.lock();
+            try {
+                sketch.increment(key.hash);
+                return entries.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Admits the entry unless an invalidation happened since start.
+         */
+        Entry put(EntryKey key, Entry entry, long start) {
+            if (entry.weight > maximumWeight) {
+                return entry;
+            }
+            lock.lock();
+            try {
+                // Invalidations increment the generation before taking the
+                // segment locks.
+                if (generation.get() != start) {
+                    return entry;
+                }
+                Entry existing = entries.get(key);
+                if (existing != null) {
+                    return existing;
+                }
+                int frequency = sketch.frequency(key.hash);
+                Iterator<Map.Entry<EntryKey, Entry>> eldest = entries.entrySet().iterator();
+                while (weight + entry.weight > maximumWeight) {
+                    Map.Entry<EntryKey, Entry> victim = eldest.next();
+                    if (sketch.frequency(victim.getKey().hash) > frequency) {
+                        // Not admitted, the caller still gets its result.
+                        return entry;
+                    }
+                    weight -= victim.getValue().weight;
+                    eldest.remove();
+                    evictions.increment();
+                }
+                entries.put(key, entry);
+                weight += entry.weight;
+                return entry;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void removeIf(Predicate<EntryKey> filter) {
+            lock.lock();
+            try {
+                Iterator<Map.Entry<EntryKey, Entry>> iterator = entries.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<EntryKey, Entry> next = iterator.next();
+                    if (filter.test(next.getKey())) {
+                        weight -= next.getValue().weight;
+                        iterator.remove();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long weight() {
+            lock.lock();
+            try {
+                return weight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch of 4 rows of 4 bit counters. All counters are halved once
+     * the number of increments reaches ten times the width, so that the
+     * estimates follow recent popularity. Guarded by the segment lock.
+     */
+    static final class FrequencySketch {
+
+        private static final long[] SEEDS = { 0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+                0xD6E8FEB86659FD93L };
+        private static final long HALF_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int tableMask;
+        private final long sampleSize;
+        private long additions;
+
+        FrequencySketch(long expectedEntries) {
+            // 16 counters per long, about one counter per row and entry.
+            int length = (int) Math.min(1 << 24, Math.max(8, Long.highestOneBit(expectedEntries / 4 + 1) * 2));
+            this.table = new long[length];
+            this.tableMask = length - 1;
+            this.sampleSize = 10L * length * 16;
+        }
+
+        int frequency(int hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int row = 0; row < 4; row++) {
+                long index = index(hash, row);
+                int counter = (int) ((table[(int) (index >>> 4) & tableMask] >>> ((index & 15) << 2)) & 15);
+                frequency = Math.min(frequency, counter);
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int row = 0; row < 4; row++) {
+                long index = index(hash, row);
+                int slot = (int) (index >>> 4) & tableMask;
+                int shift = (int) (index & 15) << 2;
+                if (((table[slot] >>> shift) & 15) < 15) {
+                    table[slot] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & HALF_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private static long index(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            return h ^ (h >>> 32);
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package com.plooh.adssi.udf;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.MacSpi;
+
+/**
+ * SHA3-512 (FIPS 202) in pure Java. Input bytes are XORed straight into the 25
+ * lanes of the Keccak state, so no block buffer is needed, and the state is
+ * reused across messages: hashing does not allocate.
+ *
+ * Used instead of the JCA provider for SHA3_512 fingerprints when the
+ * {@value Digests#KECCAK_PROPERTY} system property is true.
+ */
+final class Keccak512 extends Digest512 {
+
+    static final int RATE = 72;
+
+    static final long[] RC = { //
+            0x0000000000000001L, 0x0000000000008082L, 0x800000000000808AL, 0x8000000080008000L,
+            0x000000000000808BL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+            0x000000000000008AL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000AL,
+            0x000000008000808BL, 0x800000000000008BL, 0x8000000000008089L, 0x8000000000008003L,
+            0x8000000000008002L, 0x8000000000000080L, 0x000000000000800AL, 0x800000008000000AL,
+            0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L };
+
+    private final long[] a = new long[25];
+    private long count;
+
+    @Override
+    DigestAlgorithm algorithm() {
+        return DigestAlgorithm.SHA3_512;
+    }
+
+    @Override
+    long length() {
+        return count;
+    }
+
+    @Override
+    void update(byte[] in, int offset, int length) {
+        int position = (int) (count % RATE);
+        count += length;
+        int end = offset + length;
+        while (offset < end) {
+            if ((position & 7) == 0 && end - offset >= 8) {
+                a[position >>> 3] ^= getLongLE(in, offset);
+                offset += 8;
+                position += 8;
+            } else {
+                a[position >>> 3] ^= (in[offset++] & 0xFFL) << ((position & 7) << 3);
+                position++;
+            }
+            if (position == RATE) {
+                permute(a);
+                position = 0;
+            }
+        }
+    }
+
+    void update(byte in) {
+        int position = (int) (count++ % RATE);
+        a[position >>> 3] ^= (in & 0xFFL) << ((position & 7) << 3);
+        if (position == RATE - 1) {
+            permute(a);
+        }
+    }
+
+    @Override
+    void doFinal(byte[] out, int offset) {
+        int position = (int) (count % RATE);
+        // SHA3 domain separation and pad10*1
+        a[position >>> 3] ^= 0x06L << ((position & 7) << 3);
+        a[(RATE - 1) >>> 3] ^= 0x80L << 56;
+        permute(a);
+        for (int i = 0; i < DIGEST_LENGTH / 8; i++) {
+            putLongLE(a[i], out, offset + i * 8);
+        }
+        reset();
+    }
+
+    @Override
+    void reset() {
+        for (int i = 0; i < 25; i++) {
+            a[i] = 0;
+        }
+        count = 0;
+    }
+
+    @Override
+    Keccak512 copy() {
+        Keccak512 copy = new Keccak512();
+        System.arraycopy(a, 0, copy.a, 0, 25);
+        copy.count = count;
+        return copy;
+    }
+
+    /**
+     * Takes the state of another engine, without allocating.
+     */
+    void copyFrom(Keccak512 other) {
+        System.arraycopy(other.a, 0, a, 0, 25);
+        count = other.count;
+    }
+
+    /**
+     * The outer UDF hash <code>H(UTF8(ContentType) + ":" + H(Data))</code> in
+     * one call: takes the state of an engine that absorbed the content type
+     * prefix, absorbs the data digest, pads and squeezes.
+     *
+     * @param prefix Engine holding the absorbed prefix, left unchanged.
+     * @param digest Buffer holding the 64 byte data digest.
+     * @param offset Offset of the data digest.
+     * @param out    Output buffer receiving the 64 byte result.
+     * @param outOff Offset in the output buffer.
+     */
+    void outerDigest(Keccak512 prefix, byte[] digest, int offset, byte[] out, int outOff) {
+        copyFrom(prefix);
+        update(digest, offset, DIGEST_LENGTH);
+        doFinal(out, outOff);
+    }
+
+    @Override
+    int stateLength() {
+        return 8 + 25 * 8;
+    }
+
+    @Override
+    void writeState(ByteBuffer out) {
+        out.putLong(count);
+        for (long lane : a) {
+            out.putLong(lane);
+        }
+    }
+
+    @Override
+    void readState(ByteBuffer in) {
+        count = in.getLong();
+        for (int i = 0; i < 25; i++) {
+            a[i] = in.getLong();
+        }
+    }
+
+    /**
+     * Keccak-f[1600], unrolled over the 25 lanes held in local variables.
+     */
+    static void permute(long[] a) {
+        long a00 = a[0], a01 = a[1], a02 = a[2], a03 = a[3], a04 = a[4];
+        long a05 = a[5], a06 = a[6], a07 = a[7], a08 = a[8], a09 = a[9];
+        long a10 = a[10], a11 = a[11], a12 = a[12], a13 = a[13], a14 = a[14];
+        long a15 = a[15], a16 = a[16], a17 = a[17], a18 = a[18], a19 = a[19];
+        long a20 = a[20], a21 = a[21], a22 = a[22], a23 = a[23], a24 = a[24];
+        for (int round = 0; round < 24; round++) {
+            // theta
+            long c0 = a00 ^ a05 ^ a10 ^ a15 ^ a20;
+            long c1 = a01 ^ a06 ^ a11 ^ a16 ^ a21;
+            long c2 = a02 ^ a07 ^ a12 ^ a17 ^ a22;
+            long c3 = a03 ^ a08 ^ a13 ^ a18 ^ a23;
+            long c4 = a04 ^ a09 ^ a14 ^ a19 ^ a24;
+            long d0 = c4 ^ Long.rotateLeft(c1, 1);
+            long d1 = c0 ^ Long.rotateLeft(c2, 1);
+            long d2 = c1 ^ Long.rotateLeft(c3, 1);
+            long d3 = c2 ^ Long.rotateLeft(c4, 1);
+            long d4 = c3 ^ Long.rotateLeft(c0, 1);
+            a00 ^= d0;
+            a05 ^= d0;
+            a10 ^= d0;
+            a15 ^= d0;
+            a20 ^= d0;
+            a01 ^= d1;
+            a06 ^= d1;
+            a11 ^= d1;
+            a16 ^= d1;
+            a21 ^= d1;
+            a02 ^= d2;
+            a07 ^= d2;
+            a12 ^= d2;
+            a17 ^= d2;
+            a22 ^= d2;
+            a03 ^= d3;
+            a08 ^= d3;
+            a13 ^= d3;
+            a18 ^= d3;
+            a23 ^= d3;
+            a04 ^= d4;
+            a09 ^= d4;
+            a14 ^= d4;
+            a19 ^= d4;
+            a24 ^= d4;
+
+            // rho and pi
+            long t = Long.rotateLeft(a01, 1);
+            a01 = Long.rotateLeft(a06, 44);
+            a06 = Long.rotateLeft(a09, 20);
+            a09 = Long.rotateLeft(a22, 61);
+            a22 = Long.rotateLeft(a14, 39);
+            a14 = Long.rotateLeft(a20, 18);
+            a20 = Long.rotateLeft(a02, 62);
+            a02 = Long.rotateLeft(a12, 43);
+            a12 = Long.rotateLeft(a13, 25);
+            a13 = Long.rotateLeft(a19, 8);
+            a19 = Long.rotateLeft(a23, 56);
+            a23 = Long.rotateLeft(a15, 41);
+            a15 = Long.rotateLeft(a04, 27);
+            a04 = Long.rotateLeft(a24, 14);
+            a24 = Long.rotateLeft(a21, 2);
+            a21 = Long.rotateLeft(a08, 55);
+            a08 = Long.rotateLeft(a16, 45);
+            a16 = Long.rotateLeft(a05, 36);
+            a05 = Long.rotateLeft(a03, 28);
+            a03 = Long.rotateLeft(a18, 21);
+            a18 = Long.rotateLeft(a17, 15);
+            a17 = Long.rotateLeft(a11, 10);
+            a11 = Long.rotateLeft(a07, 6);
+            a07 = Long.rotateLeft(a10, 3);
+            a10 = t;
+
+            // chi
+            c0 = a00 ^ (~a01 & a02);
+            c1 = a01 ^ (~a02 & a03);
+            a02 ^= ~a03 & a04;
+            a03 ^= ~a04 & a00;
+            a04 ^= ~a00 & a01;
+            a00 = c0;
+            a01 = c1;
+            c0 = a05 ^ (~a06 & a07);
+            c1 = a06 ^ (~a07 & a08);
+            a07 ^= ~a08 & a09;
+            a08 ^= ~a09 & a05;
+            a09 ^= ~a05 & a06;
+            a05 = c0;
+            a06 = c1;
+            c0 = a10 ^ (~a11 & a12);
+            c1 = a11 ^ (~a12 & a13);
+            a12 ^= ~a13 & a14;
+            a13 ^= ~a14 & a10;
+            a14 ^= ~a10 & a11;
+            a10 = c0;
+            a11 = c1;
+            c0 = a15 ^ (~a16 & a17);
+            c1 = a16 ^ (~a17 & a18);
+            a17 ^= ~a18 & a19;
+            a18 ^= ~a19 & a15;
+            a19 ^= ~a15 & a16;
+            a15 = c0;
+            a16 = c1;
+            c0 = a20 ^ (~a21 & a22);
+            c1 = a21 ^ (~a22 & a23);
+            a22 ^= ~a23 & a24;
+            a23 ^= ~a24 & a20;
+            a24 ^= ~a20 & a21;
+            a20 = c0;
+            a21 = c1;
+
+            // iota
+            a00 ^= RC[round];
+        }
+        a[0] = a00;
+        a[1] = a01;
+        a[2] = a02;
+        a[3] = a03;
+        a[4] = a04;
+        a[5] = a05;
+        a[6] = a06;
+        a[7] = a07;
+        a[8] = a08;
+        a[9] = a09;
+        a[10] = a10;
+        a[11] = a11;
+        a[12] = a12;
+        a[13] = a13;
+        a[14] = a14;
+        a[15] = a15;
+        a[16] = a16;
+        a[17] = a17;
+        a[18] = a18;
+        a[19] = a19;
+        a[20] = a20;
+        a[21] = a21;
+        a[22] = a22;
+        a[23] = a23;
+        a[24] = a24;
+    }
+
+    /**
+     * {@link MessageDigest} view of the engine, returned by
+     * {@link Digests#messageDigest(DigestAlgorithm)} for SHA3_512 so that the
+     * streaming and prototype based code paths use it too.
+     */
+    static final class Jca extends MessageDigest implements Cloneable {
+
+        private Keccak512 engine = new Keccak512();
+
+        Jca() {
+            super("SHA3-512");
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            engine.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int length) {
+            engine.update(input, offset, length);
+        }
+
+        @Override
+        protected void engineUpdate(ByteBuffer input) {
+            engine.update(input);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            return engine.doFinal();
+        }
+
+        @Override
+        protected int engineDigest(byte[] buf, int offset, int length) throws DigestException {
+            if (length < DIGEST_LENGTH) {
+                throw new DigestException("Output buffer too small: " + length);
+            }
+            engine.doFinal(buf, offset);
+            return DIGEST_LENGTH;
+        }
+
+        @Override
+        protected void engineReset() {
+            engine.reset();
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return DIGEST_LENGTH;
+        }
+
+        @Override
+        public Object clone() throws CloneNotSupportedException {
+            Jca copy = (Jca) super.clone();
+            copy.engine = engine.copy();
+            return copy;
+        }
+    }
+
+    /**
+     * Returns an initialized HMAC-SHA3-512 (RFC 2104) on this engine, for
+     * runtimes whose JCA providers lack HmacSHA3-512 (before Java 16).
+     *
+     * @param key The HMAC key.
+     * @return The keyed MAC, it supports cloning.
+     * @throws InvalidKeyException If the key has no encoding.
+     */
+    static Mac hmac(Key key) throws InvalidKeyException {
+        Mac mac = new Mac(new Hmac(), null, "HmacSHA3-512") {
+        };
+        mac.init(key);
+        return mac;
+    }
+
+    /**
+     * HMAC-SHA3-512 service: the engine states after absorbing the inner and
+     * outer padded keys are kept, so each MAC starts from a copy of them.
+     */
+    static final class Hmac extends MacSpi implements Cloneable {
+
+        private Keccak512 innerKeyed = new Keccak512();
+        private Keccak512 outerKeyed = new Keccak512();
+        private Keccak512 inner = new Keccak512();
+        private Keccak512 outer = new Keccak512();
+        private byte[] innerDigest = new byte[DIGEST_LENGTH];
+
+        @Override
+        protected int engineGetMacLength() {
+            return DIGEST_LENGTH;
+        }
+
+        @Override
+        protected void engineInit(Key key, AlgorithmParameterSpec params)
+                throws InvalidKeyException, InvalidAlgorithmParameterException {
+            if (params != null) {
+                throw new InvalidAlgorithmParameterException("HMAC takes no parameters");
+            }
+            byte[] encoded = key.getEncoded();
+            if (encoded == null) {
+                throw new InvalidKeyException("Key has no encoding");
+            }
+            byte[] pad = new byte[RATE];
+            if (encoded.length > RATE) {
+                inner.reset();
+                inner.update(encoded, 0, encoded.length);
+                inner.doFinal(pad, 0);
+            } else {
+                System.arraycopy(encoded, 0, pad, 0, encoded.length);
+            }
+            Arrays.fill(encoded, (byte) 0);
+            for (int i = 0; i < RATE; i++) {
+                pad[i] ^= 0x36;
+            }
+            innerKeyed.reset();
+            innerKeyed.update(pad, 0, RATE);
+            for (int i = 0; i < RATE; i++) {
+                pad[i] ^= 0x36 ^ 0x5C;
+            }
+            outerKeyed.reset();
+            outerKeyed.update(pad, 0, RATE);
+            Arrays.fill(pad, (byte) 0);
+            inner.copyFrom(innerKeyed);
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            inner.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int length) {
+            inner.update(input, offset, length);
+        }
+
+        @Override
+        protected byte[] engineDoFinal() {
+            inner.doFinal(innerDigest, 0);
+            outer.copyFrom(outerKeyed);
+            outer.update(innerDigest, 0, DIGEST_LENGTH);
+            byte[] mac = outer.doFinal();
+            inner.copyFrom(innerKeyed);
+            return mac;
+        }
+
+        @Override
+        protected void engineReset() {
+            inner.copyFrom(innerKeyed);
+        }
+
+        @Override
+        public Object clone() throws CloneNotSupportedException {
+            Hmac copy = (Hmac) super.clone();
+            copy.innerKeyed = innerKeyed.copy();
+            copy.outerKeyed = outerKeyed.copy();
+            copy.inner = inner.copy();
+            copy.outer = new Keccak512();
+            copy.innerDigest = new byte[DIGEST_LENGTH];
+            return copy;
+        }
+    }
+
+    static long getLongLE(byte[] in, int offset) {
+        return (in[offset] & 0xFFL) | ((in[offset + 1] & 0xFFL) << 8) | ((in[offset + 2] & 0xFFL) << 16)
+                | ((in[offset + 3] & 0xFFL) << 24) | ((in[offset + 4] & 0xFFL) << 32)
+                | ((in[offset + 5] & 0xFFL) << 40) | ((in[offset + 6] & 0xFFL) << 48) | ((long) in[offset + 7] << 56);
+    }
+
+    static void putLongLE(long value, byte[] out, int offset) {
+        for (int i = 0; i < 8; i++) {
+            out[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
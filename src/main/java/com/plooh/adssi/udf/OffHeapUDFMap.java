@@ -0,0 +1,380 @@
+package com.plooh.adssi.udf;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open addressing hash map from binary UDF to long, stored off heap.
+ *
+ * Every slot has a fixed width: the long value, a state byte and the first
+ * keyLength bytes of the binary UDF (type identifier included), rounded up to
+ * a multiple of 8 bytes. Slots live in direct byte buffers of
+ * {@link #PAGE_SLOTS} slots each, so the map is not bound by the 2 GB limit of
+ * a single buffer. The fingerprint bytes that follow the type identifier are
+ * uniformly distributed and are used directly as hash, with linear probing.
+ *
+ * Writes are serialized. Reads are lock free optimistic reads that fall back
+ * to a shared lock when they overlap a write, so any number of threads can
+ * read while one thread updates the map.
+ *
+ * Direct buffers are only freed by the garbage collector. {@link #close()}
+ * drops the pages so that their memory can be reclaimed even while the map
+ * itself is still referenced, and any later use fails.
+ */
+public class OffHeapUDFMap implements AutoCloseable {
+
+    static final int PAGE_SHIFT = 16;
+    static final int PAGE_SLOTS = 1 << PAGE_SHIFT;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private static final byte FREE = 0;
+    private static final byte FULL = 1;
+    private static final byte REMOVED = 2;
+
+    private static final int VALUE_OFFSET = 0;
+    private static final int STATE_OFFSET = 8;
+    private static final int KEY_OFFSET = 9;
+
+    private final int keyLength;
+    private final int slotSize;
+    private final StampedLock lock = new StampedLock();
+
+    // Null once closed.
+    private volatile Table table;
+    private int size;
+    private int removed;
+
+    /**
+     * @param keyLength    Number of bytes of the binary UDFs used as key, type
+     *                     identifier included. Longer UDFs are truncated, shorter
+     *                     ones are rejected.
+     * @param expectedSize Expected number of entries.
+     */
+    public OffHeapUDFMap(int keyLength, int expectedSize) {
+        if (keyLength < 2) {
+            throw new IllegalArgumentException("Key length must be at least 2 bytes: " + keyLength);
+        }
+        this.keyLength = keyLength;
+        this.slotSize = (KEY_OFFSET + keyLength + 7) & ~7;
+        this.table = new Table(capacityFor(expectedSize), slotSize);
+    }
+
+    public int keyLength() {
+        return keyLength;
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            open();
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int capacity() {
+        return open().capacity;
+    }
+
+    public long get(UDF udf, long defaultValue) {
+        return get(udf.buffer, 0, udf.buffer.length, defaultValue);
+    }
+
+    public boolean containsKey(UDF udf) {
+        return containsKey(udf.buffer, 0, udf.buffer.length);
+    }
+
+    /**
+     * @param key          Buffer holding the binary UDF.
+     * @param offset       Offset of the binary UDF.
+     * @param length       Length of the binary UDF.
+     * @param defaultValue Value returned if the key is not present.
+     * @return The value associated with the key or defaultValue.
+     */
+    public long get(byte[] key, int offset, int length, long defaultValue) {
+        checkKey(length);
+        long stamp = lock.tryOptimisticRead();
+        Table current = table;
+        if (stamp != 0 && current != null) {
+            long slot = find(current, key, offset);
+            long value = slot < 0 ? defaultValue : current.getLong(slot, VALUE_OFFSET);
+            if (lock.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            current = open();
+            long slot = find(current, key, offset);
+            return slot < 0 ? defaultValue : current.getLong(slot, VALUE_OFFSET);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsKey(byte[] key, int offset, int length) {
+        checkKey(length);
+        long stamp = lock.tryOptimisticRead();
+        Table current = table;
+        if (stamp != 0 && current != null) {
+            boolean found = find(current, key, offset) >= 0;
+            if (lock.validate(stamp)) {
+                return found;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return find(open(), key, offset) >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean put(UDF udf, long value) {
+        return put(udf.buffer, 0, udf.buffer.length, value);
+    }
+
+    /**
+     * Associates the value with the key.
+     *
+     * @return true if the key was not present before.
+     */
+    public boolean put(byte[] key, int offset, int length, long value) {
+        checkKey(length);
+        long stamp = lock.writeLock();
+        try {
+            Table current = open();
+            long mask = current.capacity - 1;
+            long index = hash(key, offset) & mask;
+            long tombstone = -1;
+            while (true) {
+                byte state = current.getByte(index, STATE_OFFSET);
+                if (state == FREE) {
+                    break;
+                }
+                if (state == REMOVED) {
+                    if (tombstone < 0) {
+                        tombstone = index;
+                    }
+                } else if (current.keyEquals(index, key, offset, keyLength)) {
+                    current.putLong(index, VALUE_OFFSET, value);
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            long slot = index;
+            if (tombstone >= 0) {
+                slot = tombstone;
+                removed--;
+            }
+            current.putLong(slot, VALUE_OFFSET, value);
+            current.putKey(slot, key, offset, keyLength);
+            current.putByte(slot, STATE_OFFSET, FULL);
+            size++;
+            if ((size + removed) * 4L >= current.capacity * 3L) {
+                resize();
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(UDF udf) {
+        return remove(udf.buffer, 0, udf.buffer.length);
+    }
+
+    /**
+     * Removes the key.
+     *
+     * @return true if the key was present.
+     */
+    public boolean remove(byte[] key, int offset, int length) {
+        checkKey(length);
+        long stamp = lock.writeLock();
+        try {
+            Table current = open();
+            long slot = find(current, key, offset);
+            if (slot < 0) {
+                return false;
+            }
+            current.putByte(slot, STATE_OFFSET, REMOVED);
+            size--;
+            removed++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Drops the pages, further calls other than close fail with an
+     * IllegalStateException. Readers still running on the pages finish safely,
+     * their memory is reclaimed once they are done.
+     */
+    @Override
+    public void close() {
+        long stamp = lock.writeLock();
+        try {
+            table = null;
+            size = 0;
+            removed = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private Table open() {
+        Table current = table;
+        if (current == null) {
+            throw new IllegalStateException("Map closed");
+        }
+        return current;
+    }
+
+    // Called under the write lock
+    private void resize() {
+        Table old = table;
+        int capacity = size * 2L >= old.capacity ? old.capacity * 2 : old.capacity;
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Map capacity exceeded: " + size);
+        }
+        Table resized = new Table(capacity, slotSize);
+        long mask = capacity - 1;
+        byte[] key = new byte[keyLength];
+        for (long slot = 0; slot < old.capacity; slot++) {
+            if (old.getByte(slot, STATE_OFFSET) != FULL) {
+                continue;
+            }
+            old.getKey(slot, key, keyLength);
+            long index = hash(key, 0) & mask;
+            while (resized.getByte(index, STATE_OFFSET) != FREE) {
+                index = (index + 1) & mask;
+            }
+            resized.putLong(index, VALUE_OFFSET, old.getLong(slot, VALUE_OFFSET));
+            resized.putKey(index, key, 0, keyLength);
+            resized.putByte(index, STATE_OFFSET, FULL);
+        }
+        removed = 0;
+        table = resized;
+    }
+
+    private long find(Table current, byte[] key, int offset) {
+        long mask = current.capacity - 1;
+        long index = hash(key, offset) & mask;
+        for (long probes = 0; probes < current.capacity; probes++) {
+            byte state = current.getByte(index, STATE_OFFSET);
+            if (state == FREE) {
+                return -1;
+            }
+            if (state == FULL && current.keyEquals(index, key, offset, keyLength)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * The fingerprint bytes following the type identifier, read as a long.
+     */
+    private long hash(byte[] key, int offset) {
+        long hash = 0;
+        int end = Math.min(keyLength, 9);
+        for (int i = 1; i < end; i++) {
+            hash = (hash << 8) | (key[offset + i] & 0xFF);
+        }
+        if (end < 9) {
+            // Less than 64 fingerprint bits, spread them over the whole long.
+            hash *= 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 32;
+        }
+        return hash;
+    }
+
+    private void checkKey(int length) {
+        if (length < keyLength) {
+            throw new IllegalArgumentException("UDF shorter than the key length " + keyLength + ": " + length);
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long capacity = Long.highestOneBit(Math.max(16L, expectedSize * 4L / 3 + 1) - 1) << 1;
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Expected size too large: " + expectedSize);
+        }
+        return (int) capacity;
+    }
+
+    /**
+     * Slots of the map, in pages of direct buffers.
+     */
+    private static final class Table {
+
+        final int capacity;
+        private final int slotSize;
+        private final ByteBuffer[] pages;
+
+        Table(int capacity, int slotSize) {
+            this.capacity = capacity;
+            this.slotSize = slotSize;
+            int pageSlots = Math.min(capacity, PAGE_SLOTS);
+            this.pages = new ByteBuffer[(capacity + pageSlots - 1) / pageSlots];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = ByteBuffer.allocateDirect(pageSlots * slotSize);
+            }
+        }
+
+        private ByteBuffer page(long slot) {
+            return pages[(int) (slot >>> PAGE_SHIFT)];
+        }
+
+        private int position(long slot, int field) {
+            return (int) (slot & (PAGE_SLOTS - 1)) * slotSize + field;
+        }
+
+        byte getByte(long slot, int field) {
+            return page(slot).get(position(slot, field));
+        }
+
+        void putByte(long slot, int field, byte value) {
+            page(slot).put(position(slot, field), value);
+        }
+
+        long getLong(long slot, int field) {
+            return page(slot).getLong(position(slot, field));
+        }
+
+        void putLong(long slot, int field, long value) {
+            page(slot).putLong(position(slot, field), value);
+        }
+
+        boolean keyEquals(long slot, byte[] key, int offset, int keyLength) {
+            ByteBuffer page = page(slot);
+            int position = position(slot, KEY_OFFSET);
+            for (int i = 0; i < keyLength; i++) {
+                if (page.get(position + i) != key[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void getKey(long slot, byte[] key, int keyLength) {
+            ByteBuffer page = page(slot);
+            int position = position(slot, KEY_OFFSET);
+            for (int i = 0; i < keyLength; i++) {
+                key[i] = page.get(position + i);
+            }
+        }
+
+        void putKey(long slot, byte[] key, int offset, int keyLength) {
+            ByteBuffer page = page(slot);
+            int position = position(slot, KEY_OFFSET);
+            for (int i = 0; i < keyLength; i++) {
+                page.put(position + i, key[offset + i]);
+            }
+        }
+    }
+}
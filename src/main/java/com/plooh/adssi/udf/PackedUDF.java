@@ -0,0 +1,254 @@
+package com.plooh.adssi.udf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary UDF packed into long fields, suitable as a hash map key.
+ *
+ * The type byte and the fingerprint bytes are stored big endian and zero padded
+ * in 3 longs for UDFs up to 24 bytes (184 bits of fingerprint, which covers the
+ * default 140 bits) and in 7 longs up to {@link #MAX_LENGTH} bytes (440 bits of
+ * fingerprint). Equality and hash code are content based, ordering is the
+ * unsigned lexicographic order of the binary UDFs.
+ */
+public abstract class PackedUDF implements Comparable<PackedUDF> {
+
+    /**
+     * Maximum length of a packed UDF, the type byte and MaximumBits.
+     */
+    public static final int MAX_LENGTH = 1 + UDF.MaximumBits / 8;
+
+    private static final int COMPACT_LENGTH = 24;
+
+    final byte length;
+
+    PackedUDF(int length) {
+        this.length = (byte) length;
+    }
+
+    public static PackedUDF of(UDF udf) {
+        return of(udf.buffer, 0, udf.buffer.length);
+    }
+
+    /**
+     * @param buffer Buffer holding a binary UDF.
+     * @param offset Offset of the binary UDF.
+     * @param length Length of the binary UDF, at most {@link #MAX_LENGTH}.
+     * @return The packed UDF.
+     */
+    public static PackedUDF of(byte[] buffer, int offset, int length) {
+        if (length < 1 || length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Unexpected UDF length: " + length);
+        }
+        if (length <= COMPACT_LENGTH) {
+            return new Compact(length, word(buffer, offset, length, 0), word(buffer, offset, length, 1),
+                    word(buffer, offset, length, 2));
+        }
+        return new Full(length, word(buffer, offset, length, 0), word(buffer, offset, length, 1),
+                word(buffer, offset, length, 2), word(buffer, offset, length, 3), word(buffer, offset, length, 4),
+                word(buffer, offset, length, 5), word(buffer, offset, length, 6));
+    }
+
+    /**
+     * @return The length of the binary UDF in bytes.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return The number of long words holding the UDF.
+     */
+    abstract int words();
+
+    /**
+     * @param index Index of the word.
+     * @return The word, big endian and zero padded.
+     */
+    abstract long word(int index);
+
+    /**
+     * @param index Index of the byte in the binary UDF.
+     * @return The byte.
+     */
+    public byte get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+        return (byte) (word(index >>> 3) >>> (56 - ((index & 7) << 3)));
+    }
+
+    public UdfTypeIdentifier typeIdentifier() {
+        return UdfTypeIdentifier.valueOf(get(0) & 0xFF);
+    }
+
+    /**
+     * Writes the binary UDF at the position of the buffer, whatever the byte
+     * order of the buffer.
+     */
+    public void writeTo(ByteBuffer out) {
+        ByteOrder order = out.order();
+        out.order(ByteOrder.BIG_ENDIAN);
+        try {
+            int full = length >>> 3;
+            for (int i = 0; i < full; i++) {
+                out.putLong(word(i));
+            }
+            for (int i = full << 3; i < length; i++) {
+                out.put(get(i));
+            }
+        } finally {
+            out.order(order);
+        }
+    }
+
+    /**
+     * Writes the binary UDF into the array.
+     */
+    public void writeTo(byte[] out, int offset) {
+        for (int i = 0; i < length; i++) {
+            out[offset + i] = (byte) (word(i >>> 3) >>> (56 - ((i & 7) << 3)));
+        }
+    }
+
+    public UDF toUDF() {
+        byte[] buffer = new byte[length];
+        writeTo(buffer, 0);
+        return new UDF(buffer);
+    }
+
+    public String presentationBase32() {
+        return toUDF().presentationBase32();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PackedUDF)) {
+            return false;
+        }
+        PackedUDF other = (PackedUDF) obj;
+        if (length != other.length) {
+            return false;
+        }
+        for (int i = 0; i < words(); i++) {
+            if (word(i) != other.word(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // Fingerprint bits are uniformly distributed, the first two words suffice.
+        return Long.hashCode(word(0) ^ Long.rotateLeft(word(1), 17)) * 31 + length;
+    }
+
+    @Override
+    public int compareTo(PackedUDF other) {
+        int words = Math.max(words(), other.words());
+        for (int i = 0; i < words; i++) {
+            long a = i < words() ? word(i) : 0L;
+            long b = i < other.words() ? other.word(i) : 0L;
+            if (a != b) {
+                return Long.compareUnsigned(a, b);
+            }
+        }
+        return Integer.compare(length, other.length);
+    }
+
+    @Override
+    public String toString() {
+        return presentationBase32();
+    }
+
+    private static long word(byte[] buffer, int offset, int length, int index) {
+        long word = 0;
+        int start = index << 3;
+        for (int i = start; i < start + 8; i++) {
+            word <<= 8;
+            if (i < length) {
+                word |= buffer[offset + i] & 0xFF;
+            }
+        }
+        return word;
+    }
+
+    private static final class Compact extends PackedUDF {
+
+        private final long w0, w1, w2;
+
+        Compact(int length, long w0, long w1, long w2) {
+            super(length);
+            this.w0 = w0;
+            this.w1 = w1;
+            this.w2 = w2;
+        }
+
+        @Override
+        int words() {
+            return 3;
+        }
+
+        @Override
+        long word(int index) {
+            switch (index) {
+                case 0:
+                    return w0;
+                case 1:
+                    return w1;
+                case 2:
+                    return w2;
+                default:
+                    throw new IndexOutOfBoundsException("Word " + index);
+            }
+        }
+    }
+
+    private static final class Full extends PackedUDF {
+
+        private final long w0, w1, w2, w3, w4, w5, w6;
+
+        Full(int length, long w0, long w1, long w2, long w3, long w4, long w5, long w6) {
+            super(length);
+            this.w0 = w0;
+            this.w1 = w1;
+            this.w2 = w2;
+            this.w3 = w3;
+            this.w4 = w4;
+            this.w5 = w5;
+            this.w6 = w6;
+        }
+
+        @Override
+        int words() {
+            return 7;
+        }
+
+        @Override
+        long word(int index) {
+            switch (index) {
+                case 0:
+                    return w0;
+                case 1:
+                    return w1;
+                case 2:
+                    return w2;
+                case 3:
+                    return w3;
+                case 4:
+                    return w4;
+                case 5:
+                    return w5;
+                case 6:
+                    return w6;
+                default:
+                    throw new IndexOutOfBoundsException("Word " + index);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.plooh.adssi.udf;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Computes UDF fingerprints for a fixed content type, digest algorithm,
+ * precision and key.
+ *
+ * The content type prefix <code>UTF8(ContentType) + ":"</code> is encoded once
+ * and absorbed into a prototype digest state. Each fingerprint clones that
+ * state and only hashes the 64 byte data digest on top of it. Keyed
+ * fingerprints use a {@link UDFAuthenticator} keyed once at construction.
+ *
+ * Instances are immutable and thread safe.
+ */
+public class PreparedFingerprinter {
+
+    private final String contentType;
+    private final DigestAlgorithm digestAlgorithm;
+    private final int bits;
+    // Pre-keyed HMAC, null for unkeyed fingerprints.
+    private final UDFAuthenticator authenticator;
+
+    // Empty digest state, H(<Data>)
+    private final MessageDigest innerPrototype;
+    // Digest state after UTF8(ContentType) + ":"
+    private final MessageDigest outerPrototype;
+    // Same state for the fused Keccak path, null unless SHA3_512 runs on Keccak512.
+    private final Keccak512 keccakPrefix;
+
+    /**
+     * @param contentType     MIME media type of data being fingerprinted.
+     * @param bits            Precision, must be a multiple of 20 bits.
+     * @param digestAlgorithm The cryptographic digest to use to compute the hash
+     *                        value, SHA2_512 if null.
+     * @param key             Optional key used to create keyed fingerprints.
+     */
+    public PreparedFingerprinter(String contentType, int bits, DigestAlgorithm digestAlgorithm, String key) {
+        this(contentType, bits, digestAlgorithm, key, Digests.KECCAK_ENABLED);
+    }
+
+    /**
+     * @param fusedKeccak true to run SHA3_512 on {@link Keccak512} whatever the
+     *                    {@value Digests#KECCAK_PROPERTY} system property.
+     */
+    PreparedFingerprinter(String contentType, int bits, DigestAlgorithm digestAlgorithm, String key,
+            boolean fusedKeccak) {
+        this.contentType = contentType;
+        this.digestAlgorithm = digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm;
+        this.bits = bits;
+        this.authenticator = key == null ? null : new UDFAuthenticator(key, this.digestAlgorithm);
+
+        this.innerPrototype = Digests.messageDigest(this.digestAlgorithm);
+        this.outerPrototype = Digests.messageDigest(this.digestAlgorithm);
+        outerPrototype.update(contentType.getBytes(StandardCharsets.UTF_8));
+        outerPrototype.update(UDF.TAG_SEPARATOR_BYTE);
+
+        // Fail fast if the provider does not support cloning.
+        copy(outerPrototype);
+
+        if (fusedKeccak && this.digestAlgorithm == DigestAlgorithm.SHA3_512) {
+            this.keccakPrefix = new Keccak512();
+            keccakPrefix.update(contentType.getBytes(StandardCharsets.UTF_8));
+            keccakPrefix.update(UDF.TAG_SEPARATOR_BYTE);
+        } else {
+            this.keccakPrefix = null;
+        }
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public DigestAlgorithm digestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    /**
+     * Calculate the UDF fingerprint of the data.
+     *
+     * @param data Data to be fingerprinted.
+     * @return The binary UDF fingerprint.
+     */
+    public UDF fingerprint(byte[] data) {
+        return fingerprint(data, 0, data.length);
+    }
+
+    /**
+     * Calculate the UDF fingerprint of a region of a buffer.
+     *
+     * @param data   Buffer holding the data to be fingerprinted.
+     * @param offset Offset of the data in the buffer.
+     * @param length Length of the data.
+     * @return The binary UDF fingerprint.
+     */
+    public UDF fingerprint(byte[] data, int offset, int length) {
+        if (keccakPrefix != null) {
+            Keccak512 engine = Digests.keccak();
+            engine.reset();
+            engine.update(data, offset, length);
+            return fingerprintDigest(engine.doFinal());
+        }
+        MessageDigest inner = copy(innerPrototype);
+        inner.update(data, offset, length);
+        return fingerprintDigest(inner.digest());
+    }
+
+    /**
+     * Calculate the UDF fingerprint from the digest of the data.
+     *
+     * @param dataDigest Digest of the data to be fingerprinted, H(Data).
+     * @return The binary UDF fingerprint.
+     */
+    public UDF fingerprintDigest(byte[] dataDigest) {
+        byte[] digest;
+        if (keccakPrefix != null && dataDigest.length == Digest512.DIGEST_LENGTH) {
+            digest = new byte[Digest512.DIGEST_LENGTH];
+            Digests.keccak().outerDigest(keccakPrefix, dataDigest, 0, digest, 0);
+        } else {
+            MessageDigest outer = copy(outerPrototype);
+            outer.update(dataDigest);
+            digest = outer.digest();
+        }
+        if (authenticator != null) {
+            return authenticator.toUDF(digest, bits);
+        }
+        return UDF.bufferDigestToUDF(digest, bits, digestAlgorithm, null);
+    }
+
+    /**
+     * @param data Data to be fingerprinted.
+     * @return The Base32 presentation of the UDF fingerprint.
+     */
+    public String presentationBase32(byte[] data) {
+        return fingerprint(data).presentationBase32();
+    }
+
+    private static MessageDigest copy(MessageDigest prototype) {
+        try {
+            return (MessageDigest) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("Digest can not be cloned: " + prototype.getAlgorithm(), e);
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package com.plooh.adssi.udf;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Locates the field to fingerprint in a line of a record file, without
+ * decoding the line into a String.
+ *
+ * Fields are returned as a range of the line bytes when they can be hashed as
+ * is, and are unescaped into a scratch array otherwise: CSV fields with doubled
+ * quotes, JSON strings with escape sequences. Records spanning several lines
+ * are not supported.
+ */
+public abstract class RecordFormat {
+
+    private final boolean header;
+
+    RecordFormat(boolean header) {
+        this.header = header;
+    }
+
+    /**
+     * @param column    Index of the column, starting at 0.
+     * @param delimiter The field delimiter.
+     * @param header    true to skip the first line of the file.
+     * @return The format of CSV records, fields may be double quoted.
+     */
+    public static RecordFormat csv(int column, char delimiter, boolean header) {
+        if (column < 0) {
+            throw new IllegalArgumentException("Negative column: " + column);
+        }
+        if (delimiter > 0x7F || delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException("Invalid delimiter: " + delimiter);
+        }
+        return new Csv(column, (byte) delimiter, header);
+    }
+
+    /**
+     * @param field Name of a top level field of the JSON objects.
+     * @return The format of newline delimited JSON records. String and scalar
+     *         values are fingerprinted, records where the field is missing,
+     *         null, an object or an array are skipped.
+     */
+    public static RecordFormat ndjson(String field) {
+        return new NdJson(field);
+    }
+
+    boolean header() {
+        return header;
+    }
+
+    /**
+     * Finds the field in the line [start, end) of the buffer, line terminator
+     * excluded.
+     *
+     * @return false if the line has no such field or is malformed.
+     */
+    abstract boolean find(ByteBuffer line, int start, int end, Field field);
+
+    /**
+     * The location of a field, or its unescaped value.
+     */
+    static final class Field {
+
+        int start;
+        int end;
+        // Length of the unescaped value in scratch, -1 if the field is [start, end).
+        int unescaped = -1;
+        byte[] scratch = new byte[256];
+
+        void set(int start, int end) {
+            this.start = start;
+            this.end = end;
+            this.unescaped = -1;
+        }
+
+        void ensureScratch(int length) {
+            if (scratch.length < length) {
+                scratch = Arrays.copyOf(scratch, Math.max(length, scratch.length * 2));
+            }
+        }
+    }
+
+    private static final class Csv extends RecordFormat {
+
+        private final int column;
+        private final byte delimiter;
+
+        Csv(int column, byte delimiter, boolean header) {
+            super(header);
+            this.column = column;
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        boolean find(ByteBuffer line, int start, int end, Field field) {
+            int position = start;
+            for (int c = 0; position <= end; c++) {
+                if (position < end && line.get(position) == '"') {
+                    int closing = position + 1;
+                    boolean doubled = false;
+                    while (true) {
+                        if (closing >= end) {
+                            return false;
+                        }
+                        if (line.get(closing) == '"') {
+                            if (closing + 1 < end && line.get(closing + 1) == '"') {
+                                doubled = true;
+                                closing += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        closing++;
+                    }
+                    if (c == column) {
+                        field.set(position + 1, closing);
+                        if (doubled) {
+                            unquote(line, field);
+                        }
+                        return true;
+                    }
+                    position = closing + 1;
+                    while (position < end && line.get(position) != delimiter) {
+                        position++;
+                    }
+                } else {
+                    int next = position;
+                    while (next < end && line.get(next) != delimiter) {
+                        next++;
+                    }
+                    if (c == column) {
+                        field.set(position, next);
+                        return true;
+                    }
+                    position = next;
+                }
+                // Skip the delimiter, a trailing one starts an empty field.
+                position++;
+            }
+            return false;
+        }
+
+        private static void unquote(ByteBuffer line, Field field) {
+            field.ensureScratch(field.end - field.start);
+            byte[] scratch = field.scratch;
+            int length = 0;
+            for (int i = field.start; i < field.end; i++) {
+                byte b = line.get(i);
+                scratch[length++] = b;
+                if (b == '"') {
+                    i++;
+                }
+            }
+            field.unescaped = length;
+        }
+    }
+
+    private static final class NdJson extends RecordFormat {
+
+        private final byte[] name;
+
+        NdJson(String name) {
+            super(false);
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        boolean find(ByteBuffer line, int start, int end, Field field) {
+            int position = skipWhitespace(line, start, end);
+            if (position >= end || line.get(position) != '{') {
+                return false;
+            }
+            position++;
+            while (true) {
+                position = skipWhitespace(line, position, end);
+                if (position >= end || line.get(position) != '"') {
+                    return false;
+                }
+                int keyEnd = skipString(line, position, end);
+                if (keyEnd < 0) {
+                    return false;
+                }
+                boolean match = matches(line, position + 1, keyEnd - 1);
+                position = skipWhitespace(line, keyEnd, end);
+                if (position >= end || line.get(position) != ':') {
+                    return false;
+                }
+                position = skipWhitespace(line, position + 1, end);
+                if (position >= end) {
+                    return false;
+                }
+                if (match) {
+                    return value(line, position, end, field);
+                }
+                position = skipValue(line, position, end);
+                if (position < 0) {
+                    return false;
+                }
+                position = skipWhitespace(line, position, end);
+                if (position >= end || line.get(position) != ',') {
+                    return false;
+                }
+                position++;
+            }
+        }
+
+        private boolean matches(ByteBuffer line, int start, int end) {
+            if (end - start != name.length) {
+                return false;
+            }
+            for (int i = 0; i < name.length; i++) {
+                if (line.get(start + i) != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean value(ByteBuffer line, int position, int end, Field field) {
+            byte first = line.get(position);
+            if (first == '"') {
+                int valueEnd = skipString(line, position, end);
+                if (valueEnd < 0) {
+                    return false;
+                }
+                field.set(position + 1, valueEnd - 1);
+                for (int i = field.start; i < field.end; i++) {
+                    if (line.get(i) == '\\') {
+                        return unescape(line, field);
+                    }
+                }
+                return true;
+            }
+            if (first == '{' || first == '[' || first == 'n') {
+                return false;
+            }
+            int valueEnd = position;
+            while (valueEnd < end) {
+                byte b = line.get(valueEnd);
+                if (b == ',' || b == '}' || isWhitespace(b)) {
+                    break;
+                }
+                valueEnd++;
+            }
+            field.set(position, valueEnd);
+            return true;
+        }
+
+        /**
+         * Decodes the escape sequences of a JSON string into UTF-8.
+         */
+        private static boolean unescape(ByteBuffer line, Field field) {
+            // Escapes never expand, a 6 byte code point escape decodes to at most 3 bytes.
+            field.ensureScratch(field.end - field.start);
+            byte[] scratch = field.scratch;
+            int length = 0;
+            int i = field.start;
+            while (i < field.end) {
+                byte b = line.get(i++);
+                if (b != '\\') {
+                    scratch[length++] = b;
+                    continue;
+                }
+                if (i >= field.end) {
+                    return false;
+                }
+                byte escaped = line.get(i++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        scratch[length++] = escaped;
+                        break;
+                    case 'b':
+                        scratch[length++] = '\b';
+                        break;
+                    case 'f':
+                        scratch[length++] = '\f';
+                        break;
+                    case 'n':
+                        scratch[length++] = '\n';
+                        break;
+                    case 'r':
+                        scratch[length++] = '\r';
+                        break;
+                    case 't':
+                        scratch[length++] = '\t';
+                        break;
+                    case 'u':
+                        int c = hex4(line, i, field.end);
+                        if (c < 0) {
+                            return false;
+                        }
+                        i += 4;
+                        if (Character.isHighSurrogate((char) c) && i + 6 <= field.end && line.get(i) == '\\'
+                                && line.get(i + 1) == 'u') {
+                            int low = hex4(line, i + 2, field.end);
+                            if (low >= 0 && Character.isLowSurrogate((char) low)) {
+                                c = Character.toCodePoint((char) c, (char) low);
+                                i += 6;
+                            }
+                        }
+                        length = utf8(c, scratch, length);
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            field.unescaped = length;
+            return true;
+        }
+
+        private static int hex4(ByteBuffer line, int position, int end) {
+            if (position + 4 > end) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = position; i < position + 4; i++) {
+                int digit = Character.digit(line.get(i), 16);
+                if (digit < 0) {
+                    return -1;
+                }
+                value = (value << 4) | digit;
+            }
+            return value;
+        }
+
+        private static int utf8(int c, byte[] out, int offset) {
+            if (c < 0x80) {
+                out[offset++] = (byte) c;
+            } else if (c < 0x800) {
+                out[offset++] = (byte) (0xC0 | (c >>> 6));
+                out[offset++] = (byte) (0x80 | (c & 0x3F));
+            } else if (c < 0x10000) {
+                out[offset++] = (byte) (0xE0 | (c >>> 12));
+                out[offset++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+                out[offset++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                out[offset++] = (byte) (0xF0 | (c >>> 18));
+                out[offset++] = (byte) (0x80 | ((c >>> 12) & 0x3F));
+                out[offset++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+                out[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+            return offset;
+        }
+
+        /**
+         * @return The position after the closing quote, -1 if unterminated.
+         */
+        private static int skipString(ByteBuffer line, int position, int end) {
+            for (int i = position + 1; i < end; i++) {
+                byte b = line.get(i);
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return The position after the value, -1 if malformed.
+         */
+        private static int skipValue(ByteBuffer line, int position, int end) {
+            byte first = line.get(position);
+            if (first == '"') {
+                return skipString(line, position, end);
+            }
+            if (first == '{' || first == '[') {
+                int depth = 0;
+                for (int i = position; i < end; i++) {
+                    byte b = line.get(i);
+                    if (b == '"') {
+                        i = skipString(line, i, end);
+                        if (i < 0) {
+                            return -1;
+                        }
+                        i--;
+                    } else if (b == '{' || b == '[') {
+                        depth++;
+                    } else if ((b == '}' || b == ']') && --depth == 0) {
+                        return i + 1;
+                    }
+                }
+                return -1;
+            }
+            int i = position;
+            while (i < end && line.get(i) != ',' && line.get(i) != '}') {
+                i++;
+            }
+            return i;
+        }
+
+        private static int skipWhitespace(ByteBuffer line, int position, int end) {
+            while (position < end && isWhitespace(line.get(position))) {
+                position++;
+            }
+            return position;
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+    }
+}
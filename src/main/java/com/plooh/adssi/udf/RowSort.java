@@ -0,0 +1,128 @@
+package com.plooh.adssi.udf;
+
+/**
+ * Sorts fixed width rows of long words in unsigned lexicographic order without
+ * boxing.
+ */
+class RowSort {
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private RowSort() {
+    }
+
+    /**
+     * Packs the first keyLength bytes of a binary UDF into words big endian,
+     * zero padded.
+     */
+    static void pack(byte[] buffer, int offset, int keyLength, long[] rows, int rowOffset) {
+        int words = words(keyLength);
+        for (int w = 0; w < words; w++) {
+            long word = 0;
+            for (int i = w << 3; i < (w << 3) + 8; i++) {
+                word <<= 8;
+                if (i < keyLength) {
+                    word |= buffer[offset + i] & 0xFF;
+                }
+            }
+            rows[rowOffset + w] = word;
+        }
+    }
+
+    /**
+     * Unpacks the first keyLength bytes of a packed row.
+     */
+    static void unpack(long[] rows, int rowOffset, int keyLength, byte[] buffer, int offset) {
+        for (int i = 0; i < keyLength; i++) {
+            buffer[offset + i] = (byte) (rows[rowOffset + (i >>> 3)] >>> (56 - ((i & 7) << 3)));
+        }
+    }
+
+    static int words(int keyLength) {
+        return (keyLength + 7) >>> 3;
+    }
+
+    /**
+     * @param rows  size rows of words longs each.
+     * @param words Number of words per row.
+     * @param size  Number of rows.
+     * @return The indexes of the rows in sorted order.
+     */
+    static int[] order(long[] rows, int words, int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        sort(rows, words, order, 0, size - 1);
+        return order;
+    }
+
+    /**
+     * Compares two rows of the same array.
+     */
+    static int compare(long[] rows, int words, int a, int b) {
+        int offsetA = a * words;
+        int offsetB = b * words;
+        for (int w = 0; w < words; w++) {
+            long x = rows[offsetA + w];
+            long y = rows[offsetB + w];
+            if (x != y) {
+                return Long.compareUnsigned(x, y);
+            }
+        }
+        return 0;
+    }
+
+    private static void sort(long[] rows, int words, int[] order, int low, int high) {
+        while (high - low >= INSERTION_SORT_THRESHOLD) {
+            int middle = (low + high) >>> 1;
+            // Median of three as pivot.
+            if (compare(rows, words, order[middle], order[low]) < 0) {
+                swap(order, middle, low);
+            }
+            if (compare(rows, words, order[high], order[low]) < 0) {
+                swap(order, high, low);
+            }
+            if (compare(rows, words, order[high], order[middle]) < 0) {
+                swap(order, high, middle);
+            }
+            int pivot = order[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(rows, words, order[i], pivot) < 0) {
+                    i++;
+                }
+                while (compare(rows, words, order[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(order, i++, j--);
+                }
+            }
+            // Recurse into the smaller part to bound the stack depth.
+            if (j - low < high - i) {
+                sort(rows, words, order, low, j);
+                low = i;
+            } else {
+                sort(rows, words, order, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            int current = order[i];
+            int j = i - 1;
+            while (j >= low && compare(rows, words, order[j], current) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+    }
+
+    private static void swap(int[] order, int i, int j) {
+        int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+    }
+}
@@ -0,0 +1,193 @@
+package com.plooh.adssi.udf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SHA-512 (FIPS 180-4) in pure Java.
+ */
+final class Sha512 extends Digest512 {
+
+    static final int BLOCK_LENGTH = 128;
+
+    static final long[] K = { //
+            0x428A2F98D728AE22L, 0x7137449123EF65CDL, 0xB5C0FBCFEC4D3B2FL, 0xE9B5DBA58189DBBCL,
+            0x3956C25BF348B538L, 0x59F111F1B605D019L, 0x923F82A4AF194F9BL, 0xAB1C5ED5DA6D8118L,
+            0xD807AA98A3030242L, 0x12835B0145706FBEL, 0x243185BE4EE4B28CL, 0x550C7DC3D5FFB4E2L,
+            0x72BE5D74F27B896FL, 0x80DEB1FE3B1696B1L, 0x9BDC06A725C71235L, 0xC19BF174CF692694L,
+            0xE49B69C19EF14AD2L, 0xEFBE4786384F25E3L, 0x0FC19DC68B8CD5B5L, 0x240CA1CC77AC9C65L,
+            0x2DE92C6F592B0275L, 0x4A7484AA6EA6E483L, 0x5CB0A9DCBD41FBD4L, 0x76F988DA831153B5L,
+            0x983E5152EE66DFABL, 0xA831C66D2DB43210L, 0xB00327C898FB213FL, 0xBF597FC7BEEF0EE4L,
+            0xC6E00BF33DA88FC2L, 0xD5A79147930AA725L, 0x06CA6351E003826FL, 0x142929670A0E6E70L,
+            0x27B70A8546D22FFCL, 0x2E1B21385C26C926L, 0x4D2C6DFC5AC42AEDL, 0x53380D139D95B3DFL,
+            0x650A73548BAF63DEL, 0x766A0ABB3C77B2A8L, 0x81C2C92E47EDAEE6L, 0x92722C851482353BL,
+            0xA2BFE8A14CF10364L, 0xA81A664BBC423001L, 0xC24B8B70D0F89791L, 0xC76C51A30654BE30L,
+            0xD192E819D6EF5218L, 0xD69906245565A910L, 0xF40E35855771202AL, 0x106AA07032BBD1B8L,
+            0x19A4C116B8D2D0C8L, 0x1E376C085141AB53L, 0x2748774CDF8EEB99L, 0x34B0BCB5E19B48A8L,
+            0x391C0CB3C5C95A63L, 0x4ED8AA4AE3418ACBL, 0x5B9CCA4F7763E373L, 0x682E6FF3D6B2B8A3L,
+            0x748F82EE5DEFB2FCL, 0x78A5636F43172F60L, 0x84C87814A1F0AB72L, 0x8CC702081A6439ECL,
+            0x90BEFFFA23631E28L, 0xA4506CEBDE82BDE9L, 0xBEF9A3F7B2C67915L, 0xC67178F2E372532BL,
+            0xCA273ECEEA26619CL, 0xD186B8C721C0C207L, 0xEADA7DD6CDE0EB1EL, 0xF57D4F7FEE6ED178L,
+            0x06F067AA72176FBAL, 0x0A637DC5A2C898A6L, 0x113F9804BEF90DAEL, 0x1B710B35131C471BL,
+            0x28DB77F523047D84L, 0x32CAAB7B40C72493L, 0x3C9EBE0A15C9BEBCL, 0x431D67C49C100D4CL,
+            0x4CC5D4BECB3E42B6L, 0x597F299CFC657E2AL, 0x5FCB6FAB3AD6FAECL, 0x6C44198C4A475817L };
+
+    static final long[] IV = { //
+            0x6A09E667F3BCC908L, 0xBB67AE8584CAA73BL, 0x3C6EF372FE94F82BL, 0xA54FF53A5F1D36F1L,
+            0x510E527FADE682D1L, 0x9B05688C2B3E6C1FL, 0x1F83D9ABFB41BD6BL, 0x5BE0CD19137E2179L };
+
+    private final long[] h = new long[8];
+    private final long[] w = new long[80];
+    private final byte[] block = new byte[BLOCK_LENGTH];
+    private long count;
+
+    Sha512() {
+        reset();
+    }
+
+    @Override
+    DigestAlgorithm algorithm() {
+        return DigestAlgorithm.SHA2_512;
+    }
+
+    @Override
+    long length() {
+        return count;
+    }
+
+    @Override
+    void update(byte[] in, int offset, int length) {
+        int position = (int) (count & (BLOCK_LENGTH - 1));
+        count += length;
+        if (position > 0) {
+            int fill = Math.min(BLOCK_LENGTH - position, length);
+            System.arraycopy(in, offset, block, position, fill);
+            offset += fill;
+            length -= fill;
+            if (position + fill < BLOCK_LENGTH) {
+                return;
+            }
+            compress(block, 0);
+        }
+        while (length >= BLOCK_LENGTH) {
+            compress(in, offset);
+            offset += BLOCK_LENGTH;
+            length -= BLOCK_LENGTH;
+        }
+        if (length > 0) {
+            System.arraycopy(in, offset, block, 0, length);
+        }
+    }
+
+    @Override
+    void doFinal(byte[] out, int offset) {
+        int position = (int) (count & (BLOCK_LENGTH - 1));
+        block[position++] = (byte) 0x80;
+        if (position > BLOCK_LENGTH - 16) {
+            while (position < BLOCK_LENGTH) {
+                block[position++] = 0;
+            }
+            compress(block, 0);
+            position = 0;
+        }
+        while (position < BLOCK_LENGTH - 16) {
+            block[position++] = 0;
+        }
+        // 128 bit big endian length in bits
+        putLong(count >>> 61, block, BLOCK_LENGTH - 16);
+        putLong(count << 3, block, BLOCK_LENGTH - 8);
+        compress(block, 0);
+        for (int i = 0; i < 8; i++) {
+            putLong(h[i], out, offset + i * 8);
+        }
+        reset();
+    }
+
+    @Override
+    void reset() {
+        System.arraycopy(IV, 0, h, 0, 8);
+        count = 0;
+    }
+
+    @Override
+    Sha512 copy() {
+        Sha512 copy = new Sha512();
+        System.arraycopy(h, 0, copy.h, 0, 8);
+        System.arraycopy(block, 0, copy.block, 0, BLOCK_LENGTH);
+        copy.count = count;
+        return copy;
+    }
+
+    @Override
+    int stateLength() {
+        return 8 + 8 * 8 + BLOCK_LENGTH;
+    }
+
+    @Override
+    void writeState(ByteBuffer out) {
+        out.putLong(count);
+        for (long word : h) {
+            out.putLong(word);
+        }
+        out.put(block);
+    }
+
+    @Override
+    void readState(ByteBuffer in) {
+        count = in.getLong();
+        for (int i = 0; i < 8; i++) {
+            h[i] = in.getLong();
+        }
+        in.get(block);
+    }
+
+    private void compress(byte[] in, int offset) {
+        for (int t = 0; t < 16; t++) {
+            w[t] = getLong(in, offset + t * 8);
+        }
+        for (int t = 16; t < 80; t++) {
+            long w15 = w[t - 15];
+            long w2 = w[t - 2];
+            long s0 = Long.rotateRight(w15, 1) ^ Long.rotateRight(w15, 8) ^ (w15 >>> 7);
+            long s1 = Long.rotateRight(w2, 19) ^ Long.rotateRight(w2, 61) ^ (w2 >>> 6);
+            w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+        }
+        long a = h[0], b = h[1], c = h[2], d = h[3], e = h[4], f = h[5], g = h[6], hh = h[7];
+        for (int t = 0; t < 80; t++) {
+            long s1 = Long.rotateRight(e, 14) ^ Long.rotateRight(e, 18) ^ Long.rotateRight(e, 41);
+            long ch = (e & f) ^ (~e & g);
+            long t1 = hh + s1 + ch + K[t] + w[t];
+            long s0 = Long.rotateRight(a, 28) ^ Long.rotateRight(a, 34) ^ Long.rotateRight(a, 39);
+            long maj = (a & b) ^ (a & c) ^ (b & c);
+            long t2 = s0 + maj;
+            hh = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+        h[0] += a;
+        h[1] += b;
+        h[2] += c;
+        h[3] += d;
+        h[4] += e;
+        h[5] += f;
+        h[6] += g;
+        h[7] += hh;
+    }
+
+    static long getLong(byte[] in, int offset) {
+        return ((long) in[offset] << 56) | ((in[offset + 1] & 0xFFL) << 48) | ((in[offset + 2] & 0xFFL) << 40)
+                | ((in[offset + 3] & 0xFFL) << 32) | ((in[offset + 4] & 0xFFL) << 24)
+                | ((in[offset + 5] & 0xFFL) << 16) | ((in[offset + 6] & 0xFFL) << 8) | (in[offset + 7] & 0xFFL);
+    }
+
+    static void putLong(long value, byte[] out, int offset) {
+        for (int i = 7; i >= 0; i--) {
+            out[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
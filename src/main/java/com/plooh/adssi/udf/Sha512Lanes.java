@@ -0,0 +1,136 @@
+package com.plooh.adssi.udf;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * SHA-512 of several independent single block messages at once, one message
+ * per SIMD lane.
+ *
+ * Messages of at most {@link #MAX_MESSAGE_LENGTH} bytes fit, padding included,
+ * in one 128 byte block. The message schedule and the digests are stored lane
+ * interleaved, word t of lane l at index t * lanes() + l, so that a vector
+ * load reads word t of every lane. Unused lanes are hashed as well and their
+ * output ignored.
+ *
+ * The engine is Sha512Vector, built on the jdk.incubator.vector API from the
+ * JDK 17+ source set and loaded reflectively: {@link #newInstance()} returns
+ * null on JVMs without the module, and callers keep their scalar path.
+ *
+ * Instances are not thread safe.
+ */
+abstract class Sha512Lanes {
+
+    static final int MAX_MESSAGE_LENGTH = Sha512.BLOCK_LENGTH - 17;
+
+    /**
+     * System property enabling the multi-lane engine in
+     * {@link BatchFingerprinter} when set to true. The JVM also needs
+     * <code>--add-modules jdk.incubator.vector</code>.
+     */
+    static final String VECTOR_PROPERTY = "com.plooh.adssi.udf.vector";
+
+    static final boolean VECTOR_ENABLED = Boolean.getBoolean(VECTOR_PROPERTY);
+
+    private static final String VECTOR_CLASS = "com.plooh.adssi.udf.Sha512Vector";
+    private static final boolean AVAILABLE = probe();
+
+    private final int lanes;
+    final long[] w;
+    final long[] h;
+    private final byte[] block = new byte[Sha512.BLOCK_LENGTH];
+
+    Sha512Lanes(int lanes) {
+        this.lanes = lanes;
+        this.w = new long[80 * lanes];
+        this.h = new long[8 * lanes];
+    }
+
+    /**
+     * @return A new multi-lane engine, null if the jdk.incubator.vector module
+     *         is not available.
+     */
+    static Sha512Lanes newInstance() {
+        return AVAILABLE ? load() : null;
+    }
+
+    private static Sha512Lanes load() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return null;
+        }
+        try {
+            return (Sha512Lanes) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Built without the JDK 17+ source set, or against another
+            // version of the incubator API.
+            return null;
+        }
+    }
+
+    /**
+     * Checks the engine once against the JCA digest, so that an incompatible
+     * incubator API falls back to the scalar path instead of failing later.
+     */
+    private static boolean probe() {
+        Sha512Lanes engine = load();
+        if (engine == null) {
+            return false;
+        }
+        try {
+            byte[][] messages = new byte[engine.lanes()][];
+            for (int l = 0; l < messages.length; l++) {
+                messages[l] = Arrays.copyOf("abc".getBytes(StandardCharsets.UTF_8), l * 13);
+                engine.load(l, messages[l], 0, messages[l].length);
+            }
+            engine.compress();
+            byte[] out = new byte[Sha512.BLOCK_LENGTH / 2];
+            for (int l = 0; l < messages.length; l++) {
+                engine.store(l, out, 0);
+                if (!Arrays.equals(MessageDigest.getInstance("SHA-512").digest(messages[l]), out)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (Exception | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The number of messages hashed by {@link #compress()}.
+     */
+    int lanes() {
+        return lanes;
+    }
+
+    /**
+     * Loads and pads the message of a lane.
+     */
+    void load(int lane, byte[] message, int offset, int length) {
+        if (length > MAX_MESSAGE_LENGTH) {
+            throw new IllegalArgumentException("Message does not fit in one block: " + length);
+        }
+        System.arraycopy(message, offset, block, 0, length);
+        block[length] = (byte) 0x80;
+        Arrays.fill(block, length + 1, Sha512.BLOCK_LENGTH - 8, (byte) 0);
+        Sha512.putLong((long) length << 3, block, Sha512.BLOCK_LENGTH - 8);
+        for (int t = 0; t < 16; t++) {
+            w[t * lanes + lane] = Sha512.getLong(block, t * 8);
+        }
+    }
+
+    /**
+     * Hashes the loaded block of every lane into h.
+     */
+    abstract void compress();
+
+    /**
+     * Writes the 64 byte digest of a lane.
+     */
+    void store(int lane, byte[] out, int offset) {
+        for (int j = 0; j < 8; j++) {
+            Sha512.putLong(h[j * lanes + lane], out, offset + j * 8);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.plooh.adssi.udf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event committed for UDF operations slower than
+ * {@link UDFMetrics#getSlowThresholdNanos()}.
+ */
+@Name(SlowOperationEvent.NAME)
+@Label("Slow UDF Operation")
+@Category("UDF")
+@Description("UDF operation slower than the configured threshold")
+@StackTrace(true)
+final class SlowOperationEvent extends jdk.jfr.Event {
+
+    static final String NAME = "com.plooh.adssi.udf.SlowOperation";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Type Identifier")
+    String typeIdentifier;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+}
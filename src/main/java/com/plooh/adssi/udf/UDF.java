@@ -1,19 +1,18 @@
 package com.plooh.adssi.udf;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
-
-import com.hierynomus.sshj.transport.mac.Macs;
 
 import org.apache.commons.codec.binary.Base32;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.lang3.StringUtils;
-
-import net.schmizz.sshj.transport.mac.BaseMAC;
 
-public class UDF {
+public class UDF implements Comparable<UDF> {
 
     public static final Base32 base32 = new Base32(-1, null, false);
 
@@ -52,6 +51,7 @@ public class UDF {
      */
     private static UDF createBuffer(byte[] dataDigest, String contentType, int precision,
             DigestAlgorithm digestAlgorithm, String key) {
+        long start = UDFMetrics.start();
 
         // this.dataDigest = dataDigest;
         // this.digestAlgorithm = digestAlgorithm;
@@ -62,19 +62,13 @@ public class UDF {
         byte[] content_H_Data = udfDataBuffer(dataDigest, contentType);
 
         // H(<Content-ID> + ':' + H(<Data>))
-        byte[] digest;
-        switch (digestAlgorithm) {
-            case SHA2_512:
-                digest = DigestUtils.sha512(content_H_Data);
-                break;
-            case SHA3_512:
-                digest = DigestUtils.sha3_512(content_H_Data);
-                break;
-            default:
-                throw new IllegalStateException("Unexpected algorithm: " + digestAlgorithm);
-        }
+        byte[] digest = Digests.digest(content_H_Data, digestAlgorithm);
 
-        return bufferDigestToUDF(digest, precision, digestAlgorithm, key);
+        // The conversion is measured on its own as DIGEST_TO_UDF.
+        long nanos = UDFMetrics.elapsed(start);
+        UDF udf = bufferDigestToUDF(digest, precision, digestAlgorithm, key);
+        UDFMetrics.record(UDFOperation.FINGERPRINT, udf.buffer[0], start, nanos);
+        return udf;
     }
 
     public String presentationBase32() {
@@ -85,7 +79,17 @@ public class UDF {
         return presentationBase32(buffer, 4, "-", bits);
     }
 
-    private UDF(final byte[] buffer) {
+    /**
+     * Appends the Base32 presentation of this UDF truncated to bits precision.
+     * 
+     * @param bits Precision of the presentation, the full UDF if not positive.
+     * @param out  The destination.
+     */
+    public void presentationBase32(int bits, StringBuilder out) {
+        Base32Presentation.encode(buffer, 0, buffer.length, 4, "-", bits, out);
+    }
+
+    UDF(final byte[] buffer) {
         this.buffer = buffer;
     }
 
@@ -94,8 +98,9 @@ public class UDF {
      * bits of buffer.
      * 
      * @param digest The buffer to compress (MUST have at least 7 bytes)
-     * @return The compression level, 3 if there are 50 leading zeros, 2 if there
-     *         are 40 leading zeros, 1 if there are 20 and 0 otherwise.
+     * @return The compression level, 4 if there are 50 trailing zero bits, 3 if
+     *         there are 40, 2 if there are 30, 1 if there are 20 and 0
+     *         otherwise.
      */
     static int getCompression(byte[] digest) {
         // byte[] buffer = digest;
@@ -113,12 +118,12 @@ public class UDF {
         }
 
         // Check for less than 40 trailing zeros
-        if (digest[60] != 0 | digest[59] != 0 | digest[58] != 0) {
+        if (digest[60] != 0 | digest[59] != 0) {
             return 2;
         }
 
         // Check for less than 50 trailing zeros
-        if (digest[57] != 0 | ((digest[56] & 0b0000_0011) == 0)) {
+        if (digest[58] != 0 | ((digest[57] & 0b0000_0011) != 0)) {
             return 3;
         }
         return 4;
@@ -128,26 +133,19 @@ public class UDF {
      * @return The binary UDF fingerprint.
      */
     static UDF bufferDigestToUDF(byte[] digest, int precision, DigestAlgorithm digestAlgorithm, String key) {
+        long start = UDFMetrics.start();
+        UDF udf;
         if (key == null) {
             // Data UDF
             int compression = getCompression(digest);
             UdfTypeIdentifier typeIdentifier = UdfTypeIdentifier.getTypeIdentifier(digestAlgorithm, compression);
-            return typeBDSToBinary(typeIdentifier, digest, precision, 0);
+            udf = typeBDSToBinary(typeIdentifier, digest, precision, 0);
         } else {
             // Digest algorithm was applied in the costructor.
-            switch (digestAlgorithm) {
-                case SHA2_512: {
-                    BaseMAC hmac = Macs.HMACSHA2512().create();
-                    hmac.init(key.getBytes(StandardCharsets.UTF_8));
-                    byte[] udfData = hmac.doFinal(digest);
-                    return typeBDSToBinary(UdfTypeIdentifier.Authenticator_HMAC_SHA_2_512, udfData, precision, 0);
-                }
-                default: {
-                    throw new IllegalStateException("Unexpected algorithm: " + digestAlgorithm);
-                }
-            }
-
+            udf = UDFAuthenticator.cached(key, digestAlgorithm).toUDF(digest, precision);
         }
+        UDFMetrics.record(UDFOperation.DIGEST_TO_UDF, udf.buffer[0], start);
+        return udf;
     }
 
     /**
@@ -163,13 +161,7 @@ public class UDF {
      * @return The resulting binary buffer.
      */
     static UDF typeBDSToBinary(UdfTypeIdentifier typeIdentifier, byte[] source, int bits, int offset) {
-        // Constraints the number of bits to an integer multiple of 20 bits between
-        // DefaultBits and MaximumBits.
-        bits = bits <= 0 ? DefaultBits : bits;
-        bits = Math.min(bits, source.length * 8);
-
-        // Calculate the number of bytes
-        int bytes = (bits + 7) / 8;
+        int bytes = binaryLength(bits, source.length);
 
         byte[] buffer = new byte[bytes];
         buffer[0] = (byte) typeIdentifier.code;
@@ -177,6 +169,25 @@ public class UDF {
         return new UDF(buffer);
     }
 
+    /**
+     * Number of bytes of the binary UDF built by
+     * {@link #typeBDSToBinary(UdfTypeIdentifier, byte[], int, int)}.
+     * 
+     * @param bits         The number of bits precision of the final output. If 0,
+     *                     the value of the property DefaultBits is used.
+     * @param sourceLength Length of the binary data sequence.
+     * @return The length of the binary UDF, type identifier included.
+     */
+    static int binaryLength(int bits, int sourceLength) {
+        // Constraints the number of bits to an integer multiple of 20 bits between
+        // DefaultBits and MaximumBits.
+        bits = bits <= 0 ? DefaultBits : bits;
+        bits = Math.min(bits, sourceLength * 8);
+
+        // Calculate the number of bytes
+        return (bits + 7) / 8;
+    }
+
     /**
      * Conversions to binary UDF value
      * 
@@ -192,21 +203,100 @@ public class UDF {
      */
     static UDF dataToUDFBinary(byte[] data, String contentType, int bits, DigestAlgorithm digestAlgorithm, String key) {
         digestAlgorithm = digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm;
+        byte[] digest = Digests.digest(data, digestAlgorithm);
+        return createBuffer(digest, contentType, bits, digestAlgorithm, key);
+    }
 
-        byte[] digest = null;
-        switch (digestAlgorithm) {
-            case SHA2_512:
-                digest = DigestUtils.sha512(data);
-                break;
-            case SHA3_512:
-                digest = DigestUtils.sha3_512(data);
-                break;
-            default:
-                throw new IllegalStateException("Unexpected algorithm: " + digestAlgorithm);
-        }
+    /**
+     * Calculate a UDF fingerprint from the content of a stream with specified
+     * precision. The stream is read to its end but not closed.
+     * 
+     * @param data            Stream of the data to be fingerprinted.
+     * @param contentType     MIME media type of data being fingerprinted.
+     * @param bits            Precision, must be a multiple of 20 bits.
+     * @param digestAlgorithm The cryptographic digest to use to compute the hash
+     *                        value.
+     * @param key             Optional key used to create a keyed fingerprint.
+     * @return The binary UDF fingerprint.
+     * @throws IOException If the stream can not be read.
+     */
+    public static UDF dataToUDFBinary(InputStream data, String contentType, int bits,
+            DigestAlgorithm digestAlgorithm, String key) throws IOException {
+        digestAlgorithm = digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm;
+        byte[] digest = Digests.update(Digests.messageDigest(digestAlgorithm), data).digest();
         return createBuffer(digest, contentType, bits, digestAlgorithm, key);
     }
 
+    /**
+     * Calculate a UDF fingerprint from the content of a channel with specified
+     * precision. The channel is read to its end but not closed.
+     * 
+     * @param data            Channel of the data to be fingerprinted.
+     * @param contentType     MIME media type of data being fingerprinted.
+     * @param bits            Precision, must be a multiple of 20 bits.
+     * @param digestAlgorithm The cryptographic digest to use to compute the hash
+     *                        value.
+     * @param key             Optional key used to create a keyed fingerprint.
+     * @return The binary UDF fingerprint.
+     * @throws IOException If the channel can not be read.
+     */
+    public static UDF dataToUDFBinary(ReadableByteChannel data, String contentType, int bits,
+            DigestAlgorithm digestAlgorithm, String key) throws IOException {
+        digestAlgorithm = digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm;
+        byte[] digest = Digests.update(Digests.messageDigest(digestAlgorithm), data).digest();
+        return createBuffer(digest, contentType, bits, digestAlgorithm, key);
+    }
+
+    /**
+     * Calculate a UDF fingerprint from the content of a file with specified
+     * precision. The file is memory mapped in fixed windows, so the heap usage
+     * does not depend on the file size.
+     * 
+     * @param data            File to be fingerprinted.
+     * @param contentType     MIME media type of data being fingerprinted.
+     * @param bits            Precision, must be a multiple of 20 bits.
+     * @param digestAlgorithm The cryptographic digest to use to compute the hash
+     *                        value.
+     * @param key             Optional key used to create a keyed fingerprint.
+     * @return The binary UDF fingerprint.
+     * @throws IOException If the file can not be read.
+     */
+    public static UDF dataToUDFBinary(Path data, String contentType, int bits, DigestAlgorithm digestAlgorithm,
+            String key) throws IOException {
+        digestAlgorithm = digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm;
+        byte[] digest = Digests.update(Digests.messageDigest(digestAlgorithm), data).digest();
+        return createBuffer(digest, contentType, bits, digestAlgorithm, key);
+    }
+
+    /**
+     * Calculate the UDF fingerprints of a batch of data items sharing the same
+     * content type. The digest engines and scratch buffers are reused across the
+     * whole batch.
+     * 
+     * @param data            Data items to be fingerprinted.
+     * @param contentType     MIME media type of data being fingerprinted.
+     * @param bits            Precision, must be a multiple of 20 bits.
+     * @param digestAlgorithm The cryptographic digest to use to compute the hash
+     *                        value.
+     * @param key             Optional key used to create keyed fingerprints.
+     * @return The binary UDF fingerprints, in the order of the data items.
+     */
+    public static UDFBatch dataToUDFBatch(List<byte[]> data, String contentType, int bits,
+            DigestAlgorithm digestAlgorithm, String key) {
+        return new BatchFingerprinter(contentType, bits, digestAlgorithm, key).fingerprint(data);
+    }
+
+    /**
+     * Calculate the UDF fingerprints of a batch of data items sharing the same
+     * content type.
+     * 
+     * @see #dataToUDFBatch(List, String, int, DigestAlgorithm, String)
+     */
+    public static UDFBatch dataToUDFBatch(byte[][] data, String contentType, int bits,
+            DigestAlgorithm digestAlgorithm, String key) {
+        return new BatchFingerprinter(contentType, bits, digestAlgorithm, key).fingerprint(data);
+    }
+
     /**
      * Calculate a UDF fingerprint from the content digest with specified
      * 
@@ -241,6 +331,60 @@ public class UDF {
         return buffer.presentationBase32();
     }
 
+    /**
+     * Calculate a UDF fingerprint from the content of a stream with specified
+     * precision.
+     * 
+     * @param data            Stream of the data to be fingerprinted
+     * @param contentType     MIME media type of data being fingerprinted
+     * @param bits            Precision, must be a multiple of 20 bits
+     * @param digestAlgorithm The cryptographic digest to use to compute the hash
+     *                        value
+     * @param key             Optional key used to create a keyed fingerprint
+     * @return The Base32 presentation of the UDF fingerprint
+     * @throws IOException If the stream can not be read.
+     */
+    public static String contentDigestOfDataString(InputStream data, String contentType, int bits,
+            DigestAlgorithm digestAlgorithm, String key) throws IOException {
+        return dataToUDFBinary(data, contentType, bits, digestAlgorithm, key).presentationBase32();
+    }
+
+    /**
+     * Calculate a UDF fingerprint from the content of a channel with specified
+     * precision.
+     * 
+     * @param data            Channel of the data to be fingerprinted
+     * @param contentType     MIME media type of data being fingerprinted
+     * @param bits            Precision, must be a multiple of 20 bits
+     * @param digestAlgorithm The cryptographic digest to use to compute the hash
+     *                        value
+     * @param key             Optional key used to create a keyed fingerprint
+     * @return The Base32 presentation of the UDF fingerprint
+     * @throws IOException If the channel can not be read.
+     */
+    public static String contentDigestOfDataString(ReadableByteChannel data, String contentType, int bits,
+            DigestAlgorithm digestAlgorithm, String key) throws IOException {
+        return dataToUDFBinary(data, contentType, bits, digestAlgorithm, key).presentationBase32();
+    }
+
+    /**
+     * Calculate a UDF fingerprint from the content of a file with specified
+     * precision.
+     * 
+     * @param data            File to be fingerprinted
+     * @param contentType     MIME media type of data being fingerprinted
+     * @param bits            Precision, must be a multiple of 20 bits
+     * @param digestAlgorithm The cryptographic digest to use to compute the hash
+     *                        value
+     * @param key             Optional key used to create a keyed fingerprint
+     * @return The Base32 presentation of the UDF fingerprint
+     * @throws IOException If the file can not be read.
+     */
+    public static String contentDigestOfDataString(Path data, String contentType, int bits,
+            DigestAlgorithm digestAlgorithm, String key) throws IOException {
+        return dataToUDFBinary(data, contentType, bits, digestAlgorithm, key).presentationBase32();
+    }
+
     /**
      * Calculate a UDF fingerprint from an OpenPGP key with specified precision.
      * 
@@ -283,13 +427,10 @@ public class UDF {
     }
 
     static String presentationBase32(byte[] bytes, int chunkSize, String delimiter, int bits) {
-        String s = StringUtils.substringBefore(base32.encodeToString(bytes), "=");
-        String[] chunks = chunk(s, chunkSize);
-        // String join = String.join(delimiter, chunks);
-        int bl = (bits + 19) / 20;
-        int min = Math.min(bl, chunks.length);
-        int blocks = bits <= 0 ? chunks.length : min;
-        return StringUtils.join(chunks, delimiter, 0, blocks);
+        long start = UDFMetrics.start();
+        String presentation = Base32Presentation.toString(bytes, chunkSize, delimiter, bits);
+        UDFMetrics.record(UDFOperation.PRESENTATION, bytes.length == 0 ? -1 : bytes[0], start);
+        return presentation;
     }
 
     static String[] chunk(String string, int chunkSize) {
@@ -334,21 +475,13 @@ public class UDF {
      * @return A randomly generated UDF string
      */
     public static String nonce(int bits) {
-        bits = bits <= 0 ? DefaultBits - 8 : bits;
-        byte[] data = randomBits(bits);
-        return nonce(data, bits);
+        return UDFRandom.current().nonce(bits);
     }
 
     static String nonce(byte[] data, int bits) {
         return typeBDSToString(UdfTypeIdentifier.Nonce, data, bits + 8, 0);
     }
 
-    private static byte[] randomBits(int bits) {
-        byte[] data = new byte[bits / 8];
-        new Random().nextBytes(data);
-        return data;
-    }
-
     /**
      * Return a random sequence as a UDF
      * 
@@ -357,9 +490,7 @@ public class UDF {
      * @return A randomly generated UDF string.
      */
     public static String symmetricKey(UdfTypeIdentifier udfTypeIdentifier, int bits) {
-        bits = bits <= 0 ? DefaultBits - 8 : bits;
-        byte[] data = randomBits(bits);
-        return typeBDSToString(udfTypeIdentifier, data, bits + 8, 0);
+        return UDFRandom.current().randomUDF(udfTypeIdentifier, bits);
     }
 
     /**
@@ -454,14 +585,29 @@ public class UDF {
      * 
      * @param udfString UDF to parse.
      * @return the UDFBuffer
+     * @throws IllegalArgumentException If the UDF is malformed.
      */
     public static UDF parse(String udfString) {
-        byte[] buffer = base32.decode(udfString);
-        return new UDF(buffer);
+        return parse(udfString, 0, udfString.length());
+    }
+
+    /**
+     * Parse a UDF presentation held in a region of a character sequence.
+     * 
+     * @param udfString Character sequence holding the UDF.
+     * @param start     Index of the first character of the UDF.
+     * @param end       Index after the last character of the UDF.
+     * @return the UDFBuffer
+     */
+    public static UDF parse(CharSequence udfString, int start, int end) {
+        long startTime = UDFMetrics.start();
+        UDF udf = UDFParser.parse(udfString, start, end);
+        UDFMetrics.record(UDFOperation.PARSE, udf.buffer[0], startTime);
+        return udf;
     }
 
     public UdfTypeIdentifier typeIdentifier() {
-        return UdfTypeIdentifier.valueOf(buffer[0]);
+        return UdfTypeIdentifier.valueOf(buffer[0] & 0xFF);
     }
 
     public byte[] data() {
@@ -469,4 +615,58 @@ public class UDF {
         System.arraycopy(buffer, 1, digest, 0, buffer.length - 1);
         return digest;
     }
+
+    /**
+     * @return The length of the binary UDF, type identifier included.
+     */
+    public int length() {
+        return buffer.length;
+    }
+
+    /**
+     * @return A read only view of the binary UDF, type identifier included.
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        return ByteBuffer.wrap(buffer).asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the binary UDF at the position of the buffer.
+     * 
+     * @param out The destination.
+     */
+    public void writeTo(ByteBuffer out) {
+        out.put(buffer);
+    }
+
+    /**
+     * @return This UDF packed into long fields.
+     */
+    public PackedUDF toPacked() {
+        return PackedUDF.of(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof UDF)) {
+            return false;
+        }
+        return Arrays.equals(buffer, ((UDF) obj).buffer);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(buffer);
+    }
+
+    /**
+     * Compares the binary UDFs as unsigned byte sequences.
+     */
+    @Override
+    public int compareTo(UDF other) {
+        return Arrays.compareUnsigned(buffer, other.buffer);
+    }
 }
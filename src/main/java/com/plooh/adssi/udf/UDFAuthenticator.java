@@ -0,0 +1,245 @@
+package com.plooh.adssi.udf;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Computes the keyed (authenticator) UDF of a buffer digest.
+ *
+ * The HMAC key schedule runs once, when the instance is created. Every
+ * authentication then works on a clone of the pre-keyed MAC, or on a per
+ * thread MAC when the provider does not support cloning.
+ *
+ * Instances are immutable and thread safe.
+ */
+public class UDFAuthenticator {
+
+    static final int CACHE_SIZE = 64;
+
+    static final String HMAC_SHA3_512 = "HmacSHA3-512";
+
+    // Authenticators of the keyed UDF API by (key, algorithm). Hits do not
+    // lock, a miss past CACHE_SIZE evicts the least recently used entry.
+    private static final ConcurrentHashMap<List<Object>, Cached> CACHE = new ConcurrentHashMap<>();
+
+    private final DigestAlgorithm digestAlgorithm;
+    private final UdfTypeIdentifier typeIdentifier;
+
+    private final SecretKeySpec keySpec;
+    // Pre-keyed MAC, only ever cloned.
+    private final Mac prototype;
+    private final ThreadLocal<Mac> perThread;
+
+    /**
+     * @param key             Key used to create keyed fingerprints.
+     * @param digestAlgorithm The digest algorithm of the HMAC, SHA2_512 if null.
+     */
+    public UDFAuthenticator(String key, DigestAlgorithm digestAlgorithm) {
+        this(key.getBytes(StandardCharsets.UTF_8), digestAlgorithm);
+    }
+
+    /**
+     * @param key             Key used to create keyed fingerprints.
+     * @param digestAlgorithm The digest algorithm of the HMAC, SHA2_512 if null.
+     */
+    public UDFAuthenticator(byte[] key, DigestAlgorithm digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm;
+        this.typeIdentifier = typeIdentifier(this.digestAlgorithm);
+        this.keySpec = new SecretKeySpec(key, macAlgorithm(this.digestAlgorithm));
+        this.prototype = newMac(keySpec);
+
+        ThreadLocal<Mac> macPerThread = null;
+        try {
+            prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            macPerThread = ThreadLocal.withInitial(() -> newMac(keySpec));
+        }
+        this.perThread = macPerThread;
+    }
+
+    /**
+     * Returns a shared authenticator, so that the keyed UDF API does not run
+     * the HMAC key schedule on every call. About the {@link #CACHE_SIZE} most
+     * recently used (key, algorithm) pairs are kept, until
+     * {@link #invalidate(String)}.
+     *
+     * @param key             Key used to create keyed fingerprints.
+     * @param digestAlgorithm The digest algorithm of the HMAC, SHA2_512 if null.
+     * @return The authenticator.
+     */
+    static UDFAuthenticator cached(String key, DigestAlgorithm digestAlgorithm) {
+        digestAlgorithm = digestAlgorithm == null ? DigestAlgorithm.SHA2_512 : digestAlgorithm;
+        List<Object> cacheKey = Arrays.asList(key, digestAlgorithm);
+        Cached cached = CACHE.get(cacheKey);
+        if (cached == null) {
+            // A concurrent miss may key it twice, one of them is kept.
+            Cached created = new Cached(new UDFAuthenticator(key, digestAlgorithm));
+            cached = CACHE.putIfAbsent(cacheKey, created);
+            if (cached == null) {
+                cached = created;
+                while (CACHE.size() > CACHE_SIZE) {
+                    evictEldest();
+                }
+            }
+        }
+        cached.used = System.nanoTime();
+        return cached.authenticator;
+    }
+
+    /**
+     * Drops the shared authenticators of a key, for all the algorithms.
+     *
+     * @param key Key used to create keyed fingerprints.
+     */
+    static void invalidate(String key) {
+        CACHE.keySet().removeIf(cacheKey -> key.equals(cacheKey.get(0)));
+    }
+
+    /**
+     * @return true if a shared authenticator of the key is kept.
+     */
+    static boolean isCached(String key) {
+        for (List<Object> cacheKey : CACHE.keySet()) {
+            if (key.equals(cacheKey.get(0))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void evictEldest() {
+        Map.Entry<List<Object>, Cached> eldest = null;
+        for (Map.Entry<List<Object>, Cached> entry : CACHE.entrySet()) {
+            if (eldest == null || entry.getValue().used - eldest.getValue().used < 0) {
+                eldest = entry;
+            }
+        }
+        if (eldest != null) {
+            CACHE.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    public DigestAlgorithm digestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /**
+     * @return Authenticator_HMAC_SHA_2_512 or Authenticator_HMAC_SHA_3_512
+     */
+    public UdfTypeIdentifier typeIdentifier() {
+        return typeIdentifier;
+    }
+
+    /**
+     * @param digest The buffer digest, H(Content-ID + ':' + H(Data)).
+     * @return The HMAC of the digest.
+     */
+    public byte[] authenticate(byte[] digest) {
+        Mac mac = mac();
+        return mac.doFinal(digest);
+    }
+
+    /**
+     * @param digest    The buffer digest, H(Content-ID + ':' + H(Data)).
+     * @param precision Precision, must be a multiple of 20 bits.
+     * @return The binary authenticator UDF.
+     */
+    public UDF toUDF(byte[] digest, int precision) {
+        return UDF.typeBDSToBinary(typeIdentifier, authenticate(digest), precision, 0);
+    }
+
+    /**
+     * Returns a MAC keyed with the key of this authenticator. The MAC is reset
+     * after each doFinal and can be reused by a single thread.
+     */
+    Mac newMac() {
+        return perThread != null ? newMac(keySpec) : copy();
+    }
+
+    /**
+     * Authenticates the digest with a MAC obtained from {@link #newMac()}.
+     */
+    static void authenticate(Mac mac, byte[] digest, byte[] out, int outOff) {
+        mac.update(digest);
+        try {
+            mac.doFinal(out, outOff);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Mac mac() {
+        return perThread != null ? perThread.get() : copy();
+    }
+
+    private Mac copy() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String macAlgorithm(DigestAlgorithm digestAlgorithm) {
+        switch (digestAlgorithm) {
+            case SHA2_512:
+                return "HmacSHA512";
+            case SHA3_512:
+                return HMAC_SHA3_512;
+            default:
+                throw new IllegalStateException("Unexpected algorithm: " + digestAlgorithm);
+        }
+    }
+
+    static UdfTypeIdentifier typeIdentifier(DigestAlgorithm digestAlgorithm) {
+        switch (digestAlgorithm) {
+            case SHA2_512:
+                return UdfTypeIdentifier.Authenticator_HMAC_SHA_2_512;
+            case SHA3_512:
+                return UdfTypeIdentifier.Authenticator_HMAC_SHA_3_512;
+            default:
+                throw new IllegalStateException("Unexpected algorithm: " + digestAlgorithm);
+        }
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac;
+            try {
+                mac = Mac.getInstance(key.getAlgorithm());
+            } catch (NoSuchAlgorithmException e) {
+                if (!HMAC_SHA3_512.equals(key.getAlgorithm())) {
+                    throw e;
+                }
+                // SunJCE only has HmacSHA3-512 from Java 16.
+                return Keccak512.hmac(key);
+            }
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unsupported MAC algorithm: " + key.getAlgorithm(), e);
+        }
+    }
+
+    /**
+     * A shared authenticator and the time it was last returned.
+     */
+    private static final class Cached {
+
+        final UDFAuthenticator authenticator;
+        volatile long used = System.nanoTime();
+
+        Cached(UDFAuthenticator authenticator) {
+            this.authenticator = authenticator;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.plooh.adssi.udf;
+
+/**
+ * A batch of binary UDF fingerprints of the same length, stored back to back in
+ * a single byte array.
+ */
+public class UDFBatch {
+
+    final byte[] buffer;
+    private final int size;
+    private final int stride;
+
+    UDFBatch(int size, int stride) {
+        this(new byte[size * stride], size, stride);
+    }
+
+    UDFBatch(byte[] buffer, int size, int stride) {
+        this.buffer = buffer;
+        this.size = size;
+        this.stride = stride;
+    }
+
+    /**
+     * @return The number of fingerprints in this batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The length in bytes of each binary UDF.
+     */
+    public int stride() {
+        return stride;
+    }
+
+    /**
+     * @param index Index of the fingerprint.
+     * @return A copy of the binary UDF at index.
+     */
+    public UDF get(int index) {
+        byte[] udf = new byte[stride];
+        copyTo(index, udf, 0);
+        return new UDF(udf);
+    }
+
+    /**
+     * Copies the binary UDF at index to the destination buffer.
+     *
+     * @param index  Index of the fingerprint.
+     * @param dest   The destination buffer.
+     * @param offset Offset in the destination buffer.
+     */
+    public void copyTo(int index, byte[] dest, int offset) {
+        System.arraycopy(buffer, offset(index), dest, offset, stride);
+    }
+
+    /**
+     * @param index Index of the fingerprint.
+     * @param bits  Precision of the presentation, the full UDF if not positive.
+     * @return The Base32 presentation of the fingerprint at index.
+     */
+    public String presentationBase32(int index, int bits) {
+        int offset = offset(index);
+        char[] out = new char[Base32Presentation.length(stride, 4, "-", bits)];
+        Base32Presentation.encode(buffer, offset, stride, 4, "-", bits, out, 0);
+        return new String(out);
+    }
+
+    /**
+     * @return The batch content, {@link #size()} binary UDFs of {@link #stride()}
+     *         bytes each.
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[size * stride];
+        System.arraycopy(buffer, 0, copy, 0, copy.length);
+        return copy;
+    }
+
+    int offset(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return index * stride;
+    }
+}
@@ -0,0 +1,181 @@
+package com.plooh.adssi.udf;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over binary UDFs, answering "certainly not present" without
+ * touching the index holding the fingerprints.
+ *
+ * The fingerprint bytes are uniformly distributed, so the bit positions are
+ * derived from them directly by double hashing: the bytes 1 to 8 and 9 to 16
+ * (the 128 bits following the type identifier) are the two base hashes. A UDF
+ * must therefore carry at least {@link #MIN_LENGTH} bytes, which any UDF of
+ * MinimumBits precision does, and a truncated presentation finds the full
+ * fingerprint it was cut from.
+ *
+ * The filter is thread safe: bits are set with atomic operations.
+ */
+public class UDFBloomFilter {
+
+    /**
+     * Type identifier and MinimumBits.
+     */
+    public static final int MIN_LENGTH = 1 + UDF.MinimumBits / 8;
+
+    private static final int MAGIC = 0x55444642; // "UDFB"
+    private static final int HEADER_LENGTH = 4 + 4 + 8;
+    private static final int MAX_HASHES = 30;
+
+    private final int hashes;
+    private final long bitCount;
+    private final AtomicLongArray bits;
+
+    /**
+     * @param expectedInsertions      Expected number of fingerprints.
+     * @param falsePositiveProbability The targeted false positive rate, between 0
+     *                                 and 1 exclusive.
+     */
+    public UDFBloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Expected insertions must be positive: " + expectedInsertions);
+        }
+        if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1)) {
+            throw new IllegalArgumentException("False positive probability out of (0, 1): " + falsePositiveProbability);
+        }
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (ln2 * ln2));
+        long words = Math.max(1, (optimalBits + 63) >>> 6);
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Filter too large: " + optimalBits + " bits");
+        }
+        this.bitCount = words << 6;
+        this.hashes = (int) Math.max(1,
+                Math.min(MAX_HASHES, Math.round((double) bitCount / expectedInsertions * ln2)));
+        this.bits = new AtomicLongArray((int) words);
+    }
+
+    private UDFBloomFilter(int hashes, AtomicLongArray bits) {
+        this.hashes = hashes;
+        this.bitCount = (long) bits.length() << 6;
+        this.bits = bits;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    public long bitCount() {
+        return bitCount;
+    }
+
+    public void put(UDF udf) {
+        put(udf.buffer, 0, udf.buffer.length);
+    }
+
+    /**
+     * Adds a binary UDF.
+     *
+     * @param buffer Buffer holding the binary UDF.
+     * @param offset Offset of the binary UDF.
+     * @param length Length of the binary UDF, at least {@link #MIN_LENGTH}.
+     */
+    public void put(byte[] buffer, int offset, int length) {
+        checkLength(length);
+        long h1 = readLong(buffer, offset + 1);
+        long h2 = readLong(buffer, offset + 9);
+        for (int i = 0; i < hashes; i++) {
+            long bit = position(h1, h2, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    /**
+     * Adds all the fingerprints of a batch.
+     */
+    public void putAll(UDFBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            put(batch.buffer, batch.offset(i), batch.stride());
+        }
+    }
+
+    public boolean mightContain(UDF udf) {
+        return mightContain(udf.buffer, 0, udf.buffer.length);
+    }
+
+    /**
+     * @return false if the UDF was certainly never added, true if it probably
+     *         was.
+     */
+    public boolean mightContain(byte[] buffer, int offset, int length) {
+        checkLength(length);
+        long h1 = readLong(buffer, offset + 1);
+        long h2 = readLong(buffer, offset + 9);
+        for (int i = 0; i < hashes; i++) {
+            long bit = position(h1, h2, i);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The filter as a flat byte array: magic, number of hashes, number of
+     *         bits and the bit words, big endian.
+     */
+    public byte[] toByteArray() {
+        ByteBuffer out = ByteBuffer.allocate(HEADER_LENGTH + bits.length() * 8);
+        out.putInt(MAGIC);
+        out.putInt(hashes);
+        out.putLong(bitCount);
+        for (int i = 0; i < bits.length(); i++) {
+            out.putLong(bits.get(i));
+        }
+        return out.array();
+    }
+
+    /**
+     * Restores a filter written by {@link #toByteArray()}.
+     */
+    public static UDFBloomFilter fromByteArray(byte[] serialized) {
+        ByteBuffer in = ByteBuffer.wrap(serialized);
+        if (serialized.length < HEADER_LENGTH || in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a serialized UDF bloom filter");
+        }
+        int hashes = in.getInt();
+        long bitCount = in.getLong();
+        if (hashes < 1 || hashes > MAX_HASHES || bitCount <= 0 || (bitCount & 63) != 0
+                || serialized.length != HEADER_LENGTH + bitCount / 8) {
+            throw new IllegalArgumentException("Corrupted UDF bloom filter header");
+        }
+        AtomicLongArray bits = new AtomicLongArray((int) (bitCount >>> 6));
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, in.getLong());
+        }
+        return new UDFBloomFilter(hashes, bits);
+    }
+
+    private long position(long h1, long h2, int i) {
+        return ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+    }
+
+    private static long readLong(byte[] buffer, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void checkLength(int length) {
+        if (length < MIN_LENGTH) {
+            throw new IllegalArgumentException("UDF shorter than " + MIN_LENGTH + " bytes: " + length);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.plooh.adssi.udf;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Incrementally fingerprints data that is only ever appended to.
+ *
+ * Data is absorbed into an inner digest as it arrives. {@link #snapshot()}
+ * finishes a copy of the inner digest and runs the outer
+ * <code>H(UTF8(ContentType) + ":" + H(Data))</code> step on it, so the UDF of
+ * the content seen so far is available at any time without rehashing it.
+ *
+ * The inner digest state can be saved with {@link #checkpoint()} and restored
+ * with {@link #resume(byte[], String, int, String)}, allowing a process to
+ * continue after a restart. A checkpoint contains the state of the hash of the
+ * data, it must be stored as carefully as the data itself.
+ *
+ * Instances are not thread safe.
+ */
+public class UDFBuilder {
+
+    // "UDFC"
+    static final int CHECKPOINT_MAGIC = 0x55444643;
+    static final byte CHECKPOINT_VERSION = 1;
+
+    private final PreparedFingerprinter fingerprinter;
+    private final Digest512 inner;
+    private final byte[] dataDigest = new byte[Digest512.DIGEST_LENGTH];
+
+    /**
+     * @param contentType     MIME media type of data being fingerprinted.
+     * @param bits            Precision, must be a multiple of 20 bits.
+     * @param digestAlgorithm The cryptographic digest to use to compute the hash
+     *                        value, SHA2_512 if null.
+     * @param key             Optional key used to create keyed fingerprints.
+     */
+    public UDFBuilder(String contentType, int bits, DigestAlgorithm digestAlgorithm, String key) {
+        this.fingerprinter = new PreparedFingerprinter(contentType, bits, digestAlgorithm, key);
+        this.inner = Digest512.newInstance(fingerprinter.digestAlgorithm());
+    }
+
+    /**
+     * Restores a builder from a checkpoint.
+     *
+     * @param checkpoint  The output of {@link #checkpoint()}.
+     * @param contentType MIME media type of data being fingerprinted.
+     * @param bits        Precision, must be a multiple of 20 bits.
+     * @param key         Optional key used to create keyed fingerprints.
+     * @return A builder in the state of the checkpoint.
+     */
+    public static UDFBuilder resume(byte[] checkpoint, String contentType, int bits, String key) {
+        ByteBuffer in = ByteBuffer.wrap(checkpoint);
+        try {
+            if (in.getInt() != CHECKPOINT_MAGIC) {
+                throw new IllegalArgumentException("Not a UDF builder checkpoint");
+            }
+            byte version = in.get();
+            if (version != CHECKPOINT_VERSION) {
+                throw new IllegalArgumentException("Unsupported checkpoint version: " + version);
+            }
+            int algorithm = in.get();
+            DigestAlgorithm[] algorithms = DigestAlgorithm.values();
+            if (algorithm < 0 || algorithm >= algorithms.length) {
+                throw new IllegalArgumentException("Unknown digest algorithm: " + algorithm);
+            }
+            UDFBuilder builder = new UDFBuilder(contentType, bits, algorithms[algorithm], key);
+            if (in.remaining() != builder.inner.stateLength()) {
+                throw new IllegalArgumentException("Invalid checkpoint length: " + checkpoint.length);
+            }
+            builder.inner.readState(in);
+            return builder;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Checkpoint too short", e);
+        }
+    }
+
+    public DigestAlgorithm digestAlgorithm() {
+        return fingerprinter.digestAlgorithm();
+    }
+
+    /**
+     * @return The number of bytes absorbed so far.
+     */
+    public long length() {
+        return inner.length();
+    }
+
+    public UDFBuilder update(byte[] data) {
+        inner.update(data, 0, data.length);
+        return this;
+    }
+
+    public UDFBuilder update(byte[] data, int offset, int length) {
+        inner.update(data, offset, length);
+        return this;
+    }
+
+    /**
+     * Absorbs the remaining bytes of the buffer, leaving its position at its
+     * limit.
+     */
+    public UDFBuilder update(ByteBuffer data) {
+        inner.update(data);
+        return this;
+    }
+
+    /**
+     * Calculate the UDF of the data absorbed so far. The builder can continue
+     * to absorb data afterwards.
+     *
+     * @return The binary UDF fingerprint.
+     */
+    public UDF snapshot() {
+        inner.copy().doFinal(dataDigest, 0);
+        return fingerprinter.fingerprintDigest(dataDigest);
+    }
+
+    /**
+     * Serialises the inner digest state. The content type, precision and key
+     * are not part of the checkpoint and must be supplied again on resume.
+     *
+     * @return The checkpoint.
+     */
+    public byte[] checkpoint() {
+        ByteBuffer out = ByteBuffer.allocate(4 + 1 + 1 + inner.stateLength());
+        out.putInt(CHECKPOINT_MAGIC);
+        out.put(CHECKPOINT_VERSION);
+        out.put((byte) inner.algorithm().ordinal());
+        inner.writeState(out);
+        return out.array();
+    }
+}
@@ -0,0 +1,293 @@
+package com.plooh.adssi.udf;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Derives key material from a key UDF with HKDF-SHA-512 (RFC 5869).
+ *
+ * The input keying material is the binary data sequence of the key UDF, and
+ * the salt is its type identifier byte, so the same bytes presented as keys of
+ * different types derive unrelated keys. Encryption_HKDF_AES_512,
+ * EncryptionSignature_HKDF_AES_512 and DerivedKey UDFs are accepted, derived
+ * keys can therefore be derived from again to build key hierarchies.
+ *
+ * The key UDF is parsed and the extract step run once, when the instance is
+ * created. Each expand then works on a clone of the MAC keyed with the
+ * pseudorandom key, or on a per thread MAC when the provider does not support
+ * cloning. The bulk methods reuse one MAC and one block buffer for all their
+ * keys.
+ *
+ * Instances are immutable and thread safe.
+ */
+public class UDFKeyDerivation {
+
+    /**
+     * Longest key material a single expand can derive.
+     */
+    public static final int MAX_LENGTH = 255 * 64;
+
+    /**
+     * Number of key bits of the UDFs derived when none is specified.
+     */
+    public static final int DefaultKeyBits = 128;
+
+    static final String MAC_ALGORITHM = "HmacSHA512";
+
+    private static final int BLOCK_LENGTH = 64;
+
+    private final UdfTypeIdentifier typeIdentifier;
+    private final SecretKeySpec pseudorandomKey;
+    // MAC keyed with the pseudorandom key, only ever cloned.
+    private final Mac prototype;
+    private final ThreadLocal<Mac> perThread;
+
+    /**
+     * @param keyUDF The presentation of the key UDF.
+     * @throws IllegalArgumentException If the UDF is malformed or not a key
+     *                                  derivation type.
+     */
+    public UDFKeyDerivation(String keyUDF) {
+        this(UDF.parse(keyUDF));
+    }
+
+    /**
+     * @param key The binary key UDF.
+     * @throws IllegalArgumentException If the UDF is not a key derivation type.
+     */
+    public UDFKeyDerivation(UDF key) {
+        this.typeIdentifier = UdfTypeIdentifier.lookup(key.buffer[0]);
+        if (!isDerivationType(typeIdentifier)) {
+            throw new IllegalArgumentException("Not a key derivation UDF: " + typeIdentifier);
+        }
+        if (key.buffer.length < 2) {
+            throw new IllegalArgumentException("Key UDF holds no key material");
+        }
+
+        // Extract: PRK = HMAC(salt, IKM)
+        Mac extract = newMac(new SecretKeySpec(new byte[] { key.buffer[0] }, MAC_ALGORITHM));
+        extract.update(key.buffer, 1, key.buffer.length - 1);
+        byte[] prk = extract.doFinal();
+        this.pseudorandomKey = new SecretKeySpec(prk, MAC_ALGORITHM);
+        Arrays.fill(prk, (byte) 0);
+        this.prototype = newMac(pseudorandomKey);
+
+        ThreadLocal<Mac> macPerThread = null;
+        try {
+            prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            macPerThread = ThreadLocal.withInitial(() -> newMac(pseudorandomKey));
+        }
+        this.perThread = macPerThread;
+    }
+
+    /**
+     * @return The type of the key UDF.
+     */
+    public UdfTypeIdentifier typeIdentifier() {
+        return typeIdentifier;
+    }
+
+    /**
+     * @param info   Context and application specific information.
+     * @param length Number of bytes to derive.
+     * @return The derived key material.
+     */
+    public byte[] derive(byte[] info, int length) {
+        byte[] out = new byte[length];
+        derive(info, out, 0, length);
+        return out;
+    }
+
+    /**
+     * @param info   Context and application specific information, UTF8
+     *               encoded.
+     * @param length Number of bytes to derive.
+     * @return The derived key material.
+     */
+    public byte[] derive(String info, int length) {
+        return derive(info.getBytes(StandardCharsets.UTF_8), length);
+    }
+
+    /**
+     * Writes derived key material into a region of an array.
+     *
+     * @param info   Context and application specific information.
+     * @param out    The destination.
+     * @param outOff Offset of the key material in out.
+     * @param length Number of bytes to derive.
+     */
+    public void derive(byte[] info, byte[] out, int outOff, int length) {
+        checkLength(length);
+        byte[] block = new byte[BLOCK_LENGTH];
+        expand(mac(), info, block, out, outOff, length);
+        Arrays.fill(block, (byte) 0);
+    }
+
+    /**
+     * Derives a DerivedKey UDF, itself usable as the key of a new
+     * {@link UDFKeyDerivation}.
+     *
+     * @param info Context and application specific information, UTF8 encoded.
+     * @param bits Number of key bits, {@link #DefaultKeyBits} if not positive.
+     * @return The presentation of the derived key UDF.
+     */
+    public String derivedKey(String info, int bits) {
+        byte[] buffer = new byte[1 + keyLength(bits)];
+        buffer[0] = (byte) UdfTypeIdentifier.DerivedKey.code;
+        derive(info.getBytes(StandardCharsets.UTF_8), buffer, 1, buffer.length - 1);
+        String result = UDF.presentationBase32(buffer, 4, "-", -1);
+        Arrays.fill(buffer, (byte) 0);
+        return result;
+    }
+
+    /**
+     * Derives the next level of a key hierarchy.
+     *
+     * @param info Context and application specific information, UTF8 encoded.
+     * @return The key derivation of a 512 bit DerivedKey UDF.
+     */
+    public UDFKeyDerivation child(String info) {
+        byte[] buffer = new byte[1 + BLOCK_LENGTH];
+        buffer[0] = (byte) UdfTypeIdentifier.DerivedKey.code;
+        derive(info.getBytes(StandardCharsets.UTF_8), buffer, 1, BLOCK_LENGTH);
+        UDFKeyDerivation child = new UDFKeyDerivation(new UDF(buffer));
+        Arrays.fill(buffer, (byte) 0);
+        return child;
+    }
+
+    /**
+     * Derives one key per info, for instance a per record subkey, with a single
+     * MAC.
+     *
+     * @param infos  Context and application specific information of each key.
+     * @param length Number of bytes of each key.
+     * @return The keys, concatenated: the key of infos.get(i) starts at i *
+     *         length.
+     */
+    public byte[] deriveAll(List<byte[]> infos, int length) {
+        byte[] out = new byte[Math.multiplyExact(infos.size(), length)];
+        deriveAll(infos, length, out, 0);
+        return out;
+    }
+
+    /**
+     * Writes one key per info into a region of an array, with a single MAC.
+     *
+     * @param infos  Context and application specific information of each key.
+     * @param length Number of bytes of each key.
+     * @param out    The destination.
+     * @param outOff Offset of the first key in out.
+     */
+    public void deriveAll(List<byte[]> infos, int length, byte[] out, int outOff) {
+        checkLength(length);
+        Mac mac = mac();
+        byte[] block = new byte[BLOCK_LENGTH];
+        for (byte[] info : infos) {
+            expand(mac, info, block, out, outOff, length);
+            outOff += length;
+        }
+        Arrays.fill(block, (byte) 0);
+    }
+
+    /**
+     * Derives one DerivedKey UDF per info, with a single MAC and buffer.
+     *
+     * @param infos Context and application specific information of each key,
+     *              UTF8 encoded.
+     * @param bits  Number of key bits, {@link #DefaultKeyBits} if not positive.
+     * @return The presentations of the derived key UDFs.
+     */
+    public String[] derivedKeys(List<String> infos, int bits) {
+        Mac mac = mac();
+        byte[] block = new byte[BLOCK_LENGTH];
+        byte[] buffer = new byte[1 + keyLength(bits)];
+        char[] chars = new char[Base32Presentation.length(buffer.length, 4, "-", -1)];
+        buffer[0] = (byte) UdfTypeIdentifier.DerivedKey.code;
+        String[] keys = new String[infos.size()];
+        for (int i = 0; i < keys.length; i++) {
+            expand(mac, infos.get(i).getBytes(StandardCharsets.UTF_8), block, buffer, 1, buffer.length - 1);
+            int length = Base32Presentation.encode(buffer, 0, buffer.length, 4, "-", -1, chars, 0);
+            keys[i] = new String(chars, 0, length);
+        }
+        Arrays.fill(block, (byte) 0);
+        Arrays.fill(buffer, (byte) 0);
+        Arrays.fill(chars, '\0');
+        return keys;
+    }
+
+    /**
+     * @return true for the types this class derives keys from.
+     */
+    public static boolean isDerivationType(UdfTypeIdentifier typeIdentifier) {
+        return typeIdentifier == UdfTypeIdentifier.Encryption_HKDF_AES_512
+                || typeIdentifier == UdfTypeIdentifier.EncryptionSignature_HKDF_AES_512
+                || typeIdentifier == UdfTypeIdentifier.DerivedKey;
+    }
+
+    /**
+     * Expand: T(i) = HMAC(PRK, T(i - 1) + info + i), the key material is T(1)
+     * + T(2) + ... truncated to length.
+     */
+    private static void expand(Mac mac, byte[] info, byte[] block, byte[] out, int outOff, int length) {
+        try {
+            for (int counter = 1; length > 0; counter++) {
+                if (counter > 1) {
+                    mac.update(block, 0, BLOCK_LENGTH);
+                }
+                mac.update(info);
+                mac.update((byte) counter);
+                if (length >= BLOCK_LENGTH) {
+                    mac.doFinal(out, outOff);
+                    System.arraycopy(out, outOff, block, 0, BLOCK_LENGTH);
+                } else {
+                    mac.doFinal(block, 0);
+                    System.arraycopy(block, 0, out, outOff, length);
+                }
+                outOff += BLOCK_LENGTH;
+                length -= BLOCK_LENGTH;
+            }
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int keyLength(int bits) {
+        bits = bits <= 0 ? DefaultKeyBits : bits;
+        checkLength((bits + 7) / 8);
+        return (bits + 7) / 8;
+    }
+
+    private static void checkLength(int length) {
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Key length out of range: " + length);
+        }
+    }
+
+    private Mac mac() {
+        if (perThread != null) {
+            return perThread.get();
+        }
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance(key.getAlgorithm());
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unsupported MAC algorithm: " + key.getAlgorithm(), e);
+        }
+    }
+}
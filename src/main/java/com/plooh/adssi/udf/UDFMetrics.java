@@ -0,0 +1,299 @@
+package com.plooh.adssi.udf;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of the fingerprint, presentation and parse
+ * operations, per {@link UDFOperation} and {@link UdfTypeIdentifier}. Figures
+ * per {@link DigestAlgorithm} are the sums over the types of that algorithm.
+ *
+ * Metrics are disabled by default. When disabled, an instrumented operation
+ * only reads one volatile flag. When enabled, an operation costs two
+ * {@link System#nanoTime()} calls and a few {@link LongAdder} increments,
+ * which do not contend between threads. Histograms have one bucket per power
+ * of two nanoseconds.
+ *
+ * Operations slower than {@link #getSlowThresholdNanos()} are also reported
+ * as {@value SlowOperationEvent#NAME} JFR events.
+ */
+public final class UDFMetrics implements UDFMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.plooh.adssi.udf:type=UDFMetrics";
+
+    static final int BUCKETS = 64;
+
+    private static final UDFMetrics INSTANCE = new UDFMetrics();
+
+    // Read on every instrumented operation.
+    static volatile boolean enabled;
+
+    private volatile long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private final List<UDFMetricsListener> listeners = new CopyOnWriteArrayList<>();
+    // [operation][type code], created on first use.
+    private final AtomicReferenceArray<Cell> cells = new AtomicReferenceArray<>(
+            UDFOperation.values().length * 256);
+
+    private UDFMetrics() {
+    }
+
+    public static UDFMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the metrics on the platform MBean server under
+     * {@link #OBJECT_NAME}, if not already registered.
+     */
+    public static void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register " + OBJECT_NAME, e);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        UDFMetrics.enabled = enabled;
+    }
+
+    @Override
+    public long getSlowThresholdNanos() {
+        return slowThresholdNanos;
+    }
+
+    @Override
+    public void setSlowThresholdNanos(long slowThresholdNanos) {
+        this.slowThresholdNanos = slowThresholdNanos;
+    }
+
+    public void addListener(UDFMetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(UDFMetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param operation       The operation.
+     * @param digestAlgorithm The algorithm, all the types if null.
+     * @return Number of operations measured.
+     */
+    public long count(UDFOperation operation, DigestAlgorithm digestAlgorithm) {
+        long count = 0;
+        for (int code = 0; code < 256; code++) {
+            Cell cell = cell(operation, code, digestAlgorithm);
+            count += cell == null ? 0 : cell.count.sum();
+        }
+        return count;
+    }
+
+    public long count(UDFOperation operation, UdfTypeIdentifier typeIdentifier) {
+        Cell cell = cells.get(index(operation, typeIdentifier.code & 0xFF));
+        return cell == null ? 0 : cell.count.sum();
+    }
+
+    /**
+     * @param operation       The operation.
+     * @param digestAlgorithm The algorithm, all the types if null.
+     * @return Total time spent in the operation in nanoseconds.
+     */
+    public long totalNanos(UDFOperation operation, DigestAlgorithm digestAlgorithm) {
+        long total = 0;
+        for (int code = 0; code < 256; code++) {
+            Cell cell = cell(operation, code, digestAlgorithm);
+            total += cell == null ? 0 : cell.nanos.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @param operation       The operation.
+     * @param digestAlgorithm The algorithm, all the types if null.
+     * @param percentile      Between 0 and 1.
+     * @return Upper bound of the histogram bucket holding the percentile, in
+     *         nanoseconds, 0 if nothing was measured.
+     */
+    public long percentileNanos(UDFOperation operation, DigestAlgorithm digestAlgorithm, double percentile) {
+        long[] histogram = new long[BUCKETS];
+        long count = 0;
+        for (int code = 0; code < 256; code++) {
+            Cell cell = cell(operation, code, digestAlgorithm);
+            if (cell != null) {
+                for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                    long value = cell.buckets[bucket].sum();
+                    histogram[bucket] += value;
+                    count += value;
+                }
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(1, Math.max(0, percentile)) * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= rank && seen > 0) {
+                return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public long count(String operation, String digestAlgorithm) {
+        return count(UDFOperation.valueOf(operation), algorithm(digestAlgorithm));
+    }
+
+    @Override
+    public long countByType(String operation, String typeIdentifier) {
+        return count(UDFOperation.valueOf(operation), UdfTypeIdentifier.valueOf(typeIdentifier));
+    }
+
+    @Override
+    public long totalNanos(String operation, String digestAlgorithm) {
+        return totalNanos(UDFOperation.valueOf(operation), algorithm(digestAlgorithm));
+    }
+
+    @Override
+    public long percentileNanos(String operation, String digestAlgorithm, double percentile) {
+        return percentileNanos(UDFOperation.valueOf(operation), algorithm(digestAlgorithm), percentile);
+    }
+
+    /**
+     * Clears the counters and histograms. Operations in progress may still be
+     * recorded in the new figures.
+     */
+    @Override
+    public void reset() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, null);
+        }
+    }
+
+    /**
+     * @return The start time of an operation, 0 if metrics are disabled.
+     */
+    static long start() {
+        return enabled ? System.nanoTime() | 1 : 0;
+    }
+
+    /**
+     * Records an operation started at {@link #start()}, does nothing if it
+     * returned 0.
+     */
+    static void record(UDFOperation operation, int typeCode, long start) {
+        if (start != 0) {
+            INSTANCE.recordNanos(operation, typeCode & 0xFF, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return The nanoseconds elapsed since {@link #start()}, 0 if it returned
+     *         0.
+     */
+    static long elapsed(long start) {
+        return start == 0 ? 0 : System.nanoTime() - start;
+    }
+
+    /**
+     * Records an operation started at {@link #start()} that took nanos, as
+     * measured by {@link #elapsed(long)} before a nested operation. Does
+     * nothing if start was 0.
+     */
+    static void record(UDFOperation operation, int typeCode, long start, long nanos) {
+        if (start != 0) {
+            INSTANCE.recordNanos(operation, typeCode & 0xFF, nanos);
+        }
+    }
+
+    private void recordNanos(UDFOperation operation, int typeCode, long nanos) {
+        nanos = Math.max(0, nanos);
+        int index = index(operation, typeCode);
+        Cell cell = cells.get(index);
+        if (cell == null) {
+            cells.compareAndSet(index, null, new Cell());
+            cell = cells.get(index);
+        }
+        cell.count.increment();
+        cell.nanos.add(nanos);
+        cell.buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+
+        if (!listeners.isEmpty() || nanos >= slowThresholdNanos) {
+            UdfTypeIdentifier typeIdentifier = UdfTypeIdentifier.lookup(typeCode);
+            if (typeIdentifier == null) {
+                typeIdentifier = UdfTypeIdentifier.Unknown;
+            }
+            for (UDFMetricsListener listener : listeners) {
+                listener.onOperation(operation, typeIdentifier, nanos);
+            }
+            if (nanos >= slowThresholdNanos) {
+                SlowOperationEvent event = new SlowOperationEvent();
+                if (event.shouldCommit()) {
+                    event.operation = operation.name();
+                    event.typeIdentifier = typeIdentifier.name();
+                    event.nanos = nanos;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    private Cell cell(UDFOperation operation, int typeCode, DigestAlgorithm digestAlgorithm) {
+        if (digestAlgorithm != null && digestAlgorithm(typeCode) != digestAlgorithm) {
+            return null;
+        }
+        return cells.get(index(operation, typeCode));
+    }
+
+    private static int index(UDFOperation operation, int typeCode) {
+        return operation.ordinal() * 256 + typeCode;
+    }
+
+    private static DigestAlgorithm algorithm(String digestAlgorithm) {
+        return digestAlgorithm == null || digestAlgorithm.isEmpty() ? null : DigestAlgorithm.valueOf(digestAlgorithm);
+    }
+
+    /**
+     * @return The digest algorithm of a type, null for types that are not
+     *         digests or authenticators.
+     */
+    static DigestAlgorithm digestAlgorithm(int typeCode) {
+        UdfTypeIdentifier typeIdentifier = UdfTypeIdentifier.lookup(typeCode);
+        return typeIdentifier == null ? null : typeIdentifier.digestAlgorithm();
+    }
+
+    private static final class Cell {
+
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        // Bucket b counts durations in [2^(b-1), 2^b)
+        final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        Cell() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.plooh.adssi.udf;
+
+/**
+ * Receives every operation measured by {@link UDFMetrics} while metrics are
+ * enabled.
+ *
+ * Listeners are called synchronously on the thread that performed the
+ * operation and must return quickly.
+ */
+public interface UDFMetricsListener {
+
+    /**
+     * @param operation      The operation.
+     * @param typeIdentifier Type of the UDF produced or parsed.
+     * @param nanos          Duration of the operation in nanoseconds.
+     */
+    void onOperation(UDFOperation operation, UdfTypeIdentifier typeIdentifier, long nanos);
+}
@@ -0,0 +1,39 @@
+package com.plooh.adssi.udf;
+
+/**
+ * JMX view of {@link UDFMetrics}. Operations and digest algorithms are passed
+ * by name, a null or empty digest algorithm selects all the types.
+ */
+public interface UDFMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getSlowThresholdNanos();
+
+    void setSlowThresholdNanos(long slowThresholdNanos);
+
+    /**
+     * @return Number of operations measured.
+     */
+    long count(String operation, String digestAlgorithm);
+
+    /**
+     * @return Number of operations measured for a type identifier.
+     */
+    long countByType(String operation, String typeIdentifier);
+
+    /**
+     * @return Total time spent in the operation in nanoseconds.
+     */
+    long totalNanos(String operation, String digestAlgorithm);
+
+    /**
+     * @return Upper bound of the histogram bucket holding the percentile, in
+     *         nanoseconds.
+     */
+    long percentileNanos(String operation, String digestAlgorithm, double percentile);
+
+    void reset();
+}
@@ -0,0 +1,18 @@
+package com.plooh.adssi.udf;
+
+/**
+ * The UDF operations measured by {@link UDFMetrics}.
+ */
+public enum UDFOperation {
+    /**
+     * H(UTF8(ContentType) + ":" + H(Data)), excluding the conversion to a binary
+     * UDF measured as DIGEST_TO_UDF
+     */
+    FINGERPRINT,
+    /** Conversion of the outer digest to a binary UDF, HMAC included */
+    DIGEST_TO_UDF,
+    /** Base32 presentation of a binary UDF */
+    PRESENTATION,
+    /** Parsing of a Base32 presentation */
+    PARSE
+}
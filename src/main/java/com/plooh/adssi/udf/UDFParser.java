@@ -0,0 +1,173 @@
+package com.plooh.adssi.udf;
+
+import java.util.Arrays;
+
+/**
+ * Validating parser of UDF Base32 presentations.
+ *
+ * Accepts upper and lower case characters, skips the '-' separators and
+ * decodes truncated presentations: trailing bits that do not fill a whole byte
+ * are dropped. The first decoded byte must be a defined
+ * {@link UdfTypeIdentifier} code.
+ */
+public class UDFParser {
+
+    private static final byte INVALID = -1;
+    private static final byte SEPARATOR = -2;
+
+    // Base32 value of each ASCII character, INVALID or SEPARATOR.
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, INVALID);
+        for (int i = 0; i < Base32Presentation.ALPHABET.length; i++) {
+            char c = Base32Presentation.ALPHABET[i];
+            DECODE[c] = (byte) i;
+            DECODE[Character.toLowerCase(c)] = (byte) i;
+        }
+        DECODE['-'] = SEPARATOR;
+    }
+
+    private UDFParser() {
+    }
+
+    /**
+     * Parse a UDF presentation.
+     *
+     * @param udfString The presentation.
+     * @param start     Index of the first character.
+     * @param end       Index after the last character.
+     * @return The binary UDF.
+     * @throws IllegalArgumentException If the presentation is malformed.
+     */
+    public static UDF parse(CharSequence udfString, int start, int end) {
+        byte[] buffer = new byte[decodedLength(udfString, start, end)];
+        decode(udfString, start, end, buffer, 0);
+        return new UDF(buffer);
+    }
+
+    /**
+     * @return The number of bytes the presentation decodes to.
+     * @throws IllegalArgumentException If the presentation contains a character
+     *                                  that is neither Base32 nor '-'.
+     */
+    public static int decodedLength(CharSequence udfString, int start, int end) {
+        checkRange(udfString, start, end);
+        int characters = 0;
+        for (int i = start; i < end; i++) {
+            byte value = value(udfString, i);
+            if (value != SEPARATOR) {
+                characters++;
+            }
+        }
+        return characters * 5 / 8;
+    }
+
+    /**
+     * Decodes a UDF presentation into the given buffer.
+     *
+     * @param udfString The presentation.
+     * @param start     Index of the first character.
+     * @param end       Index after the last character.
+     * @param out       The destination, must hold
+     *                  {@link #decodedLength(CharSequence, int, int)} bytes.
+     * @param outOff    Offset in the destination.
+     * @return The number of bytes written.
+     * @throws IllegalArgumentException If the presentation is malformed.
+     */
+    public static int decode(CharSequence udfString, int start, int end, byte[] out, int outOff) {
+        checkRange(udfString, start, end);
+        int position = outOff;
+        int buffer = 0;
+        int buffered = 0;
+        for (int i = start; i < end; i++) {
+            byte value = value(udfString, i);
+            if (value == SEPARATOR) {
+                continue;
+            }
+            buffer = (buffer << 5) | value;
+            buffered += 5;
+            if (buffered >= 8) {
+                buffered -= 8;
+                out[position++] = (byte) (buffer >>> buffered);
+            }
+        }
+        int written = position - outOff;
+        if (written == 0) {
+            throw new IllegalArgumentException("UDF presentation too short: \""
+                    + udfString.subSequence(start, end) + "\"");
+        }
+        if (UdfTypeIdentifier.lookup(out[outOff]) == null || out[outOff] == (byte) UdfTypeIdentifier.Unknown.code) {
+            throw new IllegalArgumentException("Unknown UDF type identifier: " + (out[outOff] & 0xFF));
+        }
+        return written;
+    }
+
+    /**
+     * @return The number of bits the presentation encodes, 5 per Base32
+     *         character.
+     * @throws IllegalArgumentException If the presentation contains a character
+     *                                  that is neither Base32 nor '-'.
+     */
+    static int bitLength(CharSequence udfString, int start, int end) {
+        checkRange(udfString, start, end);
+        int characters = 0;
+        for (int i = start; i < end; i++) {
+            if (value(udfString, i) != SEPARATOR) {
+                characters++;
+            }
+        }
+        return characters * 5;
+    }
+
+    /**
+     * Decodes all the bits of a presentation, unlike
+     * {@link #decode(CharSequence, int, int, byte[], int)} the trailing bits
+     * are kept, left aligned in a last partial byte. The type identifier is not
+     * checked.
+     *
+     * @param out    The destination, must hold (bitLength + 7) / 8 bytes.
+     * @param outOff Offset in the destination.
+     * @return The number of bits written.
+     */
+    static int decodeBits(CharSequence udfString, int start, int end, byte[] out, int outOff) {
+        checkRange(udfString, start, end);
+        int position = outOff;
+        int buffer = 0;
+        int buffered = 0;
+        int bits = 0;
+        for (int i = start; i < end; i++) {
+            byte value = value(udfString, i);
+            if (value == SEPARATOR) {
+                continue;
+            }
+            buffer = (buffer << 5) | value;
+            buffered += 5;
+            bits += 5;
+            if (buffered >= 8) {
+                buffered -= 8;
+                out[position++] = (byte) (buffer >>> buffered);
+            }
+        }
+        if (buffered > 0) {
+            out[position] = (byte) (buffer << (8 - buffered));
+        }
+        return bits;
+    }
+
+    private static byte value(CharSequence udfString, int index) {
+        char c = udfString.charAt(index);
+        byte value = c < DECODE.length ? DECODE[c] : INVALID;
+        if (value == INVALID) {
+            throw new IllegalArgumentException("Invalid UDF character '" + c + "' at index " + index);
+        }
+        return value;
+    }
+
+    private static void checkRange(CharSequence udfString, int start, int end) {
+        if (start < 0 || end > udfString.length() || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + start + ", " + end + ") out of bounds for length " + udfString.length());
+        }
+    }
+}
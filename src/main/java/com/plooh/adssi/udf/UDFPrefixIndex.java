@@ -0,0 +1,258 @@
+package com.plooh.adssi.udf;
+
+import java.util.List;
+
+/**
+ * Sorted index of binary UDFs resolving truncated presentations to the stored
+ * fingerprints.
+ *
+ * The first keyLength bytes of every UDF (type identifier included) are packed
+ * big endian into a primitive long array and sorted once. A lookup is a binary
+ * search over that array for all the entries sharing the first bits of the
+ * query, so a 125 bit presentation finds the 440 bit fingerprint it was cut
+ * from. Each entry carries a long payload, usually a record offset.
+ *
+ * Instances are immutable and thread safe.
+ */
+public class UDFPrefixIndex {
+
+    private final int keyLength;
+    private final int words;
+    private final int size;
+    private final long[] keys;
+    private final long[] payloads;
+
+    private UDFPrefixIndex(int keyLength, int size, long[] keys, long[] payloads) {
+        this.keyLength = keyLength;
+        this.words = RowSort.words(keyLength);
+        this.size = size;
+        this.keys = keys;
+        this.payloads = payloads;
+    }
+
+    /**
+     * Builds the index of a batch, the payload of each entry is its index in the
+     * batch.
+     */
+    public static UDFPrefixIndex build(UDFBatch batch) {
+        long[] payloads = new long[batch.size()];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = i;
+        }
+        return build(batch, payloads);
+    }
+
+    /**
+     * Builds the index of a batch.
+     *
+     * @param batch    The fingerprints, in any order.
+     * @param payloads The payload of each fingerprint.
+     * @return The index.
+     */
+    public static UDFPrefixIndex build(UDFBatch batch, long[] payloads) {
+        int keyLength = batch.stride();
+        int words = RowSort.words(keyLength);
+        long[] rows = new long[batch.size() * words];
+        for (int i = 0; i < batch.size(); i++) {
+            RowSort.pack(batch.buffer, batch.offset(i), keyLength, rows, i * words);
+        }
+        return sorted(keyLength, batch.size(), rows, payloads);
+    }
+
+    /**
+     * Builds the index of a list of fingerprints. The UDFs are truncated to the
+     * length of the shortest one.
+     *
+     * @param udfs     The fingerprints, in any order.
+     * @param payloads The payload of each fingerprint.
+     * @return The index.
+     */
+    public static UDFPrefixIndex build(List<UDF> udfs, long[] payloads) {
+        int keyLength = PackedUDF.MAX_LENGTH;
+        for (UDF udf : udfs) {
+            keyLength = Math.min(keyLength, udf.buffer.length);
+        }
+        int words = RowSort.words(keyLength);
+        long[] rows = new long[udfs.size() * words];
+        for (int i = 0; i < udfs.size(); i++) {
+            RowSort.pack(udfs.get(i).buffer, 0, keyLength, rows, i * words);
+        }
+        return sorted(keyLength, udfs.size(), rows, payloads);
+    }
+
+    private static UDFPrefixIndex sorted(int keyLength, int size, long[] rows, long[] payloads) {
+        if (payloads.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " payloads: " + payloads.length);
+        }
+        int words = RowSort.words(keyLength);
+        int[] order = RowSort.order(rows, words, size);
+        long[] keys = new long[rows.length];
+        long[] sortedPayloads = new long[size];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(rows, order[i] * words, keys, i * words, words);
+            sortedPayloads[i] = payloads[order[i]];
+        }
+        return new UDFPrefixIndex(keyLength, size, keys, sortedPayloads);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of bytes of each stored UDF.
+     */
+    public int keyLength() {
+        return keyLength;
+    }
+
+    /**
+     * Finds all the stored fingerprints starting with the bytes of the given UDF.
+     * A UDF longer than keyLength bytes matches on its first keyLength bytes.
+     */
+    public Match find(UDF prefix) {
+        return find(prefix.buffer, 0, prefix.buffer.length, Math.min(prefix.buffer.length, keyLength) * 8);
+    }
+
+    /**
+     * Finds all the stored fingerprints starting with the bits of a
+     * presentation, such as a 125 bit <code>did:sw:</code> identifier. All the
+     * presented bits are matched, up to keyLength bytes.
+     */
+    public Match find(CharSequence presentation) {
+        int bits = UDFParser.bitLength(presentation, 0, presentation.length());
+        byte[] prefix = new byte[(bits + 7) / 8];
+        UDFParser.decodeBits(presentation, 0, presentation.length(), prefix, 0);
+        return find(prefix, 0, prefix.length, Math.min(bits, keyLength * 8));
+    }
+
+    /**
+     * Finds all the stored fingerprints starting with the first bits of prefix.
+     *
+     * @param prefix Buffer holding the binary UDF prefix.
+     * @param offset Offset of the prefix.
+     * @param length Length of the prefix in bytes.
+     * @param bits   Number of leading bits to match, at most length * 8 and
+     *               keyLength * 8.
+     * @return The matching entries.
+     */
+    public Match find(byte[] prefix, int offset, int length, int bits) {
+        if (bits <= 0 || bits > length * 8 || bits > keyLength * 8) {
+            throw new IllegalArgumentException("Unexpected prefix bits: " + bits);
+        }
+        long[] target = new long[words];
+        RowSort.pack(prefix, offset, Math.min(length, keyLength), target, 0);
+        long[] masks = new long[words];
+        for (int w = 0; w < words; w++) {
+            int wordBits = Math.max(0, Math.min(64, bits - w * 64));
+            masks[w] = wordBits == 0 ? 0L : -1L << (64 - wordBits);
+            target[w] &= masks[w];
+        }
+        int from = bound(target, masks, false);
+        int to = bound(target, masks, true);
+        return new Match(from, to);
+    }
+
+    /**
+     * Resolves a prefix to the payload of the single fingerprint it matches.
+     *
+     * @return The payload.
+     * @throws IllegalStateException If no or several fingerprints match.
+     */
+    public long resolve(UDF prefix) {
+        Match match = find(prefix);
+        if (match.isEmpty()) {
+            throw new IllegalStateException("Unknown UDF: " + prefix.presentationBase32());
+        }
+        if (match.isAmbiguous()) {
+            throw new IllegalStateException(
+                    "Ambiguous UDF: " + prefix.presentationBase32() + " matches " + match.count() + " fingerprints");
+        }
+        return match.payload(0);
+    }
+
+    /**
+     * @param upper false for the first entry whose masked key is not less than
+     *              target, true for the first entry whose masked key is greater.
+     */
+    private int bound(long[] target, long[] masks, boolean upper) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int cmp = compareMasked(middle, target, masks);
+            if (cmp < 0 || (upper && cmp == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compareMasked(int row, long[] target, long[] masks) {
+        int offset = row * words;
+        for (int w = 0; w < words; w++) {
+            long key = keys[offset + w] & masks[w];
+            if (key != target[w]) {
+                return Long.compareUnsigned(key, target[w]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The entries matching a prefix, in sorted order.
+     */
+    public class Match {
+
+        private final int from;
+        private final int to;
+
+        Match(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public int count() {
+            return to - from;
+        }
+
+        public boolean isEmpty() {
+            return from == to;
+        }
+
+        public boolean isUnique() {
+            return count() == 1;
+        }
+
+        public boolean isAmbiguous() {
+            return count() > 1;
+        }
+
+        /**
+         * @param index Index of the match, from 0 to count() - 1.
+         * @return The stored fingerprint, truncated to keyLength bytes.
+         */
+        public UDF udf(int index) {
+            byte[] buffer = new byte[keyLength];
+            RowSort.unpack(keys, row(index) * words, keyLength, buffer, 0);
+            return new UDF(buffer);
+        }
+
+        /**
+         * @param index Index of the match, from 0 to count() - 1.
+         * @return The payload of the stored fingerprint.
+         */
+        public long payload(int index) {
+            return payloads[row(index)];
+        }
+
+        private int row(int index) {
+            if (index < 0 || index >= count()) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for count " + count());
+            }
+            return from + index;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.plooh.adssi.udf;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Per thread source of cryptographically secure random bytes for nonce and key
+ * UDFs.
+ *
+ * Each thread owns a DRBG {@link SecureRandom} (the platform default if DRBG
+ * is not available) that fills a block of {@link #BLOCK_LENGTH} bytes at a
+ * time. Requests are served by copying slices out of the block, so minting a
+ * value does not allocate beyond its result and threads never contend on a
+ * shared generator. Served bytes are wiped from the block.
+ *
+ * Instances are confined to their thread, use {@link #current()}.
+ */
+public final class UDFRandom {
+
+    static final int BLOCK_LENGTH = 4096;
+
+    private static final ThreadLocal<UDFRandom> CURRENT = ThreadLocal.withInitial(UDFRandom::new);
+
+    private final SecureRandom random;
+    private final byte[] block = new byte[BLOCK_LENGTH];
+    private int position = BLOCK_LENGTH;
+
+    private UDFRandom() {
+        this.random = newSecureRandom();
+    }
+
+    static SecureRandom newSecureRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    /**
+     * @return The random source of the calling thread.
+     */
+    public static UDFRandom current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Fills a region of an array with random bytes.
+     */
+    public void nextBytes(byte[] out, int offset, int length) {
+        while (length > 0) {
+            if (position == BLOCK_LENGTH) {
+                random.nextBytes(block);
+                position = 0;
+            }
+            int slice = Math.min(length, BLOCK_LENGTH - position);
+            System.arraycopy(block, position, out, offset, slice);
+            Arrays.fill(block, position, position + slice, (byte) 0);
+            position += slice;
+            offset += slice;
+            length -= slice;
+        }
+    }
+
+    public void nextBytes(byte[] out) {
+        nextBytes(out, 0, out.length);
+    }
+
+    public byte[] nextBytes(int length) {
+        byte[] out = new byte[length];
+        nextBytes(out, 0, length);
+        return out;
+    }
+
+    /**
+     * Return a random sequence as a UDF, see {@link UDF#nonce(int)}.
+     *
+     * @param bits Number of random bits in the string
+     * @return A randomly generated UDF string
+     */
+    public String nonce(int bits) {
+        return randomUDF(UdfTypeIdentifier.Nonce, bits);
+    }
+
+    /**
+     * Mints count nonces, reusing one binary buffer and one character buffer
+     * for all of them.
+     *
+     * @param count Number of nonces.
+     * @param bits  Number of random bits in each nonce.
+     * @return The nonces.
+     */
+    public String[] nonces(int count, int bits) {
+        bits = defaultBits(bits);
+        byte[] buffer = new byte[bits / 8];
+        char[] chars = new char[Base32Presentation.length(buffer.length, 4, "-", -1)];
+        buffer[0] = (byte) UdfTypeIdentifier.Nonce.code;
+        String[] nonces = new String[count];
+        for (int i = 0; i < count; i++) {
+            nextBytes(buffer, 1, buffer.length - 1);
+            int length = Base32Presentation.encode(buffer, 0, buffer.length, 4, "-", -1, chars, 0);
+            nonces[i] = new String(chars, 0, length);
+        }
+        Arrays.fill(buffer, (byte) 0);
+        return nonces;
+    }
+
+    /**
+     * Return a random sequence of the given type as a UDF, see
+     * {@link UDF#symmetricKey(UdfTypeIdentifier, int)}.
+     *
+     * @param udfTypeIdentifier The type of the UDF.
+     * @param bits              Number of random bits in the string
+     * @return A randomly generated UDF string
+     */
+    public String randomUDF(UdfTypeIdentifier udfTypeIdentifier, int bits) {
+        bits = defaultBits(bits);
+        // Same layout as typeBDSToBinary(type, bits / 8 random bytes, bits + 8)
+        byte[] buffer = new byte[bits / 8];
+        buffer[0] = (byte) udfTypeIdentifier.code;
+        nextBytes(buffer, 1, buffer.length - 1);
+        String result = UDF.presentationBase32(buffer, 4, "-", -1);
+        Arrays.fill(buffer, (byte) 0);
+        return result;
+    }
+
+    private static int defaultBits(int bits) {
+        return bits <= 0 ? UDF.DefaultBits - 8 : bits;
+    }
+}
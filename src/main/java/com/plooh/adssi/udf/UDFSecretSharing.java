@@ -0,0 +1,312 @@
+package com.plooh.adssi.udf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits key UDFs into ShamirSecret share UDFs and recovers them, with Shamir
+ * secret sharing over GF(256).
+ *
+ * The binary key UDF, type identifier included, is the secret, so recovery
+ * gives back the original key UDF. Each share UDF holds the threshold, the x
+ * coordinate of the share and one y byte per secret byte:
+ *
+ * <pre>
+ * ShamirSecret | threshold | x | y[0] ... y[length - 1]
+ * </pre>
+ *
+ * Field arithmetic uses log/exp tables. Splitting evaluates the random
+ * polynomials of all secret bytes share by share, and recovery computes the
+ * Lagrange coefficients at 0 once per set of shares, then accumulates whole y
+ * arrays. The random coefficients come from {@link UDFRandom} and are wiped
+ * after use.
+ *
+ * The class is stateless and thread safe.
+ */
+public final class UDFSecretSharing {
+
+    /**
+     * Maximum number of shares of a secret.
+     */
+    public static final int MAX_SHARES = 255;
+
+    // Share header: type identifier, threshold, x.
+    private static final int HEADER_LENGTH = 3;
+
+    // EXP[i] = 3^i, doubled so that EXP[LOG[a] + LOG[b]] needs no reduction.
+    private static final byte[] EXP = new byte[510];
+    private static final int[] LOG = new int[256];
+
+    static {
+        int value = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = (byte) value;
+            EXP[i + 255] = (byte) value;
+            LOG[value] = i;
+            // value * 3 = value * 2 + value, reduced by x^8 + x^4 + x^3 + x + 1
+            int doubled = value << 1;
+            if (doubled > 0xFF) {
+                doubled ^= 0x11B;
+            }
+            value = doubled ^ value;
+        }
+    }
+
+    private UDFSecretSharing() {
+    }
+
+    /**
+     * Splits a key UDF into shares, any threshold of which recover it.
+     *
+     * @param keyUDF    The presentation of the key UDF.
+     * @param shares    Number of shares, at most {@link #MAX_SHARES}.
+     * @param threshold Number of shares needed to recover the key, at least 2.
+     * @return The presentations of the share UDFs.
+     * @throws IllegalArgumentException If the UDF is malformed or the counts out
+     *                                  of range.
+     */
+    public static String[] split(String keyUDF, int shares, int threshold) {
+        return split(UDF.parse(keyUDF).buffer, shares, threshold);
+    }
+
+    /**
+     * Splits a secret into shares, any threshold of which recover it.
+     *
+     * @param secret    The secret bytes.
+     * @param shares    Number of shares, at most {@link #MAX_SHARES}.
+     * @param threshold Number of shares needed to recover the secret, at least
+     *                  2.
+     * @return The presentations of the share UDFs.
+     */
+    public static String[] split(byte[] secret, int shares, int threshold) {
+        Splitter splitter = new Splitter(shares, threshold);
+        try {
+            return splitter.split(secret);
+        } finally {
+            splitter.wipe();
+        }
+    }
+
+    /**
+     * Splits many key UDFs with the same parameters, reusing the coefficient,
+     * share and character buffers.
+     *
+     * @param keyUDFs   The presentations of the key UDFs.
+     * @param shares    Number of shares, at most {@link #MAX_SHARES}.
+     * @param threshold Number of shares needed to recover a key, at least 2.
+     * @return For each key, the presentations of its share UDFs.
+     */
+    public static String[][] splitAll(List<String> keyUDFs, int shares, int threshold) {
+        Splitter splitter = new Splitter(shares, threshold);
+        try {
+            String[][] result = new String[keyUDFs.size()][];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = splitter.split(UDF.parse(keyUDFs.get(i)).buffer);
+            }
+            return result;
+        } finally {
+            splitter.wipe();
+        }
+    }
+
+    /**
+     * Recovers a key UDF from its shares.
+     *
+     * @param shares The presentations of at least threshold share UDFs of the
+     *               key, in any order.
+     * @return The presentation of the key UDF.
+     * @throws IllegalArgumentException If the shares are malformed, too few or
+     *                                  not shares of the same secret.
+     */
+    public static String recover(List<String> shares) {
+        byte[] secret = recoverBytes(shares);
+        String result = UDF.presentationBase32(secret, 4, "-", -1);
+        Arrays.fill(secret, (byte) 0);
+        return result;
+    }
+
+    /**
+     * Recovers a secret from its shares.
+     *
+     * @param shares The presentations of at least threshold share UDFs of the
+     *               secret, in any order.
+     * @return The secret bytes.
+     */
+    public static byte[] recoverBytes(List<String> shares) {
+        List<byte[]> buffers = new ArrayList<>(shares.size());
+        for (String share : shares) {
+            buffers.add(UDF.parse(share).buffer);
+        }
+        return recover(buffers, new Combiner());
+    }
+
+    /**
+     * Recovers many key UDFs, reusing the coefficient buffers.
+     *
+     * @param shares For each key, the presentations of at least threshold of its
+     *               share UDFs.
+     * @return The presentations of the key UDFs.
+     */
+    public static String[] recoverAll(List<? extends List<String>> shares) {
+        Combiner combiner = new Combiner();
+        List<byte[]> buffers = new ArrayList<>();
+        String[] result = new String[shares.size()];
+        for (int i = 0; i < result.length; i++) {
+            buffers.clear();
+            for (String share : shares.get(i)) {
+                buffers.add(UDF.parse(share).buffer);
+            }
+            byte[] secret = recover(buffers, combiner);
+            result[i] = UDF.presentationBase32(secret, 4, "-", -1);
+            Arrays.fill(secret, (byte) 0);
+        }
+        return result;
+    }
+
+    private static byte[] recover(List<byte[]> shares, Combiner combiner) {
+        if (shares.isEmpty()) {
+            throw new IllegalArgumentException("No shares");
+        }
+        byte[] first = shares.get(0);
+        checkShare(first);
+        int threshold = first[1] & 0xFF;
+        int length = first.length - HEADER_LENGTH;
+        if (shares.size() < threshold) {
+            throw new IllegalArgumentException("Threshold is " + threshold + ", got " + shares.size() + " shares");
+        }
+        for (int i = 0; i < threshold; i++) {
+            byte[] share = shares.get(i);
+            checkShare(share);
+            if ((share[1] & 0xFF) != threshold || share.length - HEADER_LENGTH != length) {
+                throw new IllegalArgumentException("Shares of different secrets");
+            }
+            combiner.x[i] = share[2] & 0xFF;
+        }
+        combiner.lagrange(threshold);
+
+        byte[] secret = new byte[length];
+        for (int i = 0; i < threshold; i++) {
+            int logCoefficient = combiner.logCoefficients[i];
+            byte[] share = shares.get(i);
+            for (int j = 0; j < length; j++) {
+                secret[j] ^= multiply(share[HEADER_LENGTH + j], logCoefficient);
+            }
+        }
+        return secret;
+    }
+
+    private static void checkShare(byte[] share) {
+        if ((share[0] & 0xFF) != UdfTypeIdentifier.ShamirSecret.code) {
+            throw new IllegalArgumentException("Not a ShamirSecret UDF: " + UdfTypeIdentifier.lookup(share[0]));
+        }
+        if (share.length <= HEADER_LENGTH || (share[1] & 0xFF) < 2 || share[2] == 0) {
+            throw new IllegalArgumentException("Malformed share");
+        }
+    }
+
+    /**
+     * @return a * b, where logB is the logarithm of b, non zero.
+     */
+    private static byte multiply(byte a, int logB) {
+        int value = a & 0xFF;
+        // Mask instead of branch: zero stays zero.
+        int mask = -((value | -value) >>> 31);
+        return (byte) (EXP[LOG[value] + logB] & mask);
+    }
+
+    /**
+     * Splits secrets with fixed share and threshold counts.
+     */
+    private static final class Splitter {
+
+        private final int shares;
+        private final int threshold;
+        // threshold - 1 coefficient rows of length bytes each.
+        private byte[] coefficients = new byte[0];
+        private byte[] share = new byte[0];
+        private char[] chars = new char[0];
+
+        Splitter(int shares, int threshold) {
+            if (threshold < 2 || threshold > shares || shares > MAX_SHARES) {
+                throw new IllegalArgumentException(
+                        "Invalid share counts: " + threshold + " of " + shares + ", at most " + MAX_SHARES);
+            }
+            this.shares = shares;
+            this.threshold = threshold;
+        }
+
+        String[] split(byte[] secret) {
+            int length = secret.length;
+            if (length == 0) {
+                throw new IllegalArgumentException("Empty secret");
+            }
+            if (share.length != HEADER_LENGTH + length) {
+                wipe();
+                coefficients = new byte[(threshold - 1) * length];
+                share = new byte[HEADER_LENGTH + length];
+                chars = new char[Base32Presentation.length(share.length, 4, "-", -1)];
+            }
+            UDFRandom.current().nextBytes(coefficients);
+            share[0] = (byte) UdfTypeIdentifier.ShamirSecret.code;
+            share[1] = (byte) threshold;
+
+            String[] result = new String[shares];
+            for (int x = 1; x <= shares; x++) {
+                int logX = LOG[x];
+                share[2] = (byte) x;
+                // Horner: ((c[k-2] x + c[k-3]) x + ... + c[0]) x + secret
+                int row = (threshold - 2) * length;
+                System.arraycopy(coefficients, row, share, HEADER_LENGTH, length);
+                for (row -= length; row >= 0; row -= length) {
+                    for (int j = 0; j < length; j++) {
+                        share[HEADER_LENGTH + j] = (byte) (multiply(share[HEADER_LENGTH + j], logX)
+                                ^ coefficients[row + j]);
+                    }
+                }
+                for (int j = 0; j < length; j++) {
+                    share[HEADER_LENGTH + j] = (byte) (multiply(share[HEADER_LENGTH + j], logX) ^ secret[j]);
+                }
+                int count = Base32Presentation.encode(share, 0, share.length, 4, "-", -1, chars, 0);
+                result[x - 1] = new String(chars, 0, count);
+            }
+            return result;
+        }
+
+        void wipe() {
+            Arrays.fill(coefficients, (byte) 0);
+            Arrays.fill(share, (byte) 0);
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    /**
+     * Lagrange coefficients at 0 of a set of shares.
+     */
+    private static final class Combiner {
+
+        final int[] x = new int[MAX_SHARES];
+        final int[] logCoefficients = new int[MAX_SHARES];
+
+        /**
+         * Sets logCoefficients[i] to the logarithm of the product over m != i
+         * of x[m] / (x[m] ^ x[i]).
+         */
+        void lagrange(int count) {
+            for (int i = 0; i < count; i++) {
+                int log = 0;
+                for (int m = 0; m < count; m++) {
+                    if (m == i) {
+                        continue;
+                    }
+                    int difference = x[m] ^ x[i];
+                    if (difference == 0) {
+                        throw new IllegalArgumentException("Duplicate share: " + x[i]);
+                    }
+                    log += LOG[x[m]] - LOG[difference];
+                }
+                logCoefficients[i] = Math.floorMod(log, 255);
+            }
+        }
+    }
+}
@@ -0,0 +1,765 @@
+package com.plooh.adssi.udf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent map from binary UDF to long, usually a record offset, stored in a
+ * directory of memory mapped segment files.
+ *
+ * A segment holds fixed width rows sorted by key: the first keyLength bytes of
+ * the binary UDF (type identifier included) followed by the long payload.
+ * Segments are immutable and looked up in place with a binary search over the
+ * mapped file, newest first. Opening a store maps the segments, nothing is
+ * deserialized, and the working set is the pages touched by lookups.
+ *
+ * Writes are appended to a tail log and kept in a sorted in memory table,
+ * replayed from the log when the store is opened. When the table holds
+ * maxTailEntries entries it is written as a new segment and the log is
+ * truncated. When there are more than maxSegments segments, a background
+ * thread merges runs of adjacent segments of the same size tier, keeping the
+ * newest payload of every key. A tier holds segments up to MERGE_WIDTH times
+ * larger than the previous one, so every entry is rewritten once per tier, a
+ * number of times logarithmic in the store size, rather than on every
+ * compaction. Segments of different tiers are not merged in the background:
+ * past maxSegments, the number of segments grows with the number of tiers.
+ *
+ * Segment files are named after the range of generations they cover and are
+ * written to a temporary file then renamed, so a crash at any point leaves a
+ * store that opens to the last written state. Entries can not be removed.
+ *
+ * Lookups are thread safe and do not block each other, writes are serialized.
+ */
+public class UDFSegmentStore implements AutoCloseable {
+
+    static final int SEGMENT_MAGIC = 0x55444653; // "UDFS"
+    static final int TAIL_MAGIC = 0x55444654; // "UDFT"
+    static final int VERSION = 1;
+
+    // magic, version, key length, reserved, row count
+    static final int SEGMENT_HEADER_LENGTH = 24;
+    // magic, version, key length
+    static final int TAIL_HEADER_LENGTH = 12;
+
+    static final int DEFAULT_MAX_TAIL_ENTRIES = 1 << 16;
+    static final int DEFAULT_MAX_SEGMENTS = 8;
+    // Number of adjacent segments of a tier merged into one of the next tier.
+    static final int MERGE_WIDTH = 4;
+
+    static final String TAIL_NAME = "tail.log";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-([0-9a-f]{16})-([0-9a-f]{16})\\.udfs");
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int PAGE_SHIFT = 20;
+    private static final int WRITE_BUFFER_LENGTH = 64 * 1024;
+
+    private final Path directory;
+    private final int keyLength;
+    private final int rowLength;
+    private final int maxTailEntries;
+    private final int maxSegments;
+
+    private final ReentrantReadWriteLock tailLock = new ReentrantReadWriteLock();
+    private final TreeMap<byte[], Long> tail = new TreeMap<>(Arrays::compareUnsigned);
+    private final FileChannel tailLog;
+    private final ByteBuffer tailRecord;
+
+    private final Object segmentsLock = new Object();
+    // Newest first, replaced on every change.
+    private volatile Segment[] segments;
+    private long nextGeneration;
+
+    private final ExecutorService compactor;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private volatile IOException compactionFailure;
+    private final AtomicLong rowsWritten = new AtomicLong();
+
+    private UDFSegmentStore(Path directory, int keyLength, int maxTailEntries, int maxSegments, Segment[] segments,
+            long nextGeneration, FileChannel tailLog) {
+        this.directory = directory;
+        this.keyLength = keyLength;
+        this.rowLength = keyLength + 8;
+        this.maxTailEntries = maxTailEntries;
+        this.maxSegments = maxSegments;
+        this.segments = segments;
+        this.nextGeneration = nextGeneration;
+        this.tailLog = tailLog;
+        this.tailRecord = ByteBuffer.allocate(rowLength);
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "udf-segment-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the store of a directory, creating it if needed.
+     *
+     * @param directory The directory of the store.
+     * @param keyLength Number of bytes of the binary UDFs used as key, type
+     *                  identifier included. Longer UDFs are truncated, shorter
+     *                  ones are rejected. Must match the existing segments.
+     * @return The store.
+     * @throws IOException If the store can not be read, or is corrupt.
+     */
+    public static UDFSegmentStore open(Path directory, int keyLength) throws IOException {
+        return open(directory, keyLength, DEFAULT_MAX_TAIL_ENTRIES, DEFAULT_MAX_SEGMENTS);
+    }
+
+    static UDFSegmentStore open(Path directory, int keyLength, int maxTailEntries, int maxSegments)
+            throws IOException {
+        if (keyLength < 2) {
+            throw new IllegalArgumentException("Key length must be at least 2 bytes: " + keyLength);
+        }
+        if (maxTailEntries < 1 || maxSegments < 1) {
+            throw new IllegalArgumentException("Tail entries and segments must be positive");
+        }
+        Files.createDirectories(directory);
+        List<Segment> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher matcher = SEGMENT_NAME.matcher(name);
+                if (matcher.matches()) {
+                    found.add(Segment.open(file, Long.parseUnsignedLong(matcher.group(1), 16),
+                            Long.parseUnsignedLong(matcher.group(2), 16), keyLength));
+                } else if (name.endsWith(TEMP_SUFFIX)) {
+                    // Interrupted flush or compaction
+                    Files.delete(file);
+                }
+            }
+        }
+        // Inputs of a compaction interrupted before they were deleted are
+        // covered by its output.
+        List<Segment> live = new ArrayList<>();
+        for (Segment segment : found) {
+            boolean covered = false;
+            for (Segment other : found) {
+                if (other != segment && other.first <= segment.first && other.last >= segment.last
+                        && (other.first < segment.first || other.last > segment.last)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (covered) {
+                Files.delete(segment.path);
+            } else {
+                live.add(segment);
+            }
+        }
+        live.sort(Comparator.comparingLong((Segment segment) -> segment.last).reversed());
+        long nextGeneration = live.isEmpty() ? 0 : live.get(0).last + 1;
+
+        FileChannel tailLog = FileChannel.open(directory.resolve(TAIL_NAME), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        UDFSegmentStore store;
+        try {
+            store = new UDFSegmentStore(directory, keyLength, maxTailEntries, maxSegments,
+                    live.toArray(new Segment[0]), nextGeneration, tailLog);
+            store.replayTail();
+        } catch (IOException | RuntimeException e) {
+            tailLog.close();
+            throw e;
+        }
+        return store;
+    }
+
+    public int keyLength() {
+        return keyLength;
+    }
+
+    /**
+     * @return The number of segment files.
+     */
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * @return The number of rows written to segments since the store was
+     *         opened, by flushes and compactions.
+     */
+    long rowsWritten() {
+        return rowsWritten.get();
+    }
+
+    /**
+     * @return The number of entries in the tail, not yet written to a segment.
+     */
+    public int tailSize() {
+        tailLock.readLock().lock();
+        try {
+            return tail.size();
+        } finally {
+            tailLock.readLock().unlock();
+        }
+    }
+
+    public long get(UDF udf, long defaultValue) {
+        return get(udf.buffer, 0, udf.buffer.length, defaultValue);
+    }
+
+    public boolean containsKey(UDF udf) {
+        return containsKey(udf.buffer, 0, udf.buffer.length);
+    }
+
+    /**
+     * @param key          Buffer holding the binary UDF.
+     * @param offset       Offset of the binary UDF.
+     * @param length       Length of the binary UDF.
+     * @param defaultValue Value returned if the key is not present.
+     * @return The newest value associated with the key or defaultValue.
+     */
+    public long get(byte[] key, int offset, int length, long defaultValue) {
+        checkKey(length);
+        byte[] truncated = Arrays.copyOfRange(key, offset, offset + keyLength);
+        tailLock.readLock().lock();
+        try {
+            Long value = tail.get(truncated);
+            if (value != null) {
+                return value;
+            }
+        } finally {
+            tailLock.readLock().unlock();
+        }
+        for (Segment segment : segments) {
+            long row = segment.find(truncated);
+            if (row >= 0) {
+                return segment.payload(row);
+            }
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(byte[] key, int offset, int length) {
+        checkKey(length);
+        byte[] truncated = Arrays.copyOfRange(key, offset, offset + keyLength);
+        tailLock.readLock().lock();
+        try {
+            if (tail.containsKey(truncated)) {
+                return true;
+            }
+        } finally {
+            tailLock.readLock().unlock();
+        }
+        for (Segment segment : segments) {
+            if (segment.find(truncated) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void put(UDF udf, long value) throws IOException {
+        put(udf.buffer, 0, udf.buffer.length, value);
+    }
+
+    /**
+     * Associates the value with the key, replacing any previous value. The
+     * entry is appended to the tail log, see {@link #sync()} for durability.
+     */
+    public void put(byte[] key, int offset, int length, long value) throws IOException {
+        checkKey(length);
+        checkCompaction();
+        byte[] truncated = Arrays.copyOfRange(key, offset, offset + keyLength);
+        tailLock.writeLock().lock();
+        try {
+            tailRecord.clear();
+            tailRecord.put(truncated).putLong(value).flip();
+            while (tailRecord.hasRemaining()) {
+                tailLog.write(tailRecord);
+            }
+            tail.put(truncated, value);
+            if (tail.size() >= maxTailEntries) {
+                flushTail();
+            }
+        } finally {
+            tailLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the tail log to the storage device.
+     */
+    public void sync() throws IOException {
+        tailLog.force(false);
+    }
+
+    /**
+     * Writes the tail to a new segment and truncates the tail log.
+     */
+    public void flush() throws IOException {
+        checkCompaction();
+        tailLock.writeLock().lock();
+        try {
+            flushTail();
+        } finally {
+            tailLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges all the segments into one, on the calling thread, whatever their
+     * tiers.
+     */
+    public void compact() throws IOException {
+        checkCompaction();
+        compactionLock.lock();
+        try {
+            merge(segments);
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the background compaction, forces the tail log and closes it.
+     * The tail is not written to a segment, it is replayed on the next open.
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        tailLock.writeLock().lock();
+        try {
+            tailLog.force(false);
+            tailLog.close();
+        } finally {
+            tailLock.writeLock().unlock();
+        }
+        checkCompaction();
+    }
+
+    private void replayTail() throws IOException {
+        long size = tailLog.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(TAIL_HEADER_LENGTH);
+            header.putInt(TAIL_MAGIC).putInt(VERSION).putInt(keyLength).flip();
+            writeFully(tailLog, header, 0);
+            tailLog.position(TAIL_HEADER_LENGTH);
+            return;
+        }
+        if (size < TAIL_HEADER_LENGTH) {
+            throw new IOException("Truncated tail log header: " + size);
+        }
+        ByteBuffer content = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+        int read = 0;
+        while (content.hasRemaining() && read >= 0) {
+            read = tailLog.read(content, content.position());
+        }
+        content.flip();
+        checkHeader(content, TAIL_MAGIC, "tail log");
+        if (content.getInt(8) != keyLength) {
+            throw new IOException("Tail log has key length " + content.getInt(8));
+        }
+        content.position(TAIL_HEADER_LENGTH);
+        while (content.remaining() >= rowLength) {
+            byte[] key = new byte[keyLength];
+            content.get(key);
+            tail.put(key, content.getLong());
+        }
+        // Drop a record torn by a crash.
+        long end = content.position();
+        tailLog.truncate(end);
+        tailLog.position(end);
+    }
+
+    // Called holding the tail write lock.
+    private void flushTail() throws IOException {
+        if (tail.isEmpty()) {
+            return;
+        }
+        synchronized (segmentsLock) {
+            long generation = nextGeneration++;
+            Segment segment = writeSegment(generation, generation, new RowSource() {
+                private final Iterator<Map.Entry<byte[], Long>> entries = tail.entrySet().iterator();
+
+                @Override
+                public boolean next(ByteBuffer row) {
+                    if (!entries.hasNext()) {
+                        return false;
+                    }
+                    Map.Entry<byte[], Long> entry = entries.next();
+                    row.put(entry.getKey()).putLong(entry.getValue());
+                    return true;
+                }
+            });
+            Segment[] current = segments;
+            Segment[] updated = new Segment[current.length + 1];
+            updated[0] = segment;
+            System.arraycopy(current, 0, updated, 1, current.length);
+            segments = updated;
+        }
+        tail.clear();
+        tailLog.truncate(TAIL_HEADER_LENGTH);
+        tailLog.position(TAIL_HEADER_LENGTH);
+        if (segments.length > maxSegments && compactionScheduled.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                compactionScheduled.set(false);
+                compactionLock.lock();
+                try {
+                    Segment[] inputs;
+                    while (segments.length > maxSegments && (inputs = tierRun(segments)) != null) {
+                        merge(inputs);
+                    }
+                } catch (IOException e) {
+                    compactionFailure = e;
+                } finally {
+                    compactionLock.unlock();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return The newest run of at least MERGE_WIDTH adjacent segments of the
+     *         same tier, null if none.
+     */
+    private Segment[] tierRun(Segment[] current) {
+        int start = 0;
+        while (start < current.length) {
+            int tier = tier(current[start]);
+            int end = start + 1;
+            while (end < current.length && tier(current[end]) == tier) {
+                end++;
+            }
+            if (end - start >= MERGE_WIDTH) {
+                return Arrays.copyOfRange(current, start, end);
+            }
+            start = end;
+        }
+        return null;
+    }
+
+    /**
+     * @return The size tier of a segment: 0 below MERGE_WIDTH full tails, then
+     *         one more for every MERGE_WIDTH times more rows.
+     */
+    private int tier(Segment segment) {
+        int tier = 0;
+        for (long tails = segment.count / maxTailEntries; tails >= MERGE_WIDTH; tails /= MERGE_WIDTH) {
+            tier++;
+        }
+        return tier;
+    }
+
+    /**
+     * Merges adjacent segments, newest first, keeping the payload of the newest
+     * one for every key. The output takes the place of the inputs, segments
+     * flushed meanwhile are newer and left alone.
+     */
+    private void merge(Segment[] inputs) throws IOException {
+        if (inputs.length < 2) {
+            return;
+        }
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+        for (int i = 0; i < inputs.length; i++) {
+            first = Math.min(first, inputs[i].first);
+            last = Math.max(last, inputs[i].last);
+            Cursor cursor = new Cursor(inputs[i], i);
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        Segment merged = writeSegment(first, last, new RowSource() {
+            private final byte[] previous = new byte[keyLength];
+            private boolean started;
+
+            @Override
+            public boolean next(ByteBuffer row) {
+                while (!cursors.isEmpty()) {
+                    Cursor cursor = cursors.poll();
+                    boolean duplicate = started && Arrays.equals(previous, cursor.key);
+                    if (!duplicate) {
+                        // Cursors with equal keys come out newest first.
+                        System.arraycopy(cursor.key, 0, previous, 0, keyLength);
+                        started = true;
+                        row.put(cursor.key).putLong(cursor.payload);
+                    }
+                    if (cursor.advance()) {
+                        cursors.add(cursor);
+                    }
+                    if (!duplicate) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        synchronized (segmentsLock) {
+            List<Segment> updated = new ArrayList<>();
+            for (Segment segment : segments) {
+                if (segment.last > last || segment.last < first) {
+                    updated.add(segment);
+                } else if (segment == inputs[0]) {
+                    updated.add(merged);
+                }
+            }
+            segments = updated.toArray(new Segment[0]);
+        }
+        for (Segment input : inputs) {
+            Files.deleteIfExists(input.path);
+        }
+    }
+
+    private Segment writeSegment(long first, long last, RowSource rows) throws IOException {
+        String name = String.format("segment-%016x-%016x.udfs", first, last);
+        Path path = directory.resolve(name);
+        Path temp = directory.resolve(name + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(WRITE_BUFFER_LENGTH, rowLength));
+            long count = 0;
+            long position = SEGMENT_HEADER_LENGTH;
+            while (true) {
+                if (buffer.remaining() < rowLength) {
+                    buffer.flip();
+                    position += writeFully(channel, buffer, position);
+                    buffer.clear();
+                }
+                if (!rows.next(buffer)) {
+                    break;
+                }
+                count++;
+            }
+            buffer.flip();
+            writeFully(channel, buffer, position);
+            rowsWritten.addAndGet(count);
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_LENGTH);
+            header.putInt(SEGMENT_MAGIC).putInt(VERSION).putInt(keyLength).putInt(0).putLong(count).flip();
+            writeFully(channel, header, 0);
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // The rename must be durable before the tail log is truncated or the
+        // inputs of a compaction deleted.
+        syncDirectory();
+        return Segment.open(path, first, last, keyLength);
+    }
+
+    /**
+     * Forces the directory entries of the store to the storage device, where
+     * the platform allows opening a directory.
+     */
+    private void syncDirectory() throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Windows can not open directories, renames are durable there.
+            return;
+        }
+        try (FileChannel opened = channel) {
+            opened.force(true);
+        }
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private void checkKey(int length) {
+        if (length < keyLength) {
+            throw new IllegalArgumentException("UDF shorter than the key length " + keyLength + ": " + length);
+        }
+    }
+
+    private void checkCompaction() throws IOException {
+        IOException failure = compactionFailure;
+        if (failure != null) {
+            compactionFailure = null;
+            throw new IOException("Background compaction failed", failure);
+        }
+    }
+
+    private static void checkHeader(ByteBuffer header, int magic, String file) throws IOException {
+        if (header.getInt(0) != magic) {
+            throw new IOException("Not a UDF " + file);
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported " + file + " version: " + header.getInt(4));
+        }
+    }
+
+    /**
+     * Writes the rows of a segment.
+     */
+    private interface RowSource {
+
+        /**
+         * Puts the next row in the buffer.
+         *
+         * @return false if there are no more rows.
+         */
+        boolean next(ByteBuffer row);
+    }
+
+    /**
+     * A mapped segment file, in pages of 2^20 rows.
+     */
+    private static final class Segment {
+
+        final Path path;
+        final long first;
+        final long last;
+        final long count;
+        private final int keyLength;
+        private final int rowLength;
+        private final ByteBuffer[] pages;
+
+        private Segment(Path path, long first, long last, long count, int keyLength, ByteBuffer[] pages) {
+            this.path = path;
+            this.first = first;
+            this.last = last;
+            this.count = count;
+            this.keyLength = keyLength;
+            this.rowLength = keyLength + 8;
+            this.pages = pages;
+        }
+
+        static Segment open(Path path, long first, long last, int keyLength) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < SEGMENT_HEADER_LENGTH) {
+                    throw new IOException("Truncated segment " + path);
+                }
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SEGMENT_HEADER_LENGTH);
+                checkHeader(header, SEGMENT_MAGIC, "segment " + path);
+                if (header.getInt(8) != keyLength) {
+                    throw new IOException("Segment " + path + " has key length " + header.getInt(8));
+                }
+                long count = header.getLong(16);
+                int rowLength = keyLength + 8;
+                if (count < 0 || size != SEGMENT_HEADER_LENGTH + count * rowLength) {
+                    throw new IOException("Corrupt segment " + path);
+                }
+                ByteBuffer[] pages = new ByteBuffer[(int) ((count + (1L << PAGE_SHIFT) - 1) >>> PAGE_SHIFT)];
+                for (int i = 0; i < pages.length; i++) {
+                    long rows = Math.min(1L << PAGE_SHIFT, count - ((long) i << PAGE_SHIFT));
+                    pages[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            SEGMENT_HEADER_LENGTH + ((long) i << PAGE_SHIFT) * rowLength, rows * rowLength);
+                }
+                return new Segment(path, first, last, count, keyLength, pages);
+            }
+        }
+
+        /**
+         * @return The row holding the key, -1 if none.
+         */
+        long find(byte[] key) {
+            long low = 0;
+            long high = count - 1;
+            while (low <= high) {
+                long middle = (low + high) >>> 1;
+                int comparison = compare(middle, key);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        private int compare(long row, byte[] key) {
+            ByteBuffer page = pages[(int) (row >>> PAGE_SHIFT)];
+            int position = (int) (row & ((1 << PAGE_SHIFT) - 1)) * rowLength;
+            for (int i = 0; i < keyLength; i++) {
+                int difference = (page.get(position + i) & 0xFF) - (key[i] & 0xFF);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return 0;
+        }
+
+        void key(long row, byte[] key) {
+            ByteBuffer page = pages[(int) (row >>> PAGE_SHIFT)];
+            int position = (int) (row & ((1 << PAGE_SHIFT) - 1)) * rowLength;
+            for (int i = 0; i < keyLength; i++) {
+                key[i] = page.get(position + i);
+            }
+        }
+
+        long payload(long row) {
+            ByteBuffer page = pages[(int) (row >>> PAGE_SHIFT)];
+            return page.getLong((int) (row & ((1 << PAGE_SHIFT) - 1)) * rowLength + keyLength);
+        }
+    }
+
+    /**
+     * Position in a segment being merged, ordered by key then newest segment
+     * first.
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+
+        private final Segment segment;
+        // Index of the segment in the newest first array.
+        private final int age;
+        private long row = -1;
+        final byte[] key;
+        long payload;
+
+        Cursor(Segment segment, int age) {
+            this.segment = segment;
+            this.age = age;
+            this.key = new byte[segment.keyLength];
+        }
+
+        boolean advance() {
+            if (++row >= segment.count) {
+                return false;
+            }
+            segment.key(row, key);
+            payload = segment.payload(row);
+            return true;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int comparison = Arrays.compareUnsigned(key, other.key);
+            return comparison != 0 ? comparison : Integer.compare(age, other.age);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.plooh.adssi.udf;
+
+import java.util.List;
+
+/**
+ * Checks that presented UDFs match data, for a fixed content type and key.
+ *
+ * The presentation is decoded once. Its type identifier selects the digest
+ * algorithm and whether it is keyed, and its length sets the precision: only
+ * the presented bits are compared, in constant time, against the full length
+ * UDF computed from the data. No presentation string is built.
+ *
+ * A verifier holding a key only accepts authenticator UDFs, and a verifier
+ * without a key only accepts digest UDFs. Presentations shorter than the
+ * minimum precision, {@link UDF#MinimumBits} unless specified, never match:
+ * a short prefix is too easy to guess.
+ *
+ * The digest engines and buffers are reused from one verification to the
+ * next. Instances are therefore not thread safe, use one instance per thread.
+ */
+public class UDFVerifier {
+
+    // Longest binary UDF, type identifier included.
+    private static final int MAX_UDF_LENGTH = UDF.binaryLength(512, 64);
+    // Longest presentation, its trailing bits are zero padding.
+    private static final int MAX_DECODED_LENGTH = MAX_UDF_LENGTH + 1;
+
+    private final String contentType;
+    private final String key;
+    private final int minimumBits;
+    // Full length fingerprinters, created on first use.
+    private final BatchFingerprinter[] fingerprinters = new BatchFingerprinter[DigestAlgorithm.values().length];
+    private final byte[] expected = new byte[MAX_UDF_LENGTH];
+    private final byte[] presented = new byte[MAX_DECODED_LENGTH];
+
+    /**
+     * @param contentType MIME media type of the data.
+     * @param key         Key of the authenticators, null to verify unkeyed
+     *                    digests.
+     */
+    public UDFVerifier(String contentType, String key) {
+        this(contentType, key, UDF.MinimumBits);
+    }
+
+    /**
+     * @param contentType MIME media type of the data.
+     * @param key         Key of the authenticators, null to verify unkeyed
+     *                    digests.
+     * @param minimumBits Minimum number of presented bits, type identifier
+     *                    included.
+     * @throws IllegalArgumentException If minimumBits does not exceed the type
+     *                                  identifier.
+     */
+    public UDFVerifier(String contentType, String key, int minimumBits) {
+        if (minimumBits <= 8) {
+            throw new IllegalArgumentException("Minimum precision must exceed the type identifier: " + minimumBits);
+        }
+        this.contentType = contentType;
+        this.key = key;
+        this.minimumBits = minimumBits;
+    }
+
+    /**
+     * Verifies a presentation against data, in a single call.
+     *
+     * @see #verify(byte[], CharSequence)
+     */
+    public static boolean verify(byte[] data, String contentType, CharSequence presentation, String key) {
+        return new UDFVerifier(contentType, key).verify(data, presentation);
+    }
+
+    /**
+     * @param data         The data.
+     * @param presentation The Base32 presentation, possibly truncated.
+     * @return true if the presentation is a fingerprint of the data.
+     * @throws IllegalArgumentException If the presentation contains a character
+     *                                  that is neither Base32 nor '-'.
+     */
+    public boolean verify(byte[] data, CharSequence presentation) {
+        return verify(data, 0, data.length, presentation);
+    }
+
+    /**
+     * @param data         Buffer holding the data.
+     * @param offset       Offset of the data in the buffer.
+     * @param length       Length of the data.
+     * @param presentation The Base32 presentation, possibly truncated.
+     * @return true if the presentation is a fingerprint of the data.
+     */
+    public boolean verify(byte[] data, int offset, int length, CharSequence presentation) {
+        int bits = decode(presentation);
+        BatchFingerprinter fingerprinter = fingerprinter(bits);
+        if (fingerprinter == null) {
+            return false;
+        }
+        fingerprinter.fingerprint(data, offset, length, expected, 0);
+        return matches(expected, presented, bits);
+    }
+
+    /**
+     * @param dataDigest   Digest of the data, H(Data), computed with the
+     *                     algorithm of the presented UDF.
+     * @param presentation The Base32 presentation, possibly truncated.
+     * @return true if the presentation is a fingerprint of the data.
+     */
+    public boolean verifyDigest(byte[] dataDigest, CharSequence presentation) {
+        int bits = decode(presentation);
+        BatchFingerprinter fingerprinter = fingerprinter(bits);
+        if (fingerprinter == null) {
+            return false;
+        }
+        fingerprinter.fingerprintDigest(dataDigest, expected, 0);
+        return matches(expected, presented, bits);
+    }
+
+    /**
+     * @param data The data.
+     * @param udf  The binary UDF, all its bytes are compared.
+     * @return true if the UDF is a fingerprint of the data.
+     */
+    public boolean verify(byte[] data, UDF udf) {
+        byte[] buffer = udf.buffer;
+        if (buffer.length > MAX_UDF_LENGTH) {
+            return false;
+        }
+        System.arraycopy(buffer, 0, presented, 0, buffer.length);
+        int bits = buffer.length * 8;
+        BatchFingerprinter fingerprinter = fingerprinter(bits);
+        if (fingerprinter == null) {
+            return false;
+        }
+        fingerprinter.fingerprint(data, 0, data.length, expected, 0);
+        return matches(expected, presented, bits);
+    }
+
+    /**
+     * Verifies many (data, presentation) pairs.
+     *
+     * @return For each pair, true if the presentation is a fingerprint of the
+     *         data.
+     */
+    public boolean[] verifyAll(List<byte[]> data, List<? extends CharSequence> presentations) {
+        if (data.size() != presentations.size()) {
+            throw new IllegalArgumentException(
+                    "Data and presentation counts differ: " + data.size() + " != " + presentations.size());
+        }
+        boolean[] results = new boolean[data.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = verify(data.get(i), presentations.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * Decodes the presentation into presented.
+     *
+     * @return The number of presented bits, 0 if too long to be a UDF.
+     */
+    private int decode(CharSequence presentation) {
+        int bits = UDFParser.bitLength(presentation, 0, presentation.length());
+        if ((bits + 7) / 8 > MAX_DECODED_LENGTH) {
+            return 0;
+        }
+        return UDFParser.decodeBits(presentation, 0, presentation.length(), presented, 0);
+    }
+
+    /**
+     * @return The fingerprinter of the presented type, null if the type can not
+     *         match.
+     */
+    private BatchFingerprinter fingerprinter(int bits) {
+        if (bits < minimumBits) {
+            return null;
+        }
+        UdfTypeIdentifier typeIdentifier = UdfTypeIdentifier.lookup(presented[0]);
+        if (typeIdentifier == null) {
+            return null;
+        }
+        DigestAlgorithm digestAlgorithm = typeIdentifier.digestAlgorithm();
+        if (digestAlgorithm == null || typeIdentifier.isAuthenticator() != (key != null)) {
+            return null;
+        }
+        BatchFingerprinter fingerprinter = fingerprinters[digestAlgorithm.ordinal()];
+        if (fingerprinter == null) {
+            fingerprinter = new BatchFingerprinter(contentType, MAX_UDF_LENGTH * 8, digestAlgorithm, key);
+            fingerprinters[digestAlgorithm.ordinal()] = fingerprinter;
+        }
+        return fingerprinter;
+    }
+
+    /**
+     * Compares the first bits of a presented UDF with the full length expected
+     * UDF, in time depending only on bits.
+     *
+     * A presentation ending in a partial byte either stops within the UDF or
+     * pads its last byte with zero bits. When both are possible, zero bits also
+     * match.
+     */
+    static boolean matches(byte[] expected, byte[] presented, int bits) {
+        int whole = bits >>> 3;
+        int rest = bits & 7;
+        int difference = 0;
+        for (int i = 0; i < whole; i++) {
+            difference |= presented[i] ^ (i < expected.length ? expected[i] : 0);
+        }
+        if (rest > 0) {
+            int mask = (0xFF << (8 - rest)) & 0xFF;
+            int partial = presented[whole] & mask;
+            int expectedPartial = (whole < expected.length ? expected[whole] : 0) & mask;
+            int partialDifference = partial ^ expectedPartial;
+            if (isPadding(bits)) {
+                // Zero when partial is zero, all ones otherwise.
+                int nonZero = -((partial | -partial) >>> 31);
+                partialDifference &= nonZero;
+            }
+            difference |= partialDifference;
+        }
+        return difference == 0;
+    }
+
+    /**
+     * @return true if a presentation of bits bits can be the full presentation
+     *         of a UDF of bits / 8 bytes.
+     */
+    private static boolean isPadding(int bits) {
+        int bytes = bits >>> 3;
+        return (bytes * 8 + 4) / 5 * 5 == bits;
+    }
+}
@@ -1,7 +1,5 @@
 package com.plooh.adssi.udf;
 
-import java.util.Arrays;
-
 public enum UdfTypeIdentifier {
     /** Undefined type */
     Unknown(-1),
@@ -81,8 +79,67 @@ public enum UdfTypeIdentifier {
         }
     }
 
+    /**
+     * @return The digest algorithm of digest and authenticator types, null for
+     *         the other types.
+     */
+    public DigestAlgorithm digestAlgorithm() {
+        switch (this) {
+            case Authenticator_HMAC_SHA_2_512:
+            case Digest_SHA_2_512:
+            case Digest_SHA_2_512_20:
+            case Digest_SHA_2_512_30:
+            case Digest_SHA_2_512_40:
+            case Digest_SHA_2_512_50:
+                return DigestAlgorithm.SHA2_512;
+            case Authenticator_HMAC_SHA_3_512:
+            case Digest_SHA_3_512:
+            case Digest_SHA_3_512_20:
+            case Digest_SHA_3_512_30:
+            case Digest_SHA_3_512_40:
+            case Digest_SHA_3_512_50:
+                return DigestAlgorithm.SHA3_512;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return true for the keyed fingerprint types.
+     */
+    public boolean isAuthenticator() {
+        return this == Authenticator_HMAC_SHA_2_512 || this == Authenticator_HMAC_SHA_3_512;
+    }
+
+    // Type identifiers indexed by their unsigned byte code.
+    private static final UdfTypeIdentifier[] BY_CODE = new UdfTypeIdentifier[256];
+
+    static {
+        for (UdfTypeIdentifier typeIdentifier : values()) {
+            BY_CODE[typeIdentifier.code & 0xFF] = typeIdentifier;
+        }
+    }
+
+    /**
+     * @param value The type code, either as int code or as (signed) byte.
+     * @return The type identifier.
+     */
     public static UdfTypeIdentifier valueOf(int value) {
-        return Arrays.stream(values()).filter(tid -> tid.code == value).findFirst()
-                .orElseThrow(() -> new IllegalStateException("Unexpected UdfTypeIdentifier code: " + value));
+        UdfTypeIdentifier typeIdentifier = lookup(value);
+        if (typeIdentifier == null) {
+            throw new IllegalStateException("Unexpected UdfTypeIdentifier code: " + value);
+        }
+        return typeIdentifier;
+    }
+
+    /**
+     * @param value The type code, either as int code or as (signed) byte.
+     * @return The type identifier or null if the code is not defined.
+     */
+    static UdfTypeIdentifier lookup(int value) {
+        if (value < Byte.MIN_VALUE || value > 0xFF) {
+            return null;
+        }
+        return BY_CODE[value & 0xFF];
     }
 }
\ No newline at end of file
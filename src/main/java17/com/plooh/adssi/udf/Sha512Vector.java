@@ -0,0 +1,78 @@
+package com.plooh.adssi.udf;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link Sha512Lanes} on the jdk.incubator.vector API, with as many lanes as
+ * the preferred long vector of the platform holds: 8 with AVX-512, 4 with AVX2,
+ * 2 with NEON.
+ *
+ * Only compiled on JDK 17+ and loaded reflectively by
+ * {@link Sha512Lanes#newInstance()}.
+ */
+final class Sha512Vector extends Sha512Lanes {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    Sha512Vector() {
+        super(LANES);
+    }
+
+    @Override
+    void compress() {
+        long[] w = this.w;
+        for (int t = 16; t < 80; t++) {
+            LongVector w15 = LongVector.fromArray(SPECIES, w, (t - 15) * LANES);
+            LongVector w2 = LongVector.fromArray(SPECIES, w, (t - 2) * LANES);
+            LongVector s0 = w15.lanewise(VectorOperators.ROR, 1).lanewise(VectorOperators.XOR,
+                    w15.lanewise(VectorOperators.ROR, 8)).lanewise(VectorOperators.XOR,
+                            w15.lanewise(VectorOperators.LSHR, 7));
+            LongVector s1 = w2.lanewise(VectorOperators.ROR, 19).lanewise(VectorOperators.XOR,
+                    w2.lanewise(VectorOperators.ROR, 61)).lanewise(VectorOperators.XOR,
+                            w2.lanewise(VectorOperators.LSHR, 6));
+            LongVector.fromArray(SPECIES, w, (t - 16) * LANES).add(s0)
+                    .add(LongVector.fromArray(SPECIES, w, (t - 7) * LANES)).add(s1).intoArray(w, t * LANES);
+        }
+
+        LongVector a = LongVector.broadcast(SPECIES, Sha512.IV[0]);
+        LongVector b = LongVector.broadcast(SPECIES, Sha512.IV[1]);
+        LongVector c = LongVector.broadcast(SPECIES, Sha512.IV[2]);
+        LongVector d = LongVector.broadcast(SPECIES, Sha512.IV[3]);
+        LongVector e = LongVector.broadcast(SPECIES, Sha512.IV[4]);
+        LongVector f = LongVector.broadcast(SPECIES, Sha512.IV[5]);
+        LongVector g = LongVector.broadcast(SPECIES, Sha512.IV[6]);
+        LongVector hh = LongVector.broadcast(SPECIES, Sha512.IV[7]);
+        for (int t = 0; t < 80; t++) {
+            LongVector sigma1 = e.lanewise(VectorOperators.ROR, 14).lanewise(VectorOperators.XOR,
+                    e.lanewise(VectorOperators.ROR, 18)).lanewise(VectorOperators.XOR,
+                            e.lanewise(VectorOperators.ROR, 41));
+            LongVector choice = e.and(f).lanewise(VectorOperators.XOR, e.lanewise(VectorOperators.NOT).and(g));
+            LongVector t1 = hh.add(sigma1).add(choice).add(Sha512.K[t])
+                    .add(LongVector.fromArray(SPECIES, w, t * LANES));
+            LongVector sigma0 = a.lanewise(VectorOperators.ROR, 28).lanewise(VectorOperators.XOR,
+                    a.lanewise(VectorOperators.ROR, 34)).lanewise(VectorOperators.XOR,
+                            a.lanewise(VectorOperators.ROR, 39));
+            LongVector majority = a.and(b).lanewise(VectorOperators.XOR, a.and(c))
+                    .lanewise(VectorOperators.XOR, b.and(c));
+            hh = g;
+            g = f;
+            f = e;
+            e = d.add(t1);
+            d = c;
+            c = b;
+            b = a;
+            a = t1.add(sigma0).add(majority);
+        }
+        a.add(Sha512.IV[0]).intoArray(h, 0);
+        b.add(Sha512.IV[1]).intoArray(h, LANES);
+        c.add(Sha512.IV[2]).intoArray(h, 2 * LANES);
+        d.add(Sha512.IV[3]).intoArray(h, 3 * LANES);
+        e.add(Sha512.IV[4]).intoArray(h, 4 * LANES);
+        f.add(Sha512.IV[5]).intoArray(h, 5 * LANES);
+        g.add(Sha512.IV[6]).intoArray(h, 6 * LANES);
+        hh.add(Sha512.IV[7]).intoArray(h, 7 * LANES);
+    }
+}
@@ -0,0 +1,129 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class AsyncFingerprinterTest {
+
+    @Test
+    public void testFuturesMatchSync() throws Exception {
+        for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+            try (AsyncFingerprinter async = AsyncFingerprinter.withPlatformThreads(200, digestAlgorithm, "secret", 2,
+                    16)) {
+                List<CompletableFuture<UDF>> futures = new ArrayList<>();
+                for (int i = 0; i < 500; i++) {
+                    futures.add(async.fingerprint(data(i), contentType(i)));
+                }
+                for (int i = 0; i < 500; i++) {
+                    UDF expected = UDF.dataToUDFBinary(data(i), contentType(i), 200, digestAlgorithm, "secret");
+                    assertArrayEquals(expected.buffer, futures.get(i).get(10, TimeUnit.SECONDS).buffer);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsOrFallback() throws Exception {
+        try (AsyncFingerprinter async = AsyncFingerprinter.withVirtualThreads(0, null, null, 4, 64)) {
+            UDF expected = UDF.dataToUDFBinary(data(1), "phone", 0, null, null);
+            assertArrayEquals(expected.buffer, async.fingerprint(data(1), "phone").get(10, TimeUnit.SECONDS).buffer);
+        }
+    }
+
+    @Test
+    public void testBoundedQueue() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        Executor held = tasks::add;
+        AsyncFingerprinter async = new AsyncFingerprinter(0, null, null, held, 1, 3);
+        List<CompletableFuture<UDF>> accepted = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            accepted.add(async.tryFingerprint(data(i), "phone"));
+        }
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> async.tryFingerprint(data(3), "phone").get());
+        assertTrue(rejected.getCause() instanceof RejectedExecutionException);
+        assertEquals(3, async.queued());
+
+        tasks.forEach(Runnable::run);
+        assertEquals(0, async.queued());
+        for (CompletableFuture<UDF> future : accepted) {
+            assertTrue(future.isDone());
+        }
+        async.close();
+        ExecutionException closed = assertThrows(ExecutionException.class,
+                () -> async.fingerprint(data(4), "phone").get());
+        assertTrue(closed.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testProcessorOrderAndBackpressure() throws Exception {
+        int count = 1_000;
+        try (AsyncFingerprinter async = AsyncFingerprinter.withPlatformThreads(0, null, null, 2, 8);
+                SubmissionPublisher<AsyncFingerprinter.Request> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(async);
+            List<UDF> results = new ArrayList<>();
+            CountDownLatch done = new CountDownLatch(1);
+            async.subscribe(new Flow.Subscriber<UDF>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(5);
+                }
+
+                @Override
+                public void onNext(UDF item) {
+                    results.add(item);
+                    if (results.size() % 5 == 0) {
+                        subscription.request(5);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    done.countDown();
+                }
+            });
+            for (int i = 0; i < count; i++) {
+                publisher.submit(new AsyncFingerprinter.Request(data(i), contentType(i)));
+            }
+            publisher.close();
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(count, results.size());
+            for (int i = 0; i < count; i++) {
+                UDF expected = UDF.dataToUDFBinary(data(i), contentType(i), 0, null, null);
+                assertArrayEquals(expected.buffer, results.get(i).buffer);
+            }
+        }
+    }
+
+    private static byte[] data(int i) {
+        return ("+49172" + (2346123 + i * 7919)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String contentType(int i) {
+        return i % 3 == 0 ? "phone" : "text/plain";
+    }
+}
@@ -0,0 +1,67 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+public class Base32PresentationTest {
+
+    @Test
+    public void testMatchesCodecPresentation() {
+        Random random = new Random(7);
+        String[] delimiters = { "-", "", "::" };
+        for (int length = 0; length <= 70; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            for (int chunkSize = 1; chunkSize <= 6; chunkSize++) {
+                for (String delimiter : delimiters) {
+                    for (int bits = -1; bits <= 600; bits += 25) {
+                        String expected = codecPresentation(bytes, chunkSize, delimiter, bits);
+                        assertEquals(expected, Base32Presentation.toString(bytes, chunkSize, delimiter, bits));
+                        assertEquals(expected.length(), Base32Presentation.length(length, chunkSize, delimiter, bits));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTargets() {
+        byte[] bytes = "I am francis here!".getBytes();
+        String expected = "JEQG-C3JA-MZZG-C3TD-NFZS-A2DF-OJSS-C";
+
+        char[] chars = new char[expected.length() + 2];
+        int written = Base32Presentation.encode(bytes, 0, bytes.length, 4, "-", -1, chars, 2);
+        assertEquals(expected, new String(chars, 2, written));
+
+        StringBuilder builder = new StringBuilder("did:sw:");
+        Base32Presentation.encode(bytes, 0, bytes.length, 4, "-", 125, builder);
+        assertEquals("did:sw:JEQG-C3JA-MZZG-C3TD-NFZS-A2DF-OJSS", builder.toString());
+
+        CharBuffer buffer = CharBuffer.allocate(expected.length());
+        Base32Presentation.encode(bytes, 0, bytes.length, 4, "-", -1, buffer);
+        assertEquals(expected, buffer.flip().toString());
+
+        byte[] ascii = new byte[expected.length() + 1];
+        written = Base32Presentation.encode(bytes, 0, bytes.length, 4, "-", -1, ascii, 1);
+        assertEquals(expected, new String(ascii, 1, written, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * The presentation as computed through commons-codec before the dedicated
+     * encoder.
+     */
+    private static String codecPresentation(byte[] bytes, int chunkSize, String delimiter, int bits) {
+        String s = StringUtils.substringBefore(UDF.base32.encodeToString(bytes), "=");
+        String[] chunks = UDF.chunk(s, chunkSize);
+        int bl = (bits + 19) / 20;
+        int min = Math.min(bl, chunks.length);
+        int blocks = bits <= 0 ? chunks.length : min;
+        return StringUtils.join(chunks, delimiter, 0, blocks);
+    }
+}
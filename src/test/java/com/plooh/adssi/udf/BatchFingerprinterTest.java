@@ -0,0 +1,98 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+public class BatchFingerprinterTest {
+
+    @Test
+    public void testBatchMatchesSingle() {
+        List<byte[]> data = phoneNumbers(500);
+        for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+            for (int bits : new int[] { 0, 125, 440, 800 }) {
+                UDFBatch batch = UDF.dataToUDFBatch(data, "phone", bits, digestAlgorithm, null);
+                assertEquals(data.size(), batch.size());
+                for (int i = 0; i < data.size(); i++) {
+                    UDF expected = UDF.dataToUDFBinary(data.get(i), "phone", bits, digestAlgorithm, null);
+                    assertArrayEquals(expected.buffer, batch.get(i).buffer);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testKeyedBatchMatchesSingle() {
+        byte[][] data = phoneNumbers(20).toArray(new byte[0][]);
+        UDFBatch batch = UDF.dataToUDFBatch(data, "phone", 0, DigestAlgorithm.SHA2_512, "secret");
+        for (int i = 0; i < data.length; i++) {
+            UDF expected = UDF.dataToUDFBinary(data[i], "phone", 0, DigestAlgorithm.SHA2_512, "secret");
+            assertArrayEquals(expected.buffer, batch.get(i).buffer);
+        }
+    }
+
+    @Test
+    public void testAddressPresentation() {
+        byte[][] data = { "+491722346123".getBytes(StandardCharsets.UTF_8) };
+        UDFBatch batch = UDF.dataToUDFBatch(data, "phone", 0, null, null);
+        assertEquals("MCIT-HW7U-5AKU-JLLF-44ZK-QXF4-QKHJ", batch.presentationBase32(0, 125));
+    }
+
+    @Test
+    public void testSha512Lanes() {
+        Sha512Lanes engine = Sha512Lanes.newInstance();
+        Assumptions.assumeTrue(engine != null, "jdk.incubator.vector not available");
+        for (int length = 0; length <= Sha512Lanes.MAX_MESSAGE_LENGTH; length += engine.lanes()) {
+            byte[][] messages = new byte[engine.lanes()][];
+            for (int l = 0; l < messages.length; l++) {
+                messages[l] = new byte[Math.min(length + l, Sha512Lanes.MAX_MESSAGE_LENGTH)];
+                Arrays.fill(messages[l], (byte) (length + l));
+                engine.load(l, messages[l], 0, messages[l].length);
+            }
+            engine.compress();
+            byte[] out = new byte[64];
+            for (int l = 0; l < messages.length; l++) {
+                engine.store(l, out, 0);
+                assertArrayEquals(DigestUtils.sha512(messages[l]), out);
+            }
+        }
+    }
+
+    @Test
+    public void testMultiLaneMatchesScalar() {
+        List<byte[]> data = phoneNumbers(37);
+        data.add(new byte[Sha512Lanes.MAX_MESSAGE_LENGTH]);
+        data.add(new byte[Sha512Lanes.MAX_MESSAGE_LENGTH + 1]);
+        data.add(new byte[0]);
+        byte[][] items = data.toArray(new byte[0][]);
+        String longType = "application/vnd.example.a-rather-long-content-type+json";
+        for (String contentType : new String[] { "phone", longType }) {
+            for (String key : new String[] { null, "secret" }) {
+                BatchFingerprinter multiLane = new BatchFingerprinter(contentType, 440, DigestAlgorithm.SHA2_512,
+                        key, false, true);
+                Assumptions.assumeTrue(multiLane.isMultiLane(), "jdk.incubator.vector not available");
+                BatchFingerprinter scalar = new BatchFingerprinter(contentType, 440, DigestAlgorithm.SHA2_512,
+                        key, false, false);
+                UDFBatch expected = scalar.fingerprint(items);
+                assertArrayEquals(expected.buffer, multiLane.fingerprint(items).buffer);
+                assertArrayEquals(expected.buffer, multiLane.fingerprint(data).buffer);
+            }
+        }
+    }
+
+    private static List<byte[]> phoneNumbers(int count) {
+        List<byte[]> data = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            data.add(("+49172" + (2346123 + i * 7919)).getBytes(StandardCharsets.UTF_8));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,151 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BulkFingerprinterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testCsvPresentationsInOrder() throws Exception {
+        List<String> emails = emails(2_000);
+        StringBuilder csv = new StringBuilder("id,email\r\n");
+        for (int i = 0; i < emails.size(); i++) {
+            csv.append(i).append(',').append(emails.get(i)).append("\r\n");
+        }
+        // Missing column and empty line
+        csv.append("2000\n\n");
+        Path input = write("emails.csv", csv.toString());
+        Path output = directory.resolve("emails.txt");
+        // Small chunks to cross many line boundaries.
+        try (BulkFingerprinter bulk = new BulkFingerprinter("email", 0, null, null, 3, 4, 997)) {
+            BulkFingerprinter.Summary summary = bulk.fingerprint(input, RecordFormat.csv(1, ',', true), output,
+                    BulkFingerprinter.OutputFormat.text(125), false);
+            assertEquals(emails.size(), summary.records());
+            assertEquals(1, summary.skipped());
+        }
+        List<String> lines = Files.readAllLines(output);
+        assertEquals(emails.size(), lines.size());
+        for (int i = 0; i < emails.size(); i++) {
+            byte[] data = emails.get(i).getBytes(StandardCharsets.UTF_8);
+            assertEquals(UDF.dataToUDFBinary(data, "email", 0, null, null).presentationBase32(125), lines.get(i));
+        }
+    }
+
+    @Test
+    public void testSortedBinary() throws Exception {
+        List<String> phones = new ArrayList<>();
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 3_000; i++) {
+            String phone = "+49172" + (2346123 + i * 7919);
+            phones.add(phone);
+            csv.append(phone).append(";x\n");
+        }
+        Path input = write("phones.csv", csv.toString());
+        Path output = directory.resolve("phones.udf");
+        try (BulkFingerprinter bulk = new BulkFingerprinter("phone", 200, DigestAlgorithm.SHA3_512, "secret", 2, 3,
+                4096)) {
+            bulk.fingerprint(input, RecordFormat.csv(0, ';', false), output, BulkFingerprinter.OutputFormat.BINARY,
+                    true);
+        }
+        List<byte[]> expected = new ArrayList<>();
+        for (String phone : phones) {
+            expected.add(UDF.dataToUDFBinary(phone.getBytes(StandardCharsets.UTF_8), "phone", 200,
+                    DigestAlgorithm.SHA3_512, "secret").buffer);
+        }
+        expected.sort(Arrays::compareUnsigned);
+        byte[] actual = Files.readAllBytes(output);
+        int stride = expected.get(0).length;
+        assertEquals(expected.size() * stride, actual.length);
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), Arrays.copyOfRange(actual, i * stride, (i + 1) * stride));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    public void testEscapedFields() throws Exception {
+        String[] values = { "DE89 3704 0044 0532 0130 00", "say \"hi\"", "café 😀", "a\\b" };
+        String csv = "1,\"DE89 3704 0044 0532 0130 00\"\n2,\"say \"\"hi\"\"\"\n3,café 😀\n4,a\\b\n";
+        String ndjson = "{\"id\":1,\"iban\":\"DE89 3704 0044 0532 0130 00\"}\n"
+                + "{\"nested\":{\"iban\":\"no\",\"list\":[\"}\"]}, \"iban\" : \"say \\\"hi\\\"\"}\n"
+                + "{\"iban\":\"caf\\u00e9 \\ud83d\\ude00\"}\n"
+                + "{\"iban\":\"a\\\\b\",\"other\":null}\n"
+                + "{\"iban\":null}\n"
+                + "{\"other\":\"x\"}\n";
+        Path csvOutput = directory.resolve("csv.txt");
+        Path jsonOutput = directory.resolve("json.txt");
+        try (BulkFingerprinter bulk = new BulkFingerprinter("iban", 0, null, null, 1)) {
+            bulk.fingerprint(write("ibans.csv", csv), RecordFormat.csv(1, ',', false), csvOutput,
+                    BulkFingerprinter.OutputFormat.text(0), false);
+            BulkFingerprinter.Summary summary = bulk.fingerprint(write("ibans.ndjson", ndjson),
+                    RecordFormat.ndjson("iban"), jsonOutput, BulkFingerprinter.OutputFormat.text(0), false);
+            assertEquals(4, summary.records());
+            assertEquals(2, summary.skipped());
+        }
+        List<String> expected = new ArrayList<>();
+        for (String value : values) {
+            expected.add(UDF.dataToUDFBinary(value.getBytes(StandardCharsets.UTF_8), "iban", 0, null, null)
+                    .presentationBase32());
+        }
+        assertEquals(expected, Files.readAllLines(csvOutput));
+        assertEquals(expected, Files.readAllLines(jsonOutput));
+    }
+
+    @Test
+    public void testCommandLine() throws Exception {
+        List<String> emails = emails(50);
+        StringBuilder ndjson = new StringBuilder();
+        for (String email : emails) {
+            ndjson.append("{\"email\":\"").append(email).append("\"}\n");
+        }
+        Path input = write("emails.ndjson", ndjson.toString());
+        Path output = directory.resolve("emails.txt");
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = BulkFingerprinter.run(new String[] { "--ndjson", "email", "--content-type", "email", "--sort",
+                "--threads", "2", input.toString(), output.toString() }, new PrintStream(err, true));
+        assertEquals(0, status);
+        List<String> expected = new ArrayList<>();
+        List<byte[]> udfs = new ArrayList<>();
+        for (String email : emails) {
+            udfs.add(UDF.dataToUDFBinary(email.getBytes(StandardCharsets.UTF_8), "email", 0, null, null).buffer);
+        }
+        udfs.sort(Arrays::compareUnsigned);
+        for (byte[] udf : udfs) {
+            expected.add(Base32Presentation.toString(udf, 4, "-", 0));
+        }
+        assertEquals(expected, Files.readAllLines(output));
+
+        assertEquals(2, BulkFingerprinter.run(new String[] { "--csv", "0", input.toString() },
+                new PrintStream(new ByteArrayOutputStream(), true)));
+    }
+
+    private Path write(String name, String content) throws Exception {
+        return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> emails(int count) {
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            emails.add("user." + i + "@mail" + (i % 7) + ".example");
+        }
+        return emails;
+    }
+}
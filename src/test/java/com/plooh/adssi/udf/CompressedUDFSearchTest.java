@@ -0,0 +1,154 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class CompressedUDFSearchTest {
+
+    private static final byte[] KEY = "long-lived key material".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testFindsCompressedUDF() throws Exception {
+        CompressedUDFSearch search = new CompressedUDFSearch(KEY, UDFConstants.PKIXKey, 0, null);
+        CompressedUDFSearch.Search running = search.start(1, null);
+        CompressedUDFSearch.Result result = running.result().get(60, TimeUnit.SECONDS).get();
+
+        assertEquals(UdfTypeIdentifier.Digest_SHA_2_512_20, result.udf().typeIdentifier());
+        UDF expected = UDF.dataToUDFBinary(result.data(), UDFConstants.PKIXKey, 0, null, null);
+        assertArrayEquals(expected.buffer, result.udf().buffer);
+        assertEquals(KEY.length + 8, result.data().length);
+        assertTrue(result.attempts() > 0);
+        assertTrue(running.hashRate() > 0);
+    }
+
+    @Test
+    public void testTimeBudget() throws Exception {
+        CompressedUDFSearch search = new CompressedUDFSearch(KEY, UDFConstants.PKIXKey, 0, DigestAlgorithm.SHA3_512);
+        CompressedUDFSearch.Search running = search.start(4, Duration.ofMillis(100));
+        Optional<CompressedUDFSearch.Result> result = running.result().get(30, TimeUnit.SECONDS);
+        assertFalse(result.isPresent());
+        assertTrue(running.attempts() > 0);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        CompressedUDFSearch search = new CompressedUDFSearch(KEY, UDFConstants.PKIXKey, 0, null);
+        CompressedUDFSearch.Search running = search.start(4, null);
+        Thread.sleep(50);
+        running.cancel();
+        assertFalse(running.result().get(30, TimeUnit.SECONDS).isPresent());
+        assertTrue(running.isDone());
+    }
+
+    @Test
+    public void testHigherLevels() throws Exception {
+        assertPlantedHit(2, 29, 30, UdfTypeIdentifier.Digest_SHA_2_512_30);
+        assertPlantedHit(3, 39, 40, UdfTypeIdentifier.Digest_SHA_2_512_40);
+        assertPlantedHit(3, 39, 47, UdfTypeIdentifier.Digest_SHA_2_512_40);
+        assertPlantedHit(4, 49, 50, UdfTypeIdentifier.Digest_SHA_2_512_50);
+        assertPlantedHit(4, 48, 58, UdfTypeIdentifier.Digest_SHA_2_512_50);
+    }
+
+    /**
+     * Plants a near miss with missZeros trailing zero bits at nonce 100 and a
+     * hit with hitZeros at nonce 200, then searches on a single worker.
+     */
+    private static void assertPlantedHit(int compression, int missZeros, int hitZeros, UdfTypeIdentifier expected)
+            throws Exception {
+        Map<ByteBuffer, Integer> planted = new HashMap<>();
+        planted.put(ByteBuffer.wrap(outerDigest(100)), missZeros);
+        planted.put(ByteBuffer.wrap(outerDigest(200)), hitZeros);
+        CompressedUDFSearch search = new CompressedUDFSearch(KEY, UDFConstants.PKIXKey, 0, null,
+                () -> new PlantingDigest(planted));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompressedUDFSearch.Result result = search.start(compression, null, executor, 1).result()
+                    .get(60, TimeUnit.SECONDS).get();
+            assertEquals(200, result.nonce());
+            assertEquals(expected, result.udf().typeIdentifier());
+            assertEquals(201, result.attempts());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] outerDigest(long nonce) {
+        byte[] candidate = ByteBuffer.allocate(KEY.length + 8).put(KEY).putLong(nonce).array();
+        byte[] buffer = UDF.udfDataBuffer(Digests.digest(candidate, DigestAlgorithm.SHA2_512), UDFConstants.PKIXKey);
+        return Digests.digest(buffer, DigestAlgorithm.SHA2_512);
+    }
+
+    /**
+     * SHA2-512 that clears the trailing bits of planted digests.
+     */
+    private static class PlantingDigest extends MessageDigest implements Cloneable {
+
+        private final Map<ByteBuffer, Integer> planted;
+        private final MessageDigest sha512;
+
+        PlantingDigest(Map<ByteBuffer, Integer> planted) {
+            this(planted, Digests.messageDigest(DigestAlgorithm.SHA2_512));
+        }
+
+        private PlantingDigest(Map<ByteBuffer, Integer> planted, MessageDigest sha512) {
+            super("SHA-512");
+            this.planted = planted;
+            this.sha512 = sha512;
+        }
+
+        @Override
+        public Object clone() throws CloneNotSupportedException {
+            return new PlantingDigest(planted, (MessageDigest) sha512.clone());
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            sha512.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            sha512.update(input, offset, len);
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return 64;
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            byte[] digest = sha512.digest();
+            Integer zeros = planted.get(ByteBuffer.wrap(digest));
+            if (zeros != null) {
+                byte[] cleared = UDFTest.trailingZeros(zeros);
+                for (int i = 0; i < digest.length; i++) {
+                    digest[i] &= cleared[i];
+                }
+                // Exactly zeros trailing zero bits
+                digest[63 - zeros / 8] |= (byte) (1 << (zeros % 8));
+            }
+            return digest;
+        }
+
+        @Override
+        protected void engineReset() {
+            sha512.reset();
+        }
+    }
+}
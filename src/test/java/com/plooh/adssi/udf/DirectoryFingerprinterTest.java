@@ -0,0 +1,73 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DirectoryFingerprinterTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    public void testOrderedAndUnordered() throws IOException {
+        Map<Path, byte[]> contents = createTree();
+        List<Path> walkOrder;
+        try (Stream<Path> walk = Files.walk(root)) {
+            walkOrder = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        // Small map threshold so that some files are memory mapped.
+        try (DirectoryFingerprinter fingerprinter = new DirectoryFingerprinter("application/octet-stream", 0,
+                DigestAlgorithm.SHA3_512, null, 3, 5, 10_000)) {
+            List<DirectoryFingerprinter.FileUDF> ordered;
+            try (Stream<DirectoryFingerprinter.FileUDF> stream = fingerprinter.fingerprint(root, true)) {
+                ordered = stream.collect(Collectors.toList());
+            }
+            assertEquals(walkOrder, ordered.stream().map(DirectoryFingerprinter.FileUDF::path)
+                    .collect(Collectors.toList()));
+            check(contents, ordered);
+
+            List<DirectoryFingerprinter.FileUDF> unordered;
+            try (Stream<DirectoryFingerprinter.FileUDF> stream = fingerprinter.fingerprint(root, false)) {
+                unordered = stream.collect(Collectors.toList());
+            }
+            check(contents, unordered);
+        }
+    }
+
+    private static void check(Map<Path, byte[]> contents, List<DirectoryFingerprinter.FileUDF> results) {
+        assertEquals(contents.size(), results.size());
+        for (DirectoryFingerprinter.FileUDF result : results) {
+            UDF expected = UDF.dataToUDFBinary(contents.get(result.path()), "application/octet-stream", 0,
+                    DigestAlgorithm.SHA3_512, null);
+            assertArrayEquals(expected.buffer, result.udf().buffer);
+        }
+    }
+
+    private Map<Path, byte[]> createTree() throws IOException {
+        Random random = new Random(17);
+        Map<Path, byte[]> contents = new HashMap<>();
+        for (int d = 0; d < 4; d++) {
+            Path directory = Files.createDirectories(root.resolve("dir" + d).resolve("sub" + d));
+            for (int f = 0; f < 10; f++) {
+                byte[] data = new byte[random.nextInt(f == 0 ? 200_000 : 2_000)];
+                random.nextBytes(data);
+                contents.put(Files.write(directory.resolve("file" + f), data), data);
+            }
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,164 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class FingerprintCacheTest {
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        FingerprintCache cache = new FingerprintCache(1 << 20);
+        byte[] data = bytes("+491722346123");
+        UDF first = cache.fingerprint(data, "phone", 0, null, null);
+        UDF second = cache.fingerprint(bytes("+491722346123"), "phone", 0, DigestAlgorithm.SHA2_512, null);
+        assertSame(first, second);
+        assertArrayEquals(UDF.dataToUDFBinary(data, "phone", 0, null, null).buffer, first.buffer);
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+
+        assertEquals(UDF.contentDigestOfDataString(data, "phone", 0, null, null),
+                cache.contentDigestOfDataString(data, "phone", 0, null, null));
+        assertEquals(2, cache.hitCount());
+
+        // Every part of the key matters.
+        assertNotSame(first, cache.fingerprint(data, "email", 0, null, null));
+        assertNotSame(first, cache.fingerprint(data, "phone", 200, null, null));
+        assertNotSame(first, cache.fingerprint(data, "phone", 0, DigestAlgorithm.SHA3_512, null));
+        assertNotSame(first, cache.fingerprint(data, "phone", 0, null, "secret"));
+        assertEquals(5, cache.size());
+        assertEquals(5, cache.missCount());
+    }
+
+    @Test
+    public void testInvalidateKey() {
+        FingerprintCache cache = new FingerprintCache(1 << 20);
+        byte[] data = bytes("+491722346123");
+        UDF keyed = cache.fingerprint(data, "phone", 0, null, "secret");
+        UDF other = cache.fingerprint(data, "phone", 0, null, "other");
+        UDF unkeyed = cache.fingerprint(data, "phone", 0, null, null);
+        assertEquals("ABU6-DBRL-QMD2-JFN2-A6Q7-NDGP-BAC3-4", keyed.presentationBase32(150));
+
+        cache.invalidateKey("secret");
+        assertEquals(2, cache.size());
+        assertSame(other, cache.fingerprint(data, "phone", 0, null, "other"));
+        assertSame(unkeyed, cache.fingerprint(data, "phone", 0, null, null));
+        UDF recomputed = cache.fingerprint(data, "phone", 0, null, "secret");
+        assertNotSame(keyed, recomputed);
+        assertArrayEquals(keyed.buffer, recomputed.buffer);
+    }
+
+    @Test
+    public void testInvalidateInFlight() {
+        AtomicBoolean invalidate = new AtomicBoolean(true);
+        FingerprintCache cache = new FingerprintCache(1 << 20) {
+            @Override
+            void beforeAdmit() {
+                if (invalidate.getAndSet(false)) {
+                    invalidateKey("secret");
+                }
+            }
+        };
+        byte[] data = bytes("+491722346123");
+        UDF inFlight = cache.fingerprint(data, "phone", 0, null, "secret");
+        assertArrayEquals(UDF.dataToUDFBinary(data, "phone", 0, null, "secret").buffer, inFlight.buffer);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.fingerprinterCount());
+
+        // Requests started after the invalidation are admitted again.
+        UDF admitted = cache.fingerprint(data, "phone", 0, null, "secret");
+        assertNotSame(inFlight, admitted);
+        assertEquals(1, cache.size());
+        assertSame(admitted, cache.fingerprint(data, "phone", 0, null, "secret"));
+    }
+
+    @Test
+    public void testBoundedWeight() {
+        long maximumWeight = 64 * 1024;
+        FingerprintCache cache = new FingerprintCache(maximumWeight, 4);
+        for (int i = 0; i < 10_000; i++) {
+            cache.fingerprint(bytes("user" + i + "@example.com"), "email", 0, null, null);
+            assertTrue(cache.weight() <= maximumWeight);
+        }
+        assertTrue(cache.evictionCount() > 0);
+        assertTrue(cache.size() < 10_000);
+    }
+
+    @Test
+    public void testBoundedFingerprinters() {
+        long maximumWeight = 256 * 1024;
+        FingerprintCache cache = new FingerprintCache(maximumWeight, 4);
+        byte[] data = bytes("+491722346123");
+        for (int i = 0; i < 100; i++) {
+            UDF udf = cache.fingerprint(data, "phone", 0, null, "key-" + i);
+            assertArrayEquals(UDF.dataToUDFBinary(data, "phone", 0, null, "key-" + i).buffer, udf.buffer);
+            assertTrue(cache.weight() <= maximumWeight);
+        }
+        assertEquals(maximumWeight / 8 / FingerprintCache.FINGERPRINTER_WEIGHT, cache.fingerprinterCount());
+
+        cache.invalidateKey("key-99");
+        assertEquals(maximumWeight / 8 / FingerprintCache.FINGERPRINTER_WEIGHT - 1, cache.fingerprinterCount());
+        cache.invalidateAll();
+        assertEquals(0, cache.fingerprinterCount());
+        assertEquals(0, cache.weight());
+        assertThrows(IllegalArgumentException.class, () -> new FingerprintCache(FingerprintCache.FINGERPRINTER_WEIGHT));
+    }
+
+    @Test
+    public void testFrequentEntriesSurviveScan() {
+        FingerprintCache cache = new FingerprintCache(64 * 1024, 1);
+        byte[] hot = bytes("+491722346123");
+        for (int i = 0; i < 20; i++) {
+            cache.fingerprint(hot, "phone", 0, null, null);
+        }
+        // One-off inputs are not admitted over the popular entry.
+        for (int i = 0; i < 5_000; i++) {
+            cache.fingerprint(bytes("+49" + i), "phone", 0, null, null);
+        }
+        long misses = cache.missCount();
+        cache.fingerprint(hot, "phone", 0, null, null);
+        assertEquals(misses, cache.missCount());
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        FingerprintCache cache = new FingerprintCache(32 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        byte[] data = bytes("+49172" + (i % 300));
+                        UDF expected = UDF.dataToUDFBinary(data, "phone", 0, null, null);
+                        assertArrayEquals(expected.buffer, cache.fingerprint(data, "phone", 0, null, null).buffer);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(8_000, cache.hitCount() + cache.missCount());
+    }
+}
@@ -0,0 +1,83 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+
+public class Keccak512Test {
+
+    @Test
+    public void testMessageDigestView() throws Exception {
+        Random random = new Random(3);
+        for (int length : new int[] { 0, 1, 71, 72, 73, 144, 1000 }) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            MessageDigest digest = new Keccak512.Jca();
+
+            int half = length / 2;
+            for (int i = 0; i < half; i++) {
+                digest.update(data[i]);
+            }
+            MessageDigest copy = (MessageDigest) digest.clone();
+            ByteBuffer direct = ByteBuffer.allocateDirect(length - half);
+            direct.put(data, half, length - half).flip();
+            digest.update(direct);
+            copy.update(data, half, length - half);
+
+            byte[] expected = DigestUtils.sha3_512(data);
+            assertArrayEquals(expected, digest.digest());
+            assertArrayEquals(expected, copy.digest());
+        }
+    }
+
+    @Test
+    public void testOuterDigest() {
+        byte[] dataDigest = DigestUtils.sha3_512("+491722346123".getBytes(StandardCharsets.UTF_8));
+        for (String contentType : new String[] { "phone", "text/plain", "application/vnd.example+json-long-type" }) {
+            byte[] prefix = (contentType + ":").getBytes(StandardCharsets.UTF_8);
+            Keccak512 prefixState = new Keccak512();
+            prefixState.update(prefix);
+
+            byte[] out = new byte[64];
+            new Keccak512().outerDigest(prefixState, dataDigest, 0, out, 0);
+
+            byte[] message = Arrays.copyOf(prefix, prefix.length + dataDigest.length);
+            System.arraycopy(dataDigest, 0, message, prefix.length, dataDigest.length);
+            assertArrayEquals(DigestUtils.sha3_512(message), out);
+        }
+    }
+
+    @Test
+    public void testFingerprintsMatchProvider() {
+        Random random = new Random(5);
+        byte[][] data = new byte[50][];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = new byte[random.nextInt(400)];
+            random.nextBytes(data[i]);
+        }
+        for (String key : new String[] { null, "secret" }) {
+            UDFBatch provider = new BatchFingerprinter("text/plain", 200, DigestAlgorithm.SHA3_512, key, false)
+                    .fingerprint(data);
+            UDFBatch batch = new BatchFingerprinter("text/plain", 200, DigestAlgorithm.SHA3_512, key, true)
+                    .fingerprint(data);
+            assertArrayEquals(provider.toByteArray(), batch.toByteArray());
+            PreparedFingerprinter providerFingerprinter = new PreparedFingerprinter("text/plain", 200,
+                    DigestAlgorithm.SHA3_512, key, false);
+            PreparedFingerprinter fingerprinter = new PreparedFingerprinter("text/plain", 200,
+                    DigestAlgorithm.SHA3_512, key, true);
+            for (byte[] item : data) {
+                byte[] expected = providerFingerprinter.fingerprint(item).buffer;
+                assertArrayEquals(expected, fingerprinter.fingerprint(item).buffer);
+                assertArrayEquals(expected,
+                        UDF.dataToUDFBinary(item, "text/plain", 200, DigestAlgorithm.SHA3_512, key).buffer);
+            }
+        }
+    }
+}
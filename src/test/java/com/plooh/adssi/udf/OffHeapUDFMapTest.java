@@ -0,0 +1,124 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+public class OffHeapUDFMapTest {
+
+    @Test
+    public void testMatchesHashMap() {
+        OffHeapUDFMap map = new OffHeapUDFMap(18, 4);
+        Map<PackedUDF, Long> reference = new HashMap<>();
+        Random random = new Random(1);
+        UDF[] keys = new UDF[5000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = fingerprint(i);
+        }
+        for (int round = 0; round < 50_000; round++) {
+            UDF key = keys[random.nextInt(keys.length)];
+            long value = random.nextLong();
+            switch (random.nextInt(3)) {
+                case 0:
+                case 1:
+                    assertEquals(reference.put(key.toPacked(), value) == null, map.put(key, value));
+                    break;
+                default:
+                    assertEquals(reference.remove(key.toPacked()) != null, map.remove(key));
+            }
+        }
+        assertEquals(reference.size(), map.size());
+        for (UDF key : keys) {
+            Long expected = reference.get(key.toPacked());
+            assertEquals(expected == null ? -1L : expected, map.get(key, -1L));
+            assertEquals(expected != null, map.containsKey(key));
+        }
+    }
+
+    @Test
+    public void testTruncatedKeys() {
+        OffHeapUDFMap map = new OffHeapUDFMap(17, 16);
+        UDF udf = fingerprint(42);
+        assertTrue(map.put(udf, 42));
+        // A 125 bit presentation decodes to the first 17 bytes
+        assertEquals(42L, map.get(UDF.parse(udf.presentationBase32(125)), -1L));
+        assertThrows(IllegalArgumentException.class, () -> map.get(UDF.parse("MCIT-HW7U"), -1L));
+    }
+
+    @Test
+    public void testClose() {
+        UDF udf = fingerprint(42);
+        OffHeapUDFMap map;
+        try (OffHeapUDFMap closing = new OffHeapUDFMap(18, 16)) {
+            map = closing;
+            map.put(udf, 42);
+        }
+        assertThrows(IllegalStateException.class, () -> map.get(udf, -1L));
+        assertThrows(IllegalStateException.class, () -> map.containsKey(udf));
+        assertThrows(IllegalStateException.class, () -> map.put(udf, 1));
+        assertThrows(IllegalStateException.class, () -> map.remove(udf));
+        assertThrows(IllegalStateException.class, () -> map.size());
+        assertThrows(IllegalStateException.class, () -> map.capacity());
+        // Idempotent.
+        map.close();
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        OffHeapUDFMap map = new OffHeapUDFMap(18, 16);
+        int count = 20_000;
+        UDF[] keys = new UDF[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = fingerprint(i);
+        }
+        for (int i = 0; i < count / 2; i++) {
+            map.put(keys[i], i);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        for (int i = 0; i < count / 2; i++) {
+                            if (map.get(keys[i], -1L) != i) {
+                                throw new AssertionError("Lost key " + i);
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            readers[t].start();
+        }
+        // Grows the map several times while readers run.
+        for (int i = count / 2; i < count; i++) {
+            map.put(keys[i], i);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(count, map.size());
+        assertFalse(map.containsKey(fingerprint(count)));
+    }
+
+    private static UDF fingerprint(int i) {
+        return UDF.dataToUDFBinary(("+49172" + i).getBytes(StandardCharsets.UTF_8), "phone", 0, null, null);
+    }
+}
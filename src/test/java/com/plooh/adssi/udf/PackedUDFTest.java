@@ -0,0 +1,105 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class PackedUDFTest {
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(11);
+        for (int length = 1; length <= PackedUDF.MAX_LENGTH; length++) {
+            byte[] buffer = new byte[length];
+            random.nextBytes(buffer);
+            PackedUDF packed = PackedUDF.of(buffer, 0, length);
+            assertEquals(length, packed.length());
+            assertArrayEquals(buffer, packed.toUDF().buffer);
+
+            ByteBuffer out = ByteBuffer.allocate(length);
+            packed.writeTo(out);
+            assertArrayEquals(buffer, out.array());
+        }
+        assertThrows(IllegalArgumentException.class, () -> PackedUDF.of(new byte[57], 0, 57));
+    }
+
+    @Test
+    public void testLittleEndianBuffer() {
+        UDF udf = UDF.dataToUDFBinary("+491722346123".getBytes(StandardCharsets.UTF_8), "phone", 440, null,
+                null);
+        PackedUDF packed = PackedUDF.of(udf);
+        ByteBuffer out = ByteBuffer.allocate(udf.buffer.length + 3).order(ByteOrder.LITTLE_ENDIAN);
+        out.put((byte) 1).put((byte) 2).put((byte) 3);
+        packed.writeTo(out);
+        assertEquals(ByteOrder.LITTLE_ENDIAN, out.order());
+        assertEquals(out.capacity(), out.position());
+        assertArrayEquals(udf.buffer, Arrays.copyOfRange(out.array(), 3, out.capacity()));
+        assertEquals(UdfTypeIdentifier.Digest_SHA_2_512.code, out.get(3) & 0xFF);
+    }
+
+    @Test
+    public void testMapKey() {
+        Map<PackedUDF, Long> map = new HashMap<>();
+        for (long i = 0; i < 1000; i++) {
+            byte[] data = ("+49172" + i).getBytes(StandardCharsets.UTF_8);
+            map.put(UDF.dataToUDFBinary(data, "phone", 0, null, null).toPacked(), i);
+        }
+        UDF udf = UDF.dataToUDFBinary("+49172500".getBytes(StandardCharsets.UTF_8), "phone", 0, null, null);
+        assertEquals(500L, map.get(UDF.parse(udf.presentationBase32()).toPacked()));
+        assertEquals(udf, UDF.parse(udf.presentationBase32()));
+        assertEquals(udf.hashCode(), UDF.parse(udf.presentationBase32()).hashCode());
+    }
+
+    @Test
+    public void testOrdering() {
+        Random random = new Random(5);
+        List<byte[]> buffers = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            byte[] buffer = new byte[1 + random.nextInt(PackedUDF.MAX_LENGTH)];
+            random.nextBytes(buffer);
+            // Force shared prefixes
+            buffer[0] = (byte) (i % 3);
+            buffers.add(buffer);
+        }
+        buffers.add(new byte[] { 1 });
+        buffers.add(new byte[] { 1, 0 });
+        for (byte[] a : buffers) {
+            for (byte[] b : buffers) {
+                int expected = Integer.signum(Arrays.compareUnsigned(a, b));
+                PackedUDF pa = PackedUDF.of(a, 0, a.length);
+                PackedUDF pb = PackedUDF.of(b, 0, b.length);
+                assertEquals(expected, Integer.signum(pa.compareTo(pb)));
+                assertEquals(expected, Integer.signum(new UDF(a).compareTo(new UDF(b))));
+                assertEquals(expected == 0, pa.equals(pb));
+            }
+        }
+        assertNotEquals(PackedUDF.of(new byte[] { 1 }, 0, 1), PackedUDF.of(new byte[] { 1, 0 }, 0, 2));
+    }
+
+    @Test
+    public void testReadOnlyView() {
+        UDF udf = UDF.dataToUDFBinary("marion.mueller@mail.is".getBytes(StandardCharsets.UTF_8), "email", 0, null,
+                null);
+        ByteBuffer view = udf.asReadOnlyBuffer();
+        assertTrue(view.isReadOnly());
+        assertEquals(udf.length(), view.remaining());
+        assertThrows(ReadOnlyBufferException.class, () -> view.put(0, (byte) 0));
+        assertEquals(UdfTypeIdentifier.Digest_SHA_2_512, udf.toPacked().typeIdentifier());
+        assertEquals(udf.presentationBase32(), udf.toPacked().toString());
+    }
+}
@@ -0,0 +1,67 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+
+public class PreparedFingerprinterTest {
+
+    @Test
+    public void testMatchesDataToUDFBinary() {
+        byte[] data = "UDF Compressed Document 4187123".getBytes(StandardCharsets.UTF_8);
+        for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+            PreparedFingerprinter fingerprinter = new PreparedFingerprinter("text/plain", 800, digestAlgorithm, null);
+            UDF expected = UDF.dataToUDFBinary(data, "text/plain", 800, digestAlgorithm, null);
+            assertArrayEquals(expected.buffer, fingerprinter.fingerprint(data).buffer);
+        }
+    }
+
+    @Test
+    public void testFingerprintDigest() {
+        byte[] data = "UDF Compressed Document 4187123".getBytes(StandardCharsets.UTF_8);
+        PreparedFingerprinter fingerprinter = new PreparedFingerprinter("text/plain", 0, null, null);
+        UDF expected = UDF.digestToUDFBinary(DigestUtils.sha512(data), "text/plain", 0, DigestAlgorithm.SHA2_512,
+                null);
+        assertArrayEquals(expected.buffer, fingerprinter.fingerprintDigest(DigestUtils.sha512(data)).buffer);
+    }
+
+    @Test
+    public void testAddress() {
+        PreparedFingerprinter fingerprinter = new PreparedFingerprinter("email", 0, null, null);
+        UDF udf = fingerprinter.fingerprint("marion.mueller@mail.is".getBytes(StandardCharsets.UTF_8));
+        assertEquals("MDG3-BQLT-SKY2-DAR3-EIAH-2GI3-LZHZ", udf.presentationBase32(125));
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        PreparedFingerprinter fingerprinter = new PreparedFingerprinter("phone", 0, null, null);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        byte[] data = ("+49172" + i).getBytes(StandardCharsets.UTF_8);
+                        UDF expected = UDF.dataToUDFBinary(data, "phone", 0, null, null);
+                        assertArrayEquals(expected.buffer, fingerprinter.fingerprint(data).buffer);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
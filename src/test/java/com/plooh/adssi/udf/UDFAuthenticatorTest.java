@@ -0,0 +1,138 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.HmacUtils;
+import org.junit.jupiter.api.Test;
+
+public class UDFAuthenticatorTest {
+
+    private static final byte[] PHONE = "+491722346123".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testKeyedPhone() {
+        UDF udf = UDF.dataToUDFBinary(PHONE, "phone", 0, null, "secret");
+        assertEquals(UdfTypeIdentifier.Authenticator_HMAC_SHA_2_512, udf.typeIdentifier());
+        assertEquals("ABU6-DBRL-QMD2-JFN2-A6Q7-NDGP-BAC3-4", udf.presentationBase32());
+    }
+
+    @Test
+    public void testHmacSha3() {
+        byte[] digest = DigestUtils.sha3_512(PHONE);
+        UDFAuthenticator authenticator = new UDFAuthenticator("secret", DigestAlgorithm.SHA3_512);
+        byte[] expected = hmacSha3("secret".getBytes(StandardCharsets.UTF_8), digest);
+        assertArrayEquals(expected, authenticator.authenticate(digest));
+
+        UDF udf = authenticator.toUDF(digest, 0);
+        assertEquals(UdfTypeIdentifier.Authenticator_HMAC_SHA_3_512, udf.typeIdentifier());
+    }
+
+    @Test
+    public void testKeyedSha3Paths() {
+        UDF expected = UDF.dataToUDFBinary(PHONE, "phone", 440, DigestAlgorithm.SHA3_512, "secret");
+        assertEquals(UdfTypeIdentifier.Authenticator_HMAC_SHA_3_512, expected.typeIdentifier());
+
+        PreparedFingerprinter prepared = new PreparedFingerprinter("phone", 440, DigestAlgorithm.SHA3_512, "secret");
+        assertArrayEquals(expected.buffer, prepared.fingerprint(PHONE).buffer);
+
+        UDFBatch batch = UDF.dataToUDFBatch(new byte[][] { PHONE, PHONE }, "phone", 440, DigestAlgorithm.SHA3_512,
+                "secret");
+        assertArrayEquals(expected.buffer, batch.get(0).buffer);
+        assertArrayEquals(expected.buffer, batch.get(1).buffer);
+    }
+
+    @Test
+    public void testAuthenticatorIsReusable() {
+        UDFAuthenticator authenticator = new UDFAuthenticator("secret", null);
+        byte[] digest = DigestUtils.sha512(PHONE);
+        byte[] first = authenticator.authenticate(digest);
+        assertArrayEquals(first, authenticator.authenticate(digest));
+        assertArrayEquals(new HmacUtils("HmacSHA512", "secret").hmac(digest), first);
+    }
+
+    @Test
+    public void testCachedAuthenticators() {
+        UDFAuthenticator authenticator = UDFAuthenticator.cached("cached", null);
+        assertSame(authenticator, UDFAuthenticator.cached("cached", DigestAlgorithm.SHA2_512));
+        assertNotSame(authenticator, UDFAuthenticator.cached("cached", DigestAlgorithm.SHA3_512));
+        assertEquals(DigestAlgorithm.SHA3_512, UDFAuthenticator.cached("cached", DigestAlgorithm.SHA3_512)
+                .digestAlgorithm());
+
+        // Bounded: the least recently used authenticators are dropped.
+        for (int i = 0; i < UDFAuthenticator.CACHE_SIZE; i++) {
+            UDFAuthenticator.cached("key-" + i, null);
+        }
+        assertNotSame(authenticator, UDFAuthenticator.cached("cached", null));
+
+        UDF udf = UDF.dataToUDFBinary(PHONE, "phone", 0, null, "secret");
+        assertEquals(udf, UDF.dataToUDFBinary(PHONE, "phone", 0, null, "secret"));
+    }
+
+    @Test
+    public void testInvalidatedKeyIsDropped() {
+        UDF udf = UDF.dataToUDFBinary(PHONE, "phone", 0, null, "revoked");
+        UDF.dataToUDFBinary(PHONE, "phone", 0, DigestAlgorithm.SHA3_512, "revoked");
+        assertTrue(UDFAuthenticator.isCached("revoked"));
+
+        FingerprintCache cache = new FingerprintCache(1 << 20);
+        cache.invalidateKey("revoked");
+        assertFalse(UDFAuthenticator.isCached("revoked"));
+        assertEquals(udf, UDF.dataToUDFBinary(PHONE, "phone", 0, null, "revoked"));
+        UDFAuthenticator.invalidate("revoked");
+        assertFalse(UDFAuthenticator.isCached("revoked"));
+    }
+
+    @Test
+    public void testHmacSha3Fallback() throws Exception {
+        byte[] digest = DigestUtils.sha3_512(PHONE);
+        byte[] longKey = new byte[200];
+        for (int i = 0; i < longKey.length; i++) {
+            longKey[i] = (byte) i;
+        }
+        for (byte[] key : new byte[][] { "secret".getBytes(StandardCharsets.UTF_8), longKey, new byte[72] }) {
+            SecretKeySpec keySpec = new SecretKeySpec(key, UDFAuthenticator.HMAC_SHA3_512);
+            byte[] expected = hmacSha3(key, digest);
+            Mac mac = Keccak512.hmac(keySpec);
+            assertArrayEquals(expected, mac.doFinal(digest));
+            // Reusable after doFinal and reset, clones are independent.
+            mac.update(PHONE);
+            Mac clone = (Mac) mac.clone();
+            mac.reset();
+            assertArrayEquals(expected, mac.doFinal(digest));
+            assertArrayEquals(hmacSha3(key, PHONE), clone.doFinal());
+
+            byte[] out = new byte[1 + 64];
+            UDFAuthenticator.authenticate(mac, digest, out, 1);
+            assertArrayEquals(expected, Arrays.copyOfRange(out, 1, out.length));
+        }
+    }
+
+    /**
+     * RFC 2104 on the SHA3-512 message digest, which Java 11 has unlike
+     * HmacSHA3-512.
+     */
+    private static byte[] hmacSha3(byte[] key, byte[] data) {
+        byte[] block = Arrays.copyOf(key.length > 72 ? DigestUtils.sha3_512(key) : key, 72);
+        byte[] inner = new byte[72 + data.length];
+        byte[] outer = new byte[72 + 64];
+        for (int i = 0; i < 72; i++) {
+            inner[i] = (byte) (block[i] ^ 0x36);
+            outer[i] = (byte) (block[i] ^ 0x5C);
+        }
+        System.arraycopy(data, 0, inner, 72, data.length);
+        System.arraycopy(DigestUtils.sha3_512(inner), 0, outer, 72, 64);
+        return DigestUtils.sha3_512(outer);
+    }
+}
@@ -0,0 +1,69 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class UDFBloomFilterTest {
+
+    @Test
+    public void testNoFalseNegativesAndFalsePositiveRate() {
+        int count = 20_000;
+        UDFBloomFilter filter = new UDFBloomFilter(count, 0.01);
+        UDFBatch present = UDF.dataToUDFBatch(phones(0, count), "phone", 0, null, null);
+        filter.putAll(present);
+
+        for (int i = 0; i < count; i++) {
+            assertTrue(filter.mightContain(present.get(i)));
+        }
+        UDFBatch absent = UDF.dataToUDFBatch(phones(count, count), "phone", 0, null, null);
+        int falsePositives = 0;
+        for (int i = 0; i < count; i++) {
+            if (filter.mightContain(absent.get(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < count * 0.02, "False positives: " + falsePositives);
+    }
+
+    @Test
+    public void testTruncatedPresentation() {
+        UDFBloomFilter filter = new UDFBloomFilter(100, 0.001);
+        UDF udf = UDF.dataToUDFBinary("+491722346123".getBytes(StandardCharsets.UTF_8), "phone", 440, null, null);
+        filter.put(udf);
+        assertTrue(filter.mightContain(UDF.parse("MCIT-HW7U-5AKU-JLLF-44ZK-QXF4-QKHJ")));
+        assertThrows(IllegalArgumentException.class, () -> filter.mightContain(UDF.parse("MCIT-HW7U-5AKU")));
+    }
+
+    @Test
+    public void testSerialization() {
+        UDFBloomFilter filter = new UDFBloomFilter(1_000, 0.05);
+        UDFBatch batch = UDF.dataToUDFBatch(phones(0, 1_000), "phone", 0, null, null);
+        filter.putAll(batch);
+
+        byte[] serialized = filter.toByteArray();
+        UDFBloomFilter restored = UDFBloomFilter.fromByteArray(serialized);
+        assertEquals(filter.hashes(), restored.hashes());
+        assertEquals(filter.bitCount(), restored.bitCount());
+        assertArrayEquals(serialized, restored.toByteArray());
+        for (int i = 0; i < batch.size(); i++) {
+            assertTrue(restored.mightContain(batch.get(i)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> UDFBloomFilter.fromByteArray(new byte[20]));
+    }
+
+    private static List<byte[]> phones(int first, int count) {
+        List<byte[]> data = new ArrayList<>();
+        for (int i = first; i < first + count; i++) {
+            data.add(("+49172" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        return data;
+    }
+}
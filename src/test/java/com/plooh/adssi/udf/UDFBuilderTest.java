@@ -0,0 +1,108 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+
+public class UDFBuilderTest {
+
+    @Test
+    public void testDigestEngines() {
+        Random random = new Random(13);
+        for (int length : new int[] { 0, 1, 7, 8, 71, 72, 73, 111, 112, 127, 128, 129, 255, 256, 1000, 5000 }) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertArrayEquals(DigestUtils.sha512(data), digest(new Sha512(), data, random), "length " + length);
+            assertArrayEquals(DigestUtils.sha3_512(data), digest(new Keccak512(), data, random), "length " + length);
+        }
+    }
+
+    private static byte[] digest(Digest512 engine, byte[] data, Random random) {
+        int offset = 0;
+        while (offset < data.length) {
+            int length = Math.min(data.length - offset, 1 + random.nextInt(150));
+            engine.update(data, offset, length);
+            offset += length;
+        }
+        return engine.doFinal();
+    }
+
+    @Test
+    public void testSnapshots() {
+        Random random = new Random(29);
+        for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+            UDFBuilder builder = new UDFBuilder("text/plain", 125, digestAlgorithm, null);
+            byte[] data = new byte[0];
+            for (int i = 0; i < 20; i++) {
+                byte[] chunk = new byte[random.nextInt(300)];
+                random.nextBytes(chunk);
+                if (i % 2 == 0) {
+                    builder.update(chunk);
+                } else {
+                    ByteBuffer direct = ByteBuffer.allocateDirect(chunk.length);
+                    direct.put(chunk).flip();
+                    builder.update(direct);
+                }
+                data = concat(data, chunk);
+
+                UDF expected = UDF.dataToUDFBinary(data, "text/plain", 125, digestAlgorithm, null);
+                assertArrayEquals(expected.buffer, builder.snapshot().buffer);
+                assertEquals(data.length, builder.length());
+            }
+        }
+    }
+
+    @Test
+    public void testKeyedSnapshot() {
+        byte[] data = "+491722346123".getBytes();
+        UDFBuilder builder = new UDFBuilder("phone", 0, null, "secret");
+        builder.update(data, 0, 5).update(data, 5, data.length - 5);
+        assertEquals("ABU6-DBRL-QMD2-JFN2-A6Q7-NDGP-BAC3-4", builder.snapshot().presentationBase32(150));
+    }
+
+    @Test
+    public void testCheckpointResume() {
+        Random random = new Random(31);
+        byte[] head = new byte[10_000];
+        byte[] tail = new byte[3_333];
+        random.nextBytes(head);
+        random.nextBytes(tail);
+        for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+            UDFBuilder builder = new UDFBuilder("application/log", 0, digestAlgorithm, null);
+            builder.update(head, 0, 4321);
+            byte[] checkpoint = builder.checkpoint();
+            UDF before = builder.snapshot();
+
+            UDFBuilder resumed = UDFBuilder.resume(checkpoint, "application/log", 0, null);
+            assertEquals(digestAlgorithm, resumed.digestAlgorithm());
+            assertEquals(4321, resumed.length());
+            assertArrayEquals(before.buffer, resumed.snapshot().buffer);
+
+            resumed.update(head, 4321, head.length - 4321).update(tail);
+            UDF expected = UDF.dataToUDFBinary(concat(head, tail), "application/log", 0, digestAlgorithm, null);
+            assertArrayEquals(expected.buffer, resumed.snapshot().buffer);
+        }
+    }
+
+    @Test
+    public void testInvalidCheckpoint() {
+        byte[] checkpoint = new UDFBuilder("text/plain", 0, null, null).checkpoint();
+        assertThrows(IllegalArgumentException.class,
+                () -> UDFBuilder.resume(Arrays.copyOf(checkpoint, 20), "text/plain", 0, null));
+        checkpoint[0] = 0;
+        assertThrows(IllegalArgumentException.class, () -> UDFBuilder.resume(checkpoint, "text/plain", 0, null));
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -0,0 +1,107 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.codec.digest.HmacUtils;
+import org.junit.jupiter.api.Test;
+
+public class UDFKeyDerivationTest {
+
+    private static final byte[] IKM = new byte[32];
+
+    static {
+        for (int i = 0; i < IKM.length; i++) {
+            IKM[i] = (byte) (i * 37 + 11);
+        }
+    }
+
+    @Test
+    public void testMatchesHkdf() {
+        String key = UDF.encryptionKey(IKM);
+        UDFKeyDerivation derivation = new UDFKeyDerivation(key);
+        assertEquals(UdfTypeIdentifier.Encryption_HKDF_AES_512, derivation.typeIdentifier());
+
+        byte[] info = "record-42".getBytes(StandardCharsets.UTF_8);
+        // The input keying material is the data of the UDF.
+        byte[] ikm = UDF.parse(key).data();
+        byte[] expected = hkdf(new byte[] { (byte) UdfTypeIdentifier.Encryption_HKDF_AES_512.code }, ikm, info, 150);
+        for (int length : new int[] { 0, 16, 64, 65, 128, 150 }) {
+            assertArrayEquals(Arrays.copyOf(expected, length), derivation.derive(info, length));
+        }
+        assertThrows(IllegalArgumentException.class, () -> derivation.derive(info, UDFKeyDerivation.MAX_LENGTH + 1));
+    }
+
+    @Test
+    public void testKeyTypes() {
+        byte[] signature = new UDFKeyDerivation(
+                UDF.symmetricKey(UdfTypeIdentifier.EncryptionSignature_HKDF_AES_512, IKM)).derive("info", 32);
+        byte[] encryption = new UDFKeyDerivation(UDF.encryptionKey(IKM)).derive("info", 32);
+        assertFalse(Arrays.equals(signature, encryption));
+
+        assertThrows(IllegalArgumentException.class, () -> new UDFKeyDerivation(UDF.authenticationKey(IKM)));
+        assertThrows(IllegalArgumentException.class, () -> new UDFKeyDerivation(UDF.nonce(128)));
+    }
+
+    @Test
+    public void testHierarchy() {
+        UDFKeyDerivation root = new UDFKeyDerivation(UDF.encryptionKey(256));
+        String derived = root.derivedKey("tenant-7", 256);
+        UDF udf = UDF.parse(derived);
+        assertEquals(UdfTypeIdentifier.DerivedKey, udf.typeIdentifier());
+        assertEquals(1 + 32, udf.length());
+        assertArrayEquals(root.derive("tenant-7", 32), udf.data());
+        assertEquals(1 + UDFKeyDerivation.DefaultKeyBits / 8, UDF.parse(root.derivedKey("tenant-7", 0)).length());
+
+        // A derived key is itself a derivation key.
+        UDFKeyDerivation tenant = new UDFKeyDerivation(derived);
+        assertEquals(UdfTypeIdentifier.DerivedKey, tenant.typeIdentifier());
+        assertFalse(Arrays.equals(root.derive("record", 32), tenant.derive("record", 32)));
+
+        byte[] material = new byte[1 + 64];
+        material[0] = (byte) UdfTypeIdentifier.DerivedKey.code;
+        System.arraycopy(root.derive("tenant-7", 64), 0, material, 1, 64);
+        assertArrayEquals(new UDFKeyDerivation(new UDF(material)).derive("record", 48),
+                root.child("tenant-7").derive("record", 48));
+    }
+
+    @Test
+    public void testDeriveAll() {
+        UDFKeyDerivation derivation = new UDFKeyDerivation(UDF.encryptionKey(IKM));
+        List<byte[]> infos = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            names.add("record-" + i);
+            infos.add(names.get(i).getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] keys = derivation.deriveAll(infos, 80);
+        assertEquals(80 * 1_000, keys.length);
+        String[] udfs = derivation.derivedKeys(names, 0);
+        for (int i = 0; i < infos.size(); i++) {
+            assertArrayEquals(derivation.derive(infos.get(i), 80), Arrays.copyOfRange(keys, i * 80, i * 80 + 80));
+            assertEquals(derivation.derivedKey(names.get(i), 0), udfs[i]);
+        }
+    }
+
+    private static byte[] hkdf(byte[] salt, byte[] ikm, byte[] info, int length) {
+        byte[] prk = new HmacUtils("HmacSHA512", salt).hmac(ikm);
+        byte[] okm = new byte[length];
+        byte[] previous = new byte[0];
+        for (int i = 0, counter = 1; i < length; i += 64, counter++) {
+            byte[] input = new byte[previous.length + info.length + 1];
+            System.arraycopy(previous, 0, input, 0, previous.length);
+            System.arraycopy(info, 0, input, previous.length, info.length);
+            input[input.length - 1] = (byte) counter;
+            previous = new HmacUtils("HmacSHA512", prk).hmac(input);
+            System.arraycopy(previous, 0, okm, i, Math.min(64, length - i));
+        }
+        return okm;
+    }
+}
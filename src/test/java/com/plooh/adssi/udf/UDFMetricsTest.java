@@ -0,0 +1,155 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class UDFMetricsTest {
+
+    private final UDFMetrics metrics = UDFMetrics.get();
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void enable() {
+        metrics.reset();
+        metrics.setEnabled(true);
+    }
+
+    @AfterEach
+    public void disable() {
+        metrics.setEnabled(false);
+        metrics.setSlowThresholdNanos(10_000_000);
+        metrics.reset();
+    }
+
+    private static byte[] phone() {
+        return "+491722346123".getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testCounters() {
+        UDF sha2 = UDF.dataToUDFBinary(phone(), "phone", 0, DigestAlgorithm.SHA2_512, null);
+        UDF.dataToUDFBinary(phone(), "phone", 0, DigestAlgorithm.SHA3_512, null);
+        UDF.dataToUDFBinary(phone(), "phone", 0, DigestAlgorithm.SHA3_512, "secret");
+        String presentation = sha2.presentationBase32(125);
+        UDF.parse(presentation);
+
+        assertEquals(3, metrics.count(UDFOperation.FINGERPRINT, (DigestAlgorithm) null));
+        assertEquals(1, metrics.count(UDFOperation.FINGERPRINT, DigestAlgorithm.SHA2_512));
+        assertEquals(2, metrics.count(UDFOperation.FINGERPRINT, DigestAlgorithm.SHA3_512));
+        assertEquals(3, metrics.count(UDFOperation.DIGEST_TO_UDF, (DigestAlgorithm) null));
+        assertEquals(1, metrics.count(UDFOperation.DIGEST_TO_UDF, UdfTypeIdentifier.Authenticator_HMAC_SHA_3_512));
+        assertEquals(1, metrics.count(UDFOperation.PRESENTATION, sha2.typeIdentifier()));
+        assertEquals(1, metrics.count(UDFOperation.PARSE, DigestAlgorithm.SHA2_512));
+        assertTrue(metrics.totalNanos(UDFOperation.FINGERPRINT, null) > 0);
+        long median = metrics.percentileNanos(UDFOperation.FINGERPRINT, null, 0.5);
+        assertTrue(median > 0 && median <= metrics.percentileNanos(UDFOperation.FINGERPRINT, null, 1));
+    }
+
+    @Test
+    public void testDisabled() {
+        metrics.setEnabled(false);
+        UDF.dataToUDFBinary(phone(), "phone", 0, null, null).presentationBase32();
+        assertEquals(0, metrics.count(UDFOperation.FINGERPRINT, (DigestAlgorithm) null));
+        assertEquals(0, metrics.count(UDFOperation.PRESENTATION, (DigestAlgorithm) null));
+        assertEquals(0, metrics.percentileNanos(UDFOperation.FINGERPRINT, null, 0.99));
+    }
+
+    @Test
+    public void testListener() {
+        List<UDFOperation> operations = new ArrayList<>();
+        UDFMetricsListener listener = (operation, typeIdentifier, nanos) -> operations.add(operation);
+        metrics.addListener(listener);
+        try {
+            UDF.parse(UDF.dataToUDFBinary(phone(), "phone", 0, null, null).presentationBase32());
+        } finally {
+            metrics.removeListener(listener);
+        }
+        assertEquals(List.of(UDFOperation.DIGEST_TO_UDF, UDFOperation.FINGERPRINT, UDFOperation.PRESENTATION,
+                UDFOperation.PARSE), operations);
+    }
+
+    @Test
+    public void testExclusiveFingerprintTime() {
+        long pause = 50_000_000;
+        List<Long> fingerprints = new ArrayList<>();
+        // Slows down the nested DIGEST_TO_UDF, which FINGERPRINT does not include.
+        UDFMetricsListener listener = (operation, typeIdentifier, nanos) -> {
+            if (operation == UDFOperation.DIGEST_TO_UDF) {
+                try {
+                    Thread.sleep(pause / 1_000_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else if (operation == UDFOperation.FINGERPRINT) {
+                fingerprints.add(nanos);
+            }
+        };
+        metrics.addListener(listener);
+        try {
+            UDF.dataToUDFBinary(phone(), "phone", 0, null, null);
+        } finally {
+            metrics.removeListener(listener);
+        }
+        assertEquals(1, fingerprints.size());
+        assertTrue(fingerprints.get(0) < pause, "FINGERPRINT nanos: " + fingerprints.get(0));
+        assertTrue(metrics.totalNanos(UDFOperation.FINGERPRINT, null) < pause);
+    }
+
+    @Test
+    public void testSlowOperationEvents() throws Exception {
+        metrics.setSlowThresholdNanos(0);
+        Path dump = directory.resolve("udf.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(SlowOperationEvent.NAME);
+            recording.start();
+            UDF.dataToUDFBinary(phone(), "phone", 0, null, null);
+            recording.stop();
+            recording.dump(dump);
+        }
+        List<String> operations = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            operations.add(event.getString("operation"));
+            assertTrue(event.getString("typeIdentifier").startsWith("Digest_SHA_2_512"));
+        }
+        assertEquals(List.of("DIGEST_TO_UDF", "FINGERPRINT"), operations);
+        assertTrue(Files.size(dump) > 0);
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        UDFMetrics.registerMBean();
+        UDFMetrics.registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(UDFMetrics.OBJECT_NAME);
+        assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+        UDF.dataToUDFBinary(phone(), "phone", 0, null, null);
+        Object count = server.invoke(name, "count", new Object[] { "FINGERPRINT", "SHA2_512" },
+                new String[] { String.class.getName(), String.class.getName() });
+        assertEquals(1L, count);
+        server.setAttribute(name, new Attribute("Enabled", false));
+        assertFalse(metrics.isEnabled());
+    }
+}
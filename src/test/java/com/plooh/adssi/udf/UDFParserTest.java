@@ -0,0 +1,80 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class UDFParserTest {
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(3);
+        for (int length = 1; length <= 64; length++) {
+            byte[] buffer = new byte[length];
+            random.nextBytes(buffer);
+            buffer[0] = (byte) UdfTypeIdentifier.Digest_SHA_2_512.code;
+            String presentation = UDF.presentationBase32(buffer, 4, "-", -1);
+            assertArrayEquals(buffer, UDF.parse(presentation).buffer);
+            assertArrayEquals(buffer, UDF.parse(presentation.toLowerCase()).buffer);
+            assertArrayEquals(UDF.base32.decode(presentation.replace("-", "")), UDF.parse(presentation).buffer);
+        }
+    }
+
+    @Test
+    public void testTruncatedPresentation() {
+        byte[] data = "+491722346123".getBytes(StandardCharsets.UTF_8);
+        UDF udf = UDF.dataToUDFBinary(data, "phone", 0, null, null);
+        UDF parsed = UDF.parse("MCIT-HW7U-5AKU-JLLF-44ZK-QXF4-QKHJ");
+        assertEquals(17, parsed.buffer.length);
+        for (int i = 0; i < parsed.buffer.length; i++) {
+            assertEquals(udf.buffer[i], parsed.buffer[i]);
+        }
+        assertEquals(UdfTypeIdentifier.Digest_SHA_2_512, parsed.typeIdentifier());
+    }
+
+    @Test
+    public void testSubRange() {
+        String did = "did:sw:MCIT-HW7U-5AKU-JLLF-44ZK-QXF4-QKHJ;";
+        UDF parsed = UDF.parse(did, 7, did.length() - 1);
+        assertArrayEquals(UDF.parse("MCIT-HW7U-5AKU-JLLF-44ZK-QXF4-QKHJ").buffer, parsed.buffer);
+
+        byte[] out = new byte[20];
+        int written = UDFParser.decode(did, 7, did.length() - 1, out, 3);
+        assertEquals(17, written);
+        assertEquals(parsed.buffer[16], out[19]);
+    }
+
+    @Test
+    public void testMalformed() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> UDF.parse("MCIT-HW1U"));
+        assertEquals("Invalid UDF character '1' at index 7", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> UDF.parse("MCIT=HW7U"));
+        assertThrows(IllegalArgumentException.class, () -> UDF.parse("MCIT-HW7Ü"));
+        assertThrows(IllegalArgumentException.class, () -> UDF.parse(""));
+        assertThrows(IllegalArgumentException.class, () -> UDF.parse("M-"));
+        // 0x02 is not a type identifier
+        e = assertThrows(IllegalArgumentException.class, () -> UDF.parse("AIAA-AAAA"));
+        assertEquals("Unknown UDF type identifier: 2", e.getMessage());
+    }
+
+    @Test
+    public void testTypeIdentifierLookup() {
+        for (UdfTypeIdentifier typeIdentifier : UdfTypeIdentifier.values()) {
+            assertEquals(typeIdentifier, UdfTypeIdentifier.valueOf(typeIdentifier.code));
+            assertEquals(typeIdentifier, UdfTypeIdentifier.valueOf((byte) typeIdentifier.code));
+        }
+        assertThrows(IllegalStateException.class, () -> UdfTypeIdentifier.valueOf(2));
+        assertThrows(IllegalStateException.class, () -> UdfTypeIdentifier.valueOf(1000));
+    }
+
+    @Test
+    public void testKeyShareType() {
+        String share = UDF.keyShare(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+        assertEquals(UdfTypeIdentifier.ShamirSecret, UDF.parse(share).typeIdentifier());
+    }
+}
@@ -0,0 +1,116 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class UDFPrefixIndexTest {
+
+    @Test
+    public void testResolveTruncatedPresentation() {
+        List<byte[]> data = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            data.add(("+49172" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        UDFBatch batch = UDF.dataToUDFBatch(data, "phone", UDF.MaximumBits, null, null);
+        UDFPrefixIndex index = UDFPrefixIndex.build(batch);
+        assertEquals(10_000, index.size());
+
+        for (int i = 0; i < data.size(); i += 97) {
+            String presentation = batch.presentationBase32(i, 125);
+            UDFPrefixIndex.Match match = index.find(presentation);
+            assertTrue(match.isUnique());
+            assertEquals(i, match.payload(0));
+            assertArrayEquals(batch.get(i).buffer, match.udf(0).buffer);
+            assertEquals(i, index.resolve(UDF.parse(batch.presentationBase32(i, 140))));
+        }
+        assertTrue(index.find(UDF.parse("MCIT-HW7U-5AKU-JLLF-44ZK-QXF4-QKHJ")).isEmpty());
+    }
+
+    @Test
+    public void testAmbiguousMatches() {
+        Random random = new Random(9);
+        List<UDF> udfs = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            byte[] buffer = new byte[18];
+            random.nextBytes(buffer);
+            buffer[0] = (byte) UdfTypeIdentifier.Digest_SHA_2_512.code;
+            udfs.add(new UDF(buffer));
+        }
+        long[] payloads = new long[udfs.size()];
+        Arrays.setAll(payloads, i -> i);
+        UDFPrefixIndex index = UDFPrefixIndex.build(udfs, payloads);
+
+        // Short prefixes are shared by many entries, compare with a scan.
+        byte[] prefix = udfs.get(0).buffer;
+        for (int bits = 8; bits <= 24; bits++) {
+            int expected = 0;
+            for (UDF udf : udfs) {
+                if (samePrefix(udf.buffer, prefix, bits)) {
+                    expected++;
+                }
+            }
+            UDFPrefixIndex.Match match = index.find(prefix, 0, prefix.length, bits);
+            assertEquals(expected, match.count());
+            for (int i = 0; i < match.count(); i++) {
+                assertTrue(samePrefix(match.udf(i).buffer, prefix, bits));
+            }
+        }
+        assertEquals(udfs.size(), index.find(prefix, 0, 1, 8).count());
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> index.resolve(new UDF(new byte[] { prefix[0] })));
+        assertTrue(e.getMessage().contains("2000 fingerprints"));
+    }
+
+    @Test
+    public void testLongerUDF() {
+        List<byte[]> data = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            data.add(("+49172" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        UDFPrefixIndex index = UDFPrefixIndex.build(UDF.dataToUDFBatch(data, "phone", 140, null, null));
+        for (int i = 0; i < data.size(); i += 9) {
+            UDF full = UDF.dataToUDFBinary(data.get(i), "phone", UDF.MaximumBits, null, null);
+            assertEquals(i, index.resolve(full));
+            assertEquals(i, index.find(full.presentationBase32()).payload(0));
+        }
+    }
+
+    @Test
+    public void testTrailingPresentationBits() {
+        byte[] buffer = new byte[18];
+        new Random(4).nextBytes(buffer);
+        buffer[0] = (byte) UdfTypeIdentifier.Digest_SHA_2_512.code;
+        byte[] other = buffer.clone();
+        // Same first 120 bits, different bit 121.
+        other[15] ^= 0x40;
+        UDFPrefixIndex index = UDFPrefixIndex.build(Arrays.asList(new UDF(buffer), new UDF(other)),
+                new long[] { 1, 2 });
+
+        UDFPrefixIndex.Match match = index.find(new UDF(buffer).presentationBase32(125));
+        assertTrue(match.isUnique());
+        assertEquals(1, match.payload(0));
+        assertEquals(2, index.find(new UDF(other).presentationBase32(125)).payload(0));
+        assertEquals(2, index.find(new UDF(buffer).presentationBase32(120)).count());
+    }
+
+    private static boolean samePrefix(byte[] a, byte[] b, int bits) {
+        for (int i = 0; i < bits; i++) {
+            int bitA = (a[i >>> 3] >>> (7 - (i & 7))) & 1;
+            int bitB = (b[i >>> 3] >>> (7 - (i & 7))) & 1;
+            if (bitA != bitB) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
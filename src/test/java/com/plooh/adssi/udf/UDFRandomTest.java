@@ -0,0 +1,90 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+public class UDFRandomTest {
+
+    @Test
+    public void testNonceLayout() {
+        for (int bits : new int[] { 0, 128, 256 }) {
+            String nonce = UDF.nonce(bits);
+            int expectedBits = bits <= 0 ? UDF.DefaultBits - 8 : bits;
+            String reference = UDF.nonce(new byte[expectedBits / 8], expectedBits);
+            assertEquals(reference.length(), nonce.length());
+            UDF parsed = UDF.parse(nonce);
+            assertEquals(UdfTypeIdentifier.Nonce, parsed.typeIdentifier());
+            assertEquals(expectedBits / 8, parsed.length());
+        }
+    }
+
+    @Test
+    public void testKeyTypes() {
+        assertEquals(UdfTypeIdentifier.Encryption_HKDF_AES_512, UDF.parse(UDF.encryptionKey(256)).typeIdentifier());
+        assertEquals(UdfTypeIdentifier.Authenticator_HMAC_SHA_2_512,
+                UDF.parse(UDF.authenticationKey(0)).typeIdentifier());
+    }
+
+    @Test
+    public void testBulkNonces() {
+        String[] nonces = UDFRandom.current().nonces(10_000, 128);
+        Set<String> distinct = new HashSet<>();
+        Collections.addAll(distinct, nonces);
+        assertEquals(10_000, distinct.size());
+        for (String nonce : nonces) {
+            assertEquals(UdfTypeIdentifier.Nonce, UDF.parse(nonce).typeIdentifier());
+        }
+    }
+
+    @Test
+    public void testNextBytesAcrossBlocks() {
+        UDFRandom random = UDFRandom.current();
+        byte[] large = new byte[UDFRandom.BLOCK_LENGTH * 3 + 17];
+        random.nextBytes(large, 0, large.length);
+        int zeros = 0;
+        for (byte b : large) {
+            zeros += b == 0 ? 1 : 0;
+        }
+        // About 1 in 256 bytes is zero.
+        assertTrue(zeros < large.length / 64);
+        assertFalse(Arrays.equals(random.nextBytes(32), random.nextBytes(32)));
+    }
+
+    @Test
+    public void testPerThreadSources() throws Exception {
+        UDFRandom mine = UDFRandom.current();
+        assertSame(mine, UDFRandom.current());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    assertNotSame(mine, UDFRandom.current());
+                    return UDFRandom.current().nonces(2_000, 0);
+                }));
+            }
+            Set<String> distinct = new HashSet<>();
+            for (Future<String[]> future : futures) {
+                Collections.addAll(distinct, future.get());
+            }
+            assertEquals(8_000, distinct.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
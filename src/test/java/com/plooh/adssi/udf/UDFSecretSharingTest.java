@@ -0,0 +1,91 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class UDFSecretSharingTest {
+
+    @Test
+    public void testSplitRecover() {
+        String key = UDF.encryptionKey(256);
+        String[] shares = UDFSecretSharing.split(key, 5, 3);
+        assertEquals(5, shares.length);
+        for (int i = 0; i < shares.length; i++) {
+            UDF share = UDF.parse(shares[i]);
+            assertEquals(UdfTypeIdentifier.ShamirSecret, share.typeIdentifier());
+            assertEquals(3, share.buffer[1]);
+            assertEquals(i + 1, share.buffer[2]);
+            assertEquals(UDF.parse(key).length() + 3, share.length());
+        }
+        // Every subset of threshold shares, in any order
+        for (int a = 0; a < 5; a++) {
+            for (int b = 0; b < 5; b++) {
+                for (int c = 0; c < 5; c++) {
+                    if (a != b && b != c && a != c) {
+                        assertEquals(key, UDFSecretSharing.recover(Arrays.asList(shares[a], shares[b], shares[c])));
+                    }
+                }
+            }
+        }
+        assertEquals(key, UDFSecretSharing.recover(Arrays.asList(shares)));
+    }
+
+    @Test
+    public void testTooFewShares() {
+        byte[] secret = new byte[32];
+        new Random(1).nextBytes(secret);
+        String[] shares = UDFSecretSharing.split(secret, 3, 3);
+        assertThrows(IllegalArgumentException.class,
+                () -> UDFSecretSharing.recoverBytes(Arrays.asList(shares[0], shares[1])));
+        assertThrows(IllegalArgumentException.class,
+                () -> UDFSecretSharing.recoverBytes(Arrays.asList(shares[0], shares[0], shares[1])));
+        assertThrows(IllegalArgumentException.class,
+                () -> UDFSecretSharing.recoverBytes(Arrays.asList(UDF.nonce(128), shares[0], shares[1])));
+        assertThrows(IllegalArgumentException.class, () -> UDFSecretSharing.split(secret, 3, 4));
+        assertThrows(IllegalArgumentException.class, () -> UDFSecretSharing.split(secret, 256, 2));
+        assertThrows(IllegalArgumentException.class, () -> UDFSecretSharing.split(secret, 3, 1));
+
+        // Two shares of a 2 of 3 split recover the secret, shares of another
+        // split do not.
+        String[] pairs = UDFSecretSharing.split(secret, 3, 2);
+        assertArrayEquals(secret, UDFSecretSharing.recoverBytes(Arrays.asList(pairs[2], pairs[0])));
+        String[] others = UDFSecretSharing.split(secret, 3, 2);
+        assertNotEquals(pairs[0], others[0]);
+        assertFalse(Arrays.equals(secret, UDFSecretSharing.recoverBytes(Arrays.asList(pairs[0], others[1]))));
+    }
+
+    @Test
+    public void testMaximumShares() {
+        byte[] secret = new byte[64];
+        new Random(2).nextBytes(secret);
+        List<String> shares = new ArrayList<>(Arrays.asList(UDFSecretSharing.split(secret, 255, 17)));
+        Collections.shuffle(shares, new Random(3));
+        assertArrayEquals(secret, UDFSecretSharing.recoverBytes(shares.subList(0, 17)));
+        assertArrayEquals(secret, UDFSecretSharing.recoverBytes(shares.subList(200, 255)));
+    }
+
+    @Test
+    public void testBulk() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            keys.add(UDF.encryptionKey(i % 2 == 0 ? 256 : 128));
+        }
+        String[][] shares = UDFSecretSharing.splitAll(keys, 5, 3);
+        List<List<String>> subsets = new ArrayList<>();
+        for (int i = 0; i < shares.length; i++) {
+            subsets.add(Arrays.asList(shares[i][i % 5], shares[i][(i + 2) % 5], shares[i][(i + 4) % 5]));
+        }
+        assertEquals(keys, Arrays.asList(UDFSecretSharing.recoverAll(subsets)));
+    }
+}
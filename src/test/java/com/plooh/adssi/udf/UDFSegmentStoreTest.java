@@ -0,0 +1,152 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class UDFSegmentStoreTest {
+
+    private static final int KEY_LENGTH = 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testPutGetAcrossFlushes() throws Exception {
+        List<UDF> udfs = phones(1_000);
+        try (UDFSegmentStore store = UDFSegmentStore.open(directory, KEY_LENGTH, 100, 1_000)) {
+            for (int i = 0; i < udfs.size(); i++) {
+                store.put(udfs.get(i), i);
+            }
+            assertEquals(10, store.segmentCount());
+            assertEquals(0, store.tailSize());
+            for (int i = 0; i < udfs.size(); i++) {
+                assertEquals(i, store.get(udfs.get(i), -1));
+                assertTrue(store.containsKey(udfs.get(i)));
+            }
+            UDF absent = UDF.dataToUDFBinary("absent".getBytes(StandardCharsets.UTF_8), "phone", 0, null, null);
+            assertEquals(-1, store.get(absent, -1));
+            assertFalse(store.containsKey(absent));
+        }
+    }
+
+    @Test
+    public void testNewestValueWins() throws Exception {
+        List<UDF> udfs = phones(300);
+        try (UDFSegmentStore store = UDFSegmentStore.open(directory, KEY_LENGTH, 64, 1_000)) {
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < udfs.size(); i++) {
+                    store.put(udfs.get(i), round * 1_000L + i);
+                }
+            }
+            for (int i = 0; i < udfs.size(); i++) {
+                assertEquals(2_000L + i, store.get(udfs.get(i), -1));
+            }
+            store.compact();
+            assertEquals(1, store.segmentCount());
+            for (int i = 0; i < udfs.size(); i++) {
+                assertEquals(2_000L + i, store.get(udfs.get(i), -1));
+            }
+        }
+    }
+
+    @Test
+    public void testReopenReplaysTail() throws Exception {
+        List<UDF> udfs = phones(250);
+        try (UDFSegmentStore store = UDFSegmentStore.open(directory, KEY_LENGTH, 100, 1_000)) {
+            for (int i = 0; i < udfs.size(); i++) {
+                store.put(udfs.get(i), i);
+            }
+            assertEquals(50, store.tailSize());
+        }
+        // Torn record at the end of the tail log
+        try (FileChannel log = FileChannel.open(directory.resolve(UDFSegmentStore.TAIL_NAME),
+                StandardOpenOption.APPEND)) {
+            log.write(ByteBuffer.wrap(new byte[5]));
+        }
+        try (UDFSegmentStore store = UDFSegmentStore.open(directory, KEY_LENGTH, 100, 1_000)) {
+            assertEquals(2, store.segmentCount());
+            assertEquals(50, store.tailSize());
+            for (int i = 0; i < udfs.size(); i++) {
+                assertEquals(i, store.get(udfs.get(i), -1));
+            }
+            store.put(udfs.get(0), 42);
+            assertEquals(42, store.get(udfs.get(0), -1));
+        }
+        assertThrows(IOException.class, () -> UDFSegmentStore.open(directory, KEY_LENGTH + 1));
+    }
+
+    @Test
+    public void testBackgroundCompaction() throws Exception {
+        List<UDF> udfs = phones(2_000);
+        try (UDFSegmentStore store = UDFSegmentStore.open(directory, KEY_LENGTH, 50, 4)) {
+            for (int i = 0; i < udfs.size(); i++) {
+                store.put(udfs.get(i), i);
+                // Lookups while segments are merged and replaced
+                assertEquals(i / 2, store.get(udfs.get(i / 2), -1));
+            }
+        }
+        long segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(file -> file.getFileName().toString().startsWith("segment-")).count();
+        }
+        try (UDFSegmentStore store = UDFSegmentStore.open(directory, KEY_LENGTH)) {
+            assertEquals(segments, store.segmentCount());
+            assertTrue(segments < 10, "Segments: " + segments);
+            for (int i = 0; i < udfs.size(); i++) {
+                assertEquals(i, store.get(udfs.get(i), -1));
+            }
+        }
+    }
+
+    @Test
+    public void testBoundedWriteVolume() throws Exception {
+        List<UDF> udfs = phones(12_800);
+        UDFSegmentStore store = UDFSegmentStore.open(directory, KEY_LENGTH, 50, 4);
+        try {
+            for (int i = 0; i < udfs.size(); i++) {
+                store.put(udfs.get(i), i);
+            }
+            for (int i = 0; i < udfs.size(); i += 7) {
+                assertEquals(i, store.get(udfs.get(i), -1));
+            }
+        } finally {
+            // Waits for the background compaction.
+            store.close();
+        }
+        // 256 flushes over 4 tiers: every row is written by its flush and at
+        // most once per tier. Merging all the segments on every flush past the
+        // fourth would write about 130 times the rows.
+        assertTrue(store.rowsWritten() <= 5L * udfs.size(), "Rows written: " + store.rowsWritten());
+        try (UDFSegmentStore reopened = UDFSegmentStore.open(directory, KEY_LENGTH)) {
+            assertTrue(reopened.segmentCount() < 16, "Segments: " + reopened.segmentCount());
+            for (int i = 0; i < udfs.size(); i += 7) {
+                assertEquals(i, reopened.get(udfs.get(i), -1));
+            }
+        }
+    }
+
+    private static List<UDF> phones(int count) {
+        List<UDF> udfs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] data = ("+49172" + (2346123 + i * 7919)).getBytes(StandardCharsets.UTF_8);
+            udfs.add(UDF.dataToUDFBinary(data, "phone", 0, null, null));
+        }
+        return udfs;
+    }
+}
@@ -0,0 +1,71 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class UDFStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testStreamMatchesBytes() throws IOException {
+        byte[] data = "UDF Compressed Document 4187123".getBytes(StandardCharsets.UTF_8);
+        for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+            UDF expected = UDF.dataToUDFBinary(data, "text/plain", 440, digestAlgorithm, null);
+            UDF udf = UDF.dataToUDFBinary(new ByteArrayInputStream(data), "text/plain", 440, digestAlgorithm, null);
+            assertArrayEquals(expected.buffer, udf.buffer);
+        }
+    }
+
+    @Test
+    public void testChannelMatchesBytes() throws IOException {
+        byte[] data = randomData(300_000);
+        for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+            UDF expected = UDF.dataToUDFBinary(data, "application/octet-stream", 0, digestAlgorithm, null);
+            UDF udf = UDF.dataToUDFBinary(Channels.newChannel(new ByteArrayInputStream(data)),
+                    "application/octet-stream", 0, digestAlgorithm, null);
+            assertArrayEquals(expected.buffer, udf.buffer);
+        }
+    }
+
+    @Test
+    public void testPathMatchesBytes() throws IOException {
+        byte[] data = randomData(300_000);
+        Path file = Files.write(tempDir.resolve("data.bin"), data);
+        for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+            String expected = UDF.contentDigestOfDataString(data, "application/octet-stream", 440, digestAlgorithm,
+                    null);
+            assertEquals(expected,
+                    UDF.contentDigestOfDataString(file, "application/octet-stream", 440, digestAlgorithm, null));
+
+            // Several map windows, the last one partial.
+            byte[] digest = Digests.update(Digests.messageDigest(digestAlgorithm), file, 4096).digest();
+            assertArrayEquals(Digests.digest(data, digestAlgorithm), digest);
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        Path file = Files.write(tempDir.resolve("empty.bin"), new byte[0]);
+        UDF expected = UDF.dataToUDFBinary(new byte[0], "text/plain", 0, null, null);
+        assertArrayEquals(expected.buffer, UDF.dataToUDFBinary(file, "text/plain", 0, null, null).buffer);
+    }
+
+    private static byte[] randomData(int length) {
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+}
@@ -3,6 +3,7 @@ package com.plooh.adssi.udf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
@@ -117,6 +118,34 @@ public class UDFTest {
         hexCompare(expected, typeBDSToBinary);
     }
 
+    @Test
+    public void testCompressionLevels() {
+        int[] levels = { 0, 1, 2, 3, 4 };
+        int[] bits = { 0, 20, 30, 40, 50 };
+        for (int level = 0; level < levels.length; level++) {
+            // Exactly bits - 1 trailing zeros: one level lower.
+            if (bits[level] > 0) {
+                assertEquals(levels[level] - 1, UDF.getCompression(trailingZeros(bits[level] - 1)));
+            }
+            assertEquals(levels[level], UDF.getCompression(trailingZeros(bits[level])));
+            assertEquals(levels[level], UDF.getCompression(trailingZeros(bits[level] + 9)));
+        }
+        assertEquals(4, UDF.getCompression(trailingZeros(58)));
+        assertEquals(4, UDF.getCompression(new byte[64]));
+    }
+
+    /**
+     * @return A 64 byte digest with exactly count trailing zero bits.
+     */
+    static byte[] trailingZeros(int count) {
+        byte[] digest = new byte[64];
+        Arrays.fill(digest, (byte) 0xFF);
+        for (int bit = 0; bit < count; bit++) {
+            digest[63 - bit / 8] &= (byte) ~(1 << (bit % 8));
+        }
+        return digest;
+    }
+
     @Test
     public void udfBSDDataBufferTest3() {
         String ctyString = "text/plain";
@@ -0,0 +1,131 @@
+package com.plooh.adssi.udf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class UDFVerifierTest {
+
+    private static final byte[] PHONE = "+491722346123".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testAddressPresentation() {
+        assertTrue(UDFVerifier.verify(PHONE, "phone", "MCIT-HW7U-5AKU-JLLF-44ZK-QXF4-QKHJ", null));
+        assertTrue(UDFVerifier.verify(PHONE, "phone", "mcithw7u5akujllf44zkqxf4qkhj", null));
+        assertFalse(UDFVerifier.verify(PHONE, "phone", "MCIT-HW7U-5AKU-JLLF-44ZK-QXF4-QKHK", null));
+        assertFalse(UDFVerifier.verify(PHONE, "email", "MCIT-HW7U-5AKU-JLLF-44ZK-QXF4-QKHJ", null));
+    }
+
+    @Test
+    public void testAllPrecisions() {
+        byte[] other = "+491722346124".getBytes(StandardCharsets.UTF_8);
+        for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+            for (String key : new String[] { null, "secret" }) {
+                UDFVerifier verifier = new UDFVerifier("phone", key);
+                for (int bits : new int[] { 0, 200, 440, 512 }) {
+                    UDF udf = UDF.dataToUDFBinary(PHONE, "phone", bits, digestAlgorithm, key);
+                    assertTrue(verifier.verify(PHONE, udf));
+                    assertFalse(verifier.verify(other, udf));
+                    assertTrue(verifier.verify(PHONE, udf.presentationBase32()));
+                    for (int presented = 20; presented <= udf.length() * 8; presented += 20) {
+                        String presentation = udf.presentationBase32(presented);
+                        assertEquals(presented >= UDF.MinimumBits, verifier.verify(PHONE, presentation), presentation);
+                        assertFalse(verifier.verify(other, presentation), presentation);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testShortPresentations() {
+        for (String key : new String[] { null, "secret" }) {
+            UDF udf = UDF.dataToUDFBinary(PHONE, "phone", 0, null, key);
+            UDFVerifier verifier = new UDFVerifier("phone", key);
+            assertTrue(verifier.verify(PHONE, udf.presentationBase32(UDF.MinimumBits)));
+            assertFalse(verifier.verify(PHONE, udf.presentationBase32(UDF.MinimumBits - 20)));
+            assertFalse(verifier.verify(PHONE, udf.presentationBase32(20)));
+            // Callers may lower or raise the minimum.
+            assertTrue(new UDFVerifier("phone", key, 100).verify(PHONE, udf.presentationBase32(100)));
+            assertFalse(new UDFVerifier("phone", key, 200).verify(PHONE, udf.presentationBase32()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new UDFVerifier("phone", null, 8));
+    }
+
+    @Test
+    public void testVerifyDigest() {
+        for (DigestAlgorithm digestAlgorithm : DigestAlgorithm.values()) {
+            String presentation = UDF.dataToUDFBinary(PHONE, "phone", 200, digestAlgorithm, "secret")
+                    .presentationBase32();
+            byte[] dataDigest = Digests.digest(PHONE, digestAlgorithm);
+            assertTrue(new UDFVerifier("phone", "secret").verifyDigest(dataDigest, presentation));
+            assertFalse(new UDFVerifier("phone", "other").verifyDigest(dataDigest, presentation));
+        }
+    }
+
+    @Test
+    public void testKeyedness() {
+        String unkeyed = UDF.dataToUDFBinary(PHONE, "phone", 0, null, null).presentationBase32();
+        String keyed = UDF.dataToUDFBinary(PHONE, "phone", 0, null, "secret").presentationBase32();
+        assertFalse(new UDFVerifier("phone", "secret").verify(PHONE, unkeyed));
+        assertFalse(new UDFVerifier("phone", null).verify(PHONE, keyed));
+        assertTrue(new UDFVerifier("phone", "secret").verify(PHONE, keyed));
+        // Not a digest type
+        assertFalse(new UDFVerifier("phone", null).verify(PHONE, UDF.nonce(128)));
+        // Type identifier only
+        assertFalse(new UDFVerifier("phone", null).verify(PHONE, unkeyed.substring(0, 2)));
+        assertThrows(IllegalArgumentException.class, () -> new UDFVerifier("phone", null).verify(PHONE, "MCIT-1"));
+    }
+
+    @Test
+    public void testTamperedBits() {
+        UDFVerifier verifier = new UDFVerifier("phone", null);
+        String presentation = UDF.dataToUDFBinary(PHONE, "phone", 0, null, null).presentationBase32(125);
+        char[] chars = presentation.toCharArray();
+        // 140 bits may also be a 17 byte UDF: the last 4 bits match when zero.
+        chars[chars.length - 1] = 'H';
+        assertFalse(verifier.verify(PHONE, new String(chars)));
+        chars[chars.length - 1] = presentation.charAt(chars.length - 1);
+        for (int i = 0; i < chars.length - 1; i++) {
+            if (chars[i] == '-') {
+                continue;
+            }
+            char original = chars[i];
+            chars[i] = original == 'A' ? 'B' : 'A';
+            assertFalse(verifier.verify(PHONE, new String(chars)), new String(chars));
+            chars[i] = original;
+        }
+    }
+
+    @Test
+    public void testPartialByte() {
+        byte[] expected = { 0x60, (byte) 0xFF, (byte) 0xF0 };
+        // 15 bits stop within the second byte: its 7 presented bits must match.
+        assertTrue(UDFVerifier.matches(expected, new byte[] { 0x60, (byte) 0xFE }, 15));
+        assertFalse(UDFVerifier.matches(expected, new byte[] { 0x60, 0x00 }, 15));
+        // 40 bits: the third byte is compared whole, no partial byte.
+        assertFalse(UDFVerifier.matches(expected, new byte[] { 0x60, (byte) 0xFF, (byte) 0xF1, 0, 0 }, 40));
+        // 10 bits are also the full presentation of a 1 byte UDF, zero padding matches.
+        assertTrue(UDFVerifier.matches(expected, new byte[] { 0x60, 0x00 }, 10));
+        assertTrue(UDFVerifier.matches(expected, new byte[] { 0x60, (byte) 0xC0 }, 10));
+        assertFalse(UDFVerifier.matches(expected, new byte[] { 0x60, (byte) 0x40 }, 10));
+    }
+
+    @Test
+    public void testVerifyAll() {
+        List<byte[]> data = Arrays.asList(PHONE, "+491722346124".getBytes(StandardCharsets.UTF_8), PHONE);
+        String presentation = UDF.dataToUDFBinary(PHONE, "phone", 0, DigestAlgorithm.SHA3_512, null)
+                .presentationBase32();
+        boolean[] results = new UDFVerifier("phone", null).verifyAll(data,
+                Arrays.asList(presentation, presentation, "MCIT-HW7U-5AKU-JLLF-44ZK-QXF4-QKHJ"));
+        assertArrayEquals(new boolean[] { true, false, true }, results);
+    }
+}